@@ -0,0 +1,63 @@
+package com.ludogoriesoft.dto;
+
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validation;
+import jakarta.validation.Validator;
+import jakarta.validation.ValidatorFactory;
+import org.hibernate.validator.HibernateValidator;
+import org.hibernate.validator.messageinterpolation.ParameterMessageInterpolator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the bean validation of an incoming CompanyDto, as done for every create and update request.
+ * A DTO that violates every constraint is measured too, since building the violations is the expensive part.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CompanyDtoValidationBenchmark {
+
+    private ValidatorFactory validatorFactory;
+    private Validator validator;
+    private CompanyDto validCompany;
+    private CompanyDto invalidCompany;
+
+    @Setup
+    public void setUp() {
+        // Outside of Quarkus there is no expression language implementation, so messages are interpolated
+        // without EL. None of the CompanyDto messages use expressions, so the work done is the same.
+        validatorFactory = Validation.byProvider(HibernateValidator.class)
+                .configure()
+                .messageInterpolator(new ParameterMessageInterpolator())
+                .buildValidatorFactory();
+        validator = validatorFactory.getValidator();
+
+        validCompany = new CompanyDto(null, "Apple Inc", "US", "AAPL", "https://www.apple.com", "investor@apple.com", null);
+        invalidCompany = new CompanyDto(null, " ", "usa", "aapl!", "not a url", "not an email", null);
+    }
+
+    @TearDown
+    public void tearDown() {
+        validatorFactory.close();
+    }
+
+    @Benchmark
+    public Set<ConstraintViolation<CompanyDto>> validCompany() {
+        return validator.validate(validCompany);
+    }
+
+    @Benchmark
+    public Set<ConstraintViolation<CompanyDto>> invalidCompany() {
+        return validator.validate(invalidCompany);
+    }
+}
@@ -0,0 +1,76 @@
+package com.ludogoriesoft.dto;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the JSON serialization of company list responses, both as a whole list (GET /companies)
+ * and one company at a time through a JsonGenerator (GET /companies/stream), and of a single CompanyStockDto.
+ * Output goes to a null stream, so only the serialization itself is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class JsonSerializationBenchmark {
+
+    @Param({"100", "10000"})
+    int companies;
+
+    private ObjectMapper objectMapper;
+    private List<CompanyDto> companyList;
+    private CompanyStockDto companyStock;
+
+    @Setup
+    public void setUp() {
+        // The same configuration Quarkus applies to its ObjectMapper by default.
+        objectMapper = new ObjectMapper()
+                .findAndRegisterModules()
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+
+        Instant createdAt = Instant.parse("2024-03-01T10:15:30.123456Z");
+        companyList = new ArrayList<>(companies);
+        for (long i = 1; i <= companies; i++) {
+            companyList.add(new CompanyDto(i, "Company " + i, "US", "SYM" + (i % 1000),
+                    "https://company" + i + ".example.com", "ir@company" + i + ".example.com", createdAt));
+        }
+        companyStock = new CompanyStockDto(1L, "Apple Inc", "US", "AAPL", "https://www.apple.com",
+                "investor@apple.com", createdAt, 3L, 3_500_000.0, 15_000.0, createdAt, false);
+    }
+
+    @Benchmark
+    public void companyList() throws IOException {
+        objectMapper.writeValue(OutputStream.nullOutputStream(), companyList);
+    }
+
+    @Benchmark
+    public void companyListStreamed() throws IOException {
+        try (JsonGenerator generator = objectMapper.createGenerator(OutputStream.nullOutputStream())) {
+            generator.writeStartArray();
+            for (CompanyDto company : companyList) {
+                generator.writeObject(company);
+            }
+            generator.writeEndArray();
+        }
+    }
+
+    @Benchmark
+    public byte[] companyStock() throws IOException {
+        return objectMapper.writeValueAsBytes(companyStock);
+    }
+}
@@ -0,0 +1,63 @@
+package com.ludogoriesoft.mapper;
+
+import com.ludogoriesoft.dto.CompanyDto;
+import com.ludogoriesoft.dto.CompanyStockDto;
+import com.ludogoriesoft.entity.Company;
+import com.ludogoriesoft.entity.StockData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the entity to DTO mapping done for every company in a list response and for every stock lookup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CompanyMapperBenchmark {
+
+    private CompanyMapper companyMapper;
+    private Company company;
+    private StockData stockData;
+    private CompanyDto companyDto;
+
+    @Setup
+    public void setUp() {
+        companyMapper = new CompanyMapper();
+
+        company = new Company();
+        company.id = 42L;
+        company.setName("Apple Inc");
+        company.setCountry("US");
+        company.setSymbol("AAPL");
+        company.setWebsite("https://www.apple.com");
+        company.setEmail("investor@apple.com");
+
+        stockData = new StockData();
+        stockData.setMarketCapitalization(3_500_000.0);
+        stockData.setShareOutstanding(15_000.0);
+
+        companyDto = companyMapper.toDto(company);
+    }
+
+    @Benchmark
+    public CompanyDto toDto() {
+        return companyMapper.toDto(company);
+    }
+
+    @Benchmark
+    public CompanyStockDto toCompanyStockDto() {
+        return companyMapper.toCompanyStockDto(company, stockData);
+    }
+
+    @Benchmark
+    public Company toEntity() {
+        return companyMapper.toEntity(companyDto);
+    }
+}
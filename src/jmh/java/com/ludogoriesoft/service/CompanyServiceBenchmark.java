@@ -0,0 +1,87 @@
+package com.ludogoriesoft.service;
+
+import com.ludogoriesoft.cache.CompanyStockCache;
+import com.ludogoriesoft.cache.StockCacheMetrics;
+import com.ludogoriesoft.client.FinnhubGateway;
+import com.ludogoriesoft.dto.CompanyStockDto;
+import com.ludogoriesoft.mapper.CompanyMapper;
+import com.ludogoriesoft.repository.CompanyRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.enterprise.event.Event;
+import org.mockito.MockSettings;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+/**
+ * Measures CompanyService.getCompanyStockData without a database or Finnhub: once served from the L1 cache,
+ * and once from today's stock data in the (mocked) database, which is the path every L1 miss takes.
+ * Only the service's own work is measured, i.e. the cache, the single-flight bookkeeping and the metrics.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CompanyServiceBenchmark {
+
+    private static final Long COMPANY_ID = 42L;
+
+    private CompanyService l1CachedService;
+    private CompanyService databaseCachedService;
+
+    @Setup
+    public void setUp() {
+        // What the read-only lookup of the company and today's stock data returns on a database hit.
+        CompanyStockDto stored = new CompanyStockDto(COMPANY_ID, "Apple Inc", "US", "AAPL", null, null, null, 0L,
+                3_500_000.0, 15_000.0, Instant.now(), false);
+
+        // Stub-only mocks don't record their invocations, which would otherwise pile up over millions of calls.
+        MockSettings stubOnly = withSettings().stubOnly();
+        StockDataStore stockDataStore = mock(StockDataStore.class, stubOnly);
+        when(stockDataStore.findCompanyWithTodaysStockData(COMPANY_ID)).thenReturn(Optional.of(stored));
+
+        l1CachedService = newService(stockDataStore, new CompanyStockCache(10_000));
+        l1CachedService.getCompanyStockData(COMPANY_ID);
+        // A cache that can't hold anything, so every lookup goes to the store.
+        databaseCachedService = newService(stockDataStore, new CompanyStockCache(0));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static CompanyService newService(StockDataStore stockDataStore, CompanyStockCache cache) {
+        MockSettings stubOnly = withSettings().stubOnly();
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        return new CompanyService(
+                mock(CompanyRepository.class, stubOnly),
+                new CompanyMapper(),
+                stockDataStore,
+                mock(FinnhubGateway.class, stubOnly),
+                cache,
+                new StockCacheMetrics(meterRegistry),
+                mock(Event.class, stubOnly),
+                meterRegistry,
+                Duration.ofSeconds(2),
+                Duration.ofDays(7));
+    }
+
+    @Benchmark
+    public CompanyStockDto l1CacheHit() {
+        return l1CachedService.getCompanyStockData(COMPANY_ID);
+    }
+
+    @Benchmark
+    public CompanyStockDto databaseCacheHit() {
+        return databaseCachedService.getCompanyStockData(COMPANY_ID);
+    }
+}
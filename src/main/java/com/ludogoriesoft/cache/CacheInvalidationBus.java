@@ -0,0 +1,153 @@
+package com.ludogoriesoft.cache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.quarkus.runtime.ShutdownEvent;
+import io.quarkus.runtime.StartupEvent;
+import io.vertx.mutiny.core.Vertx;
+import io.vertx.mutiny.pgclient.pubsub.PgSubscriber;
+import io.vertx.pgclient.PgConnectOptions;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Event;
+import jakarta.enterprise.event.Observes;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cross-node cache invalidation over Postgres LISTEN/NOTIFY, so it needs nothing besides the database we already run.
+ * Triggers announce every committed change on a channel, with the company ID as payload: company_changed for updated
+ * or deleted companies (V7 migration), and stock_data_changed for new stock snapshots (V8 migration), whose payload
+ * also carries the snapshot's fetchedAt (V10 migration), so that the node that stored it keeps it cached.
+ * Every node listens on one dedicated connection and turns each notification into a {@link CacheInvalidationEvent},
+ * which the caches observe to evict the affected company. Notifications arrive within milliseconds of the commit.
+ *
+ * Notifications sent while the connection is down are lost, so whenever a channel is (re)subscribed,
+ * an event for all companies is fired and the caches are emptied.
+ *
+ * The connection is made in the background and retried until it succeeds: an unreachable database at startup
+ * must not keep the application from booting over a cache side channel. Until it is connected, the caches
+ * only expire on their own, as they would on a single node.
+ */
+@ApplicationScoped
+public class CacheInvalidationBus {
+
+    public static final String COMPANY_CHANGED = "company_changed";
+    public static final String STOCK_DATA_CHANGED = "stock_data_changed";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CacheInvalidationBus.class);
+    private static final List<String> CHANNELS = List.of(COMPANY_CHANGED, STOCK_DATA_CHANGED);
+
+    private final Vertx vertx;
+    private final Event<CacheInvalidationEvent> invalidationEvent;
+    private final MeterRegistry meterRegistry;
+    private final Optional<String> url;
+    private final Optional<String> username;
+    private final Optional<String> password;
+    private final Duration reconnectDelay;
+    // The channels LISTENed on over the current connection; emptied whenever it is lost.
+    private final Set<String> subscribedChannels = ConcurrentHashMap.newKeySet();
+    private PgSubscriber subscriber;
+
+    public CacheInvalidationBus(Vertx vertx,
+                                Event<CacheInvalidationEvent> invalidationEvent,
+                                MeterRegistry meterRegistry,
+                                @ConfigProperty(name = "quarkus.datasource.reactive.url") Optional<String> url,
+                                @ConfigProperty(name = "quarkus.datasource.username") Optional<String> username,
+                                @ConfigProperty(name = "quarkus.datasource.password") Optional<String> password,
+                                @ConfigProperty(name = "cache.invalidation.reconnect-delay", defaultValue = "1S") Duration reconnectDelay) {
+        this.vertx = vertx;
+        this.invalidationEvent = invalidationEvent;
+        this.meterRegistry = meterRegistry;
+        this.url = url;
+        this.username = username;
+        this.password = password;
+        this.reconnectDelay = reconnectDelay;
+    }
+
+    void start(@Observes StartupEvent event) {
+        if (url.isEmpty()) {
+            LOGGER.warn("No reactive datasource URL is configured, so caches are not invalidated across nodes.");
+            return;
+        }
+        PgConnectOptions options = PgConnectOptions.fromUri(url.get());
+        username.ifPresent(options::setUser);
+        password.ifPresent(options::setPassword);
+
+        subscriber = PgSubscriber.subscriber(vertx, options)
+                .reconnectPolicy(this::reconnectDelay);
+        for (String channel : CHANNELS) {
+            Counter notifications = Counter.builder("cache.invalidations")
+                    .description("Cache invalidation notifications received from the database")
+                    .tag("channel", channel)
+                    .register(meterRegistry);
+            subscriber.channel(channel)
+                    .subscribeHandler(() -> {
+                        subscribedChannels.add(channel);
+                        invalidationEvent.fire(new CacheInvalidationEvent(channel, null));
+                    })
+                    .handler(payload -> {
+                        notifications.increment();
+                        onNotification(channel, payload);
+                    });
+        }
+        subscriber.connect().subscribe().with(
+                connected -> LOGGER.info("Listening for cache invalidations on {}", CHANNELS),
+                failure -> LOGGER.warn("Gave up listening for cache invalidations, caches are not invalidated across nodes.", failure));
+    }
+
+    /**
+     * Called for every failed attempt to (re)connect, both at startup and after the connection was lost.
+     * The first one is logged as a warning, the retries that follow only at debug level.
+     *
+     * @return How long to wait before the next attempt, in milliseconds.
+     */
+    private long reconnectDelay(int retries) {
+        subscribedChannels.clear();
+        if (retries == 0) {
+            LOGGER.warn("Not connected for cache invalidations, retrying every {}. Caches are not invalidated across nodes meanwhile.",
+                    reconnectDelay);
+        } else {
+            LOGGER.debug("Still not connected for cache invalidations after {} retries", retries);
+        }
+        return reconnectDelay.toMillis();
+    }
+
+    /**
+     * @return true once every channel is listened on, i.e. changes committed from now on are seen.
+     */
+    boolean isListening() {
+        return subscribedChannels.containsAll(CHANNELS);
+    }
+
+    void stop(@Observes ShutdownEvent event) {
+        if (subscriber != null) {
+            subscriber.closeAndAwait();
+        }
+    }
+
+    /**
+     * @param payload The company ID, optionally followed by ':' and the fetchedAt of a new snapshot.
+     */
+    void onNotification(String channel, String payload) {
+        int separator = payload.indexOf(':');
+        Long companyId;
+        Instant fetchedAt;
+        try {
+            companyId = Long.valueOf(separator < 0 ? payload : payload.substring(0, separator));
+            fetchedAt = separator < 0 ? null : Instant.parse(payload.substring(separator + 1));
+        } catch (NumberFormatException | DateTimeParseException e) {
+            LOGGER.warn("Ignoring notification on {} with invalid payload: {}", channel, payload);
+            return;
+        }
+        invalidationEvent.fire(new CacheInvalidationEvent(channel, companyId, fetchedAt));
+    }
+}
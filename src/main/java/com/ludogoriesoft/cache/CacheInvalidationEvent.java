@@ -0,0 +1,24 @@
+package com.ludogoriesoft.cache;
+
+import java.time.Instant;
+
+/**
+ * CDI event fired by {@link CacheInvalidationBus} for every change announced by the database,
+ * whichever node made it. Observers evict whatever they cache for the affected company.
+ *
+ * @param channel The channel the change was announced on, e.g. {@link CacheInvalidationBus#COMPANY_CHANGED}.
+ * @param companyId The ID of the affected company, or null if any company may be affected
+ *                  (after the listening connection was re-established and notifications may have been lost).
+ * @param fetchedAt When the new snapshot was fetched, for {@link CacheInvalidationBus#STOCK_DATA_CHANGED};
+ *                  null for other changes. Entries already holding this snapshot or a newer one need no eviction.
+ */
+public record CacheInvalidationEvent(String channel, Long companyId, Instant fetchedAt) {
+
+    public CacheInvalidationEvent(String channel, Long companyId) {
+        this(channel, companyId, null);
+    }
+
+    public boolean affectsAll() {
+        return companyId == null;
+    }
+}
@@ -0,0 +1,37 @@
+package com.ludogoriesoft.cache;
+
+import com.ludogoriesoft.entity.Company;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import org.hibernate.Cache;
+import org.hibernate.SessionFactory;
+
+/**
+ * Keeps the second-level cache of {@link Company} consistent across application nodes: every change to a company,
+ * announced by the database through the {@link CacheInvalidationBus}, evicts that company from this node's cache.
+ * A stale copy that slips through anyway can't overwrite newer data, because updates are checked against
+ * the company's version.
+ */
+@ApplicationScoped
+public class CompanyCacheInvalidator {
+
+    private final SessionFactory sessionFactory;
+
+    public CompanyCacheInvalidator(SessionFactory sessionFactory) {
+        this.sessionFactory = sessionFactory;
+    }
+
+    void onInvalidation(@Observes CacheInvalidationEvent event) {
+        if (!CacheInvalidationBus.COMPANY_CHANGED.equals(event.channel())) {
+            return;
+        }
+        Cache cache = sessionFactory.getCache();
+        if (event.affectsAll()) {
+            cache.evictEntityData(Company.class);
+        } else {
+            cache.evictEntityData(Company.class, event.companyId());
+        }
+        // The symbol may have changed, and the cache can't be asked which symbol pointed to this company.
+        cache.evictNaturalIdData(Company.class);
+    }
+}
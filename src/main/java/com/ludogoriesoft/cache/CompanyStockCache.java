@@ -0,0 +1,121 @@
+package com.ludogoriesoft.cache;
+
+import com.ludogoriesoft.dto.CompanyStockDto;
+import com.ludogoriesoft.service.CompanyUpdatedEvent;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.enterprise.event.TransactionPhase;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * A bounded, in-process (L1) cache of assembled CompanyStockDto objects, keyed by company ID.
+ * It sits in front of the database cache in StockDataRepository, so a hit never touches the database.
+ *
+ * Entries expire at the same daily freshness boundary as the database cache (see {@link StockFreshness}),
+ * and the least recently used entry is evicted once the configured maximum size is reached.
+ * Changes made on other nodes evict the affected entries through the {@link CacheInvalidationBus}; the notification
+ * of a snapshot this node stored itself leaves the entry it has just filled in place.
+ */
+@ApplicationScoped
+public class CompanyStockCache {
+
+    private final Clock clock;
+    private final Map<Long, Entry> entries;
+
+    @Inject
+    public CompanyStockCache(@ConfigProperty(name = "stock.cache.max-size", defaultValue = "10000") int maxSize) {
+        this(maxSize, Clock.systemUTC());
+    }
+
+    CompanyStockCache(int maxSize, Clock clock) {
+        this.clock = clock;
+        // An access-ordered LinkedHashMap gives us LRU eviction for free.
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * @param companyId The ID of the company.
+     * @return The cached DTO if present and still inside the current freshness window, otherwise an empty Optional.
+     */
+    public synchronized Optional<CompanyStockDto> get(Long companyId) {
+        Entry entry = entries.get(companyId);
+        if (entry == null) {
+            return Optional.empty();
+        }
+        if (!clock.instant().isBefore(entry.expiresAt())) {
+            entries.remove(companyId);
+            return Optional.empty();
+        }
+        return Optional.of(entry.value());
+    }
+
+    /**
+     * Caches the DTO until the next freshness boundary.
+     */
+    public synchronized void put(Long companyId, CompanyStockDto value) {
+        if (companyId == null || value == null) {
+            return;
+        }
+        entries.put(companyId, new Entry(value, StockFreshness.nextBoundary(clock)));
+    }
+
+    public synchronized void invalidate(Long companyId) {
+        entries.remove(companyId);
+    }
+
+    /**
+     * Evicts the company's entry unless it already holds the snapshot fetched at the given time, or a newer one.
+     * This keeps the entry a node has just filled when the notification of its own insert comes back.
+     */
+    public synchronized void invalidateOlderThan(Long companyId, Instant fetchedAt) {
+        Entry entry = entries.get(companyId);
+        if (entry == null) {
+            return;
+        }
+        Instant cachedFetchedAt = entry.value().fetchedAt();
+        // The database rounds to microseconds, the snapshot cached right after the insert may have more digits.
+        if (cachedFetchedAt == null || cachedFetchedAt.isBefore(fetchedAt.minus(1, ChronoUnit.MICROS))) {
+            entries.remove(companyId);
+        }
+    }
+
+    public synchronized void invalidateAll() {
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    // Evicting only after the transaction has committed prevents a concurrent reader
+    // from re-populating the cache with the pre-update state of the company.
+    void onCompanyUpdated(@Observes(during = TransactionPhase.AFTER_SUCCESS) CompanyUpdatedEvent event) {
+        invalidate(event.companyId());
+    }
+
+    // Another node (or this one) changed the company or stored a newer snapshot of it, see CacheInvalidationBus.
+    void onInvalidation(@Observes CacheInvalidationEvent event) {
+        if (event.affectsAll()) {
+            invalidateAll();
+        } else if (event.fetchedAt() != null) {
+            invalidateOlderThan(event.companyId(), event.fetchedAt());
+        } else {
+            invalidate(event.companyId());
+        }
+    }
+
+    private record Entry(CompanyStockDto value, Instant expiresAt) {}
+}
@@ -0,0 +1,72 @@
+package com.ludogoriesoft.cache;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent calls for the same key into a single in-flight execution.
+ * The first caller for a key (the "leader") runs the loader; every caller that arrives
+ * while it is still running waits for, and receives, the leader's result (or its exception).
+ * Once the leader finishes, the key is released and the next call starts a new execution.
+ *
+ * @param <K> The type of the key that identifies identical work.
+ * @param <V> The type of the result.
+ */
+public class SingleFlight<K, V> {
+
+    private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder coalesced = new LongAdder();
+
+    public V execute(K key, Supplier<V> loader) {
+        CompletableFuture<V> ownFlight = new CompletableFuture<>();
+        CompletableFuture<V> existingFlight = inFlight.putIfAbsent(key, ownFlight);
+        if (existingFlight != null) {
+            coalesced.increment();
+            return await(existingFlight);
+        }
+
+        try {
+            V value = loader.get();
+            ownFlight.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            ownFlight.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, ownFlight);
+        }
+    }
+
+    /**
+     * @return The total number of callers that were served by another caller's in-flight execution.
+     */
+    public long coalescedCount() {
+        return coalesced.sum();
+    }
+
+    /**
+     * @return The number of keys that currently have an execution in progress.
+     */
+    public int inFlightCount() {
+        return inFlight.size();
+    }
+
+    private V await(CompletableFuture<V> flight) {
+        try {
+            return flight.join();
+        } catch (CompletionException e) {
+            // Re-throw the leader's original exception, so waiters fail exactly like the leader did.
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw e;
+        }
+    }
+}
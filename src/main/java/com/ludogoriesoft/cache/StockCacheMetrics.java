@@ -0,0 +1,56 @@
+package com.ludogoriesoft.cache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.enterprise.context.ApplicationScoped;
+
+/**
+ * Counts how stock lookups are served: from the L1 cache, from today's snapshot in the database,
+ * by a call to Finnhub, or from an older snapshot while today's is refreshed in the background.
+ * All four are one counter, stock.cache.lookups, with a "result" tag,
+ * so the hit ratio of each level can be graphed from the Prometheus endpoint.
+ */
+@ApplicationScoped
+public class StockCacheMetrics {
+
+    private final Counter l1Hits;
+    private final Counter databaseHits;
+    private final Counter misses;
+    private final Counter staleHits;
+
+    public StockCacheMetrics(MeterRegistry meterRegistry) {
+        this.l1Hits = lookups(meterRegistry, "l1_hit");
+        this.databaseHits = lookups(meterRegistry, "db_hit");
+        this.misses = lookups(meterRegistry, "miss");
+        this.staleHits = lookups(meterRegistry, "stale");
+    }
+
+    private static Counter lookups(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("stock.cache.lookups")
+                .description("Stock lookups by the cache level that served them")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    public void l1Hit() {
+        l1Hits.increment();
+    }
+
+    public void databaseHit() {
+        databaseHits.increment();
+    }
+
+    /**
+     * A lookup that found no data from today and had to refresh it from Finnhub.
+     */
+    public void miss() {
+        misses.increment();
+    }
+
+    /**
+     * A lookup that found no data from today and was served an older snapshot instead, while it is refreshed.
+     */
+    public void staleHit() {
+        staleHits.increment();
+    }
+}
@@ -0,0 +1,31 @@
+package com.ludogoriesoft.cache;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+
+/**
+ * Defines the daily freshness boundary for stock data.
+ * A StockData snapshot is considered fresh if it was fetched on or after midnight UTC of the current day.
+ * Keeping this in one place guarantees that the database cache and the in-memory cache agree on when data goes stale.
+ */
+public final class StockFreshness {
+
+    private StockFreshness() {
+    }
+
+    /**
+     * @return The start of the current freshness window (midnight UTC today).
+     */
+    public static Instant startOfToday(Clock clock) {
+        return LocalDate.now(clock.withZone(ZoneOffset.UTC)).atStartOfDay().toInstant(ZoneOffset.UTC);
+    }
+
+    /**
+     * @return The moment the current freshness window ends (midnight UTC tomorrow).
+     */
+    public static Instant nextBoundary(Clock clock) {
+        return LocalDate.now(clock.withZone(ZoneOffset.UTC)).plusDays(1).atStartOfDay().toInstant(ZoneOffset.UTC);
+    }
+}
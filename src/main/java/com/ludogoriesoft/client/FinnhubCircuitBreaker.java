@@ -0,0 +1,142 @@
+package com.ludogoriesoft.client;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * A circuit breaker for the calls to Finnhub. After {@code failureThreshold} consecutive failed calls the circuit opens,
+ * and for {@code openFor} no calls are made at all: callers are rejected right away instead of each waiting
+ * for a timeout. Once that time is over the circuit is half-open, and the next call decides:
+ * if it succeeds the circuit closes again, if it fails the circuit opens for another {@code openFor}.
+ * That call is the only one let through while half-open; everyone else is still rejected until it reports back,
+ * so a Finnhub that is still down costs one timeout rather than one per caller. A probe that never reports back
+ * (e.g. it was cancelled) is given up after {@code openFor}, and the next call becomes the probe.
+ *
+ * Only failures that say Finnhub itself is unwell count (no response, timeouts, 5xx). An answer such as
+ * 404 or 429 means Finnhub is up, so it counts as a success here.
+ */
+public class FinnhubCircuitBreaker {
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final int failureThreshold;
+    private final long openForNanos;
+    private final LongSupplier nanoTime;
+
+    private final LongAdder rejected = new LongAdder();
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+    private boolean probeInFlight;
+    private long probeStartedAt;
+
+    public FinnhubCircuitBreaker(int failureThreshold, Duration openFor) {
+        this(failureThreshold, openFor, System::nanoTime);
+    }
+
+    FinnhubCircuitBreaker(int failureThreshold, Duration openFor, LongSupplier nanoTime) {
+        this.failureThreshold = failureThreshold;
+        this.openForNanos = openFor.toNanos();
+        this.nanoTime = nanoTime;
+    }
+
+    /**
+     * Checks whether a call may be made now, and counts it as rejected if not.
+     * When the circuit has been open for long enough, this moves it to half-open and lets the call through
+     * as the probe; until that probe reports its outcome, no other call is let through.
+     * Only call this right before the call itself, which must report to {@link #onSuccess()} or {@link #onFailure()}.
+     *
+     * @return true if the call may be made, false if the circuit is open or a probe is already in flight.
+     */
+    public synchronized boolean tryAcquire() {
+        long now = nanoTime.getAsLong();
+        if (state == State.OPEN && now - openedAt >= openForNanos) {
+            state = State.HALF_OPEN;
+            probeInFlight = false;
+        }
+        if (state == State.CLOSED) {
+            return true;
+        }
+        if (state == State.HALF_OPEN && !isProbeInFlight(now)) {
+            probeInFlight = true;
+            probeStartedAt = now;
+            return true;
+        }
+        rejected.increment();
+        return false;
+    }
+
+    /**
+     * Like {@link #tryAcquire()}, but without changing any state: whether a call made now would be let through.
+     */
+    public synchronized boolean isCallPermitted() {
+        long now = nanoTime.getAsLong();
+        return switch (state) {
+            case CLOSED -> true;
+            case OPEN -> now - openedAt >= openForNanos;
+            case HALF_OPEN -> !isProbeInFlight(now);
+        };
+    }
+
+    /**
+     * Like {@link #isCallPermitted()}, but counts the call as rejected if not. For callers that give up early,
+     * before doing other work, and leave {@link #tryAcquire()} (and with it the probe) to the call itself.
+     */
+    public synchronized boolean checkCallPermitted() {
+        boolean permitted = isCallPermitted();
+        if (!permitted) {
+            rejected.increment();
+        }
+        return permitted;
+    }
+
+    public synchronized void onSuccess() {
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        probeInFlight = false;
+    }
+
+    public synchronized void onFailure() {
+        consecutiveFailures++;
+        probeInFlight = false;
+        if (state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= failureThreshold)) {
+            state = State.OPEN;
+            openedAt = nanoTime.getAsLong();
+        }
+    }
+
+    private boolean isProbeInFlight(long now) {
+        return probeInFlight && now - probeStartedAt < openForNanos;
+    }
+
+    /**
+     * @return How long the circuit stays open, or zero if it isn't open.
+     */
+    public synchronized Duration remainingOpenTime() {
+        if (state != State.OPEN) {
+            return Duration.ZERO;
+        }
+        return Duration.ofNanos(Math.max(0, openForNanos - (nanoTime.getAsLong() - openedAt)));
+    }
+
+    public synchronized State state() {
+        return state;
+    }
+
+    /**
+     * Gauge value of the state: 0 closed, 1 open, 2 half-open.
+     */
+    public double stateCode() {
+        return switch (state()) {
+            case CLOSED -> 0;
+            case OPEN -> 1;
+            case HALF_OPEN -> 2;
+        };
+    }
+
+    public double rejectedCount() {
+        return rejected.sum();
+    }
+}
@@ -0,0 +1,251 @@
+package com.ludogoriesoft.client;
+
+import com.ludogoriesoft.dto.FinnhubProfileDto;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.WebApplicationException;
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.Response;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.eclipse.microprofile.rest.client.inject.RestClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+
+/**
+ * The single entry point the application uses to talk to Finnhub.
+ * It wraps the {@link FinnhubClient} REST client with a client-side token-bucket rate limiter,
+ * so that we can use our full per-minute quota without tripping it, and it backs off when Finnhub
+ * answers 429 Too Many Requests (honouring the Retry-After header).
+ *
+ * When a call can't be made within the configured wait, it fails with 503 Service Unavailable
+ * and a Retry-After header, instead of surfacing as a generic 500.
+ *
+ * A {@link FinnhubCircuitBreaker} stops all calls for a while once Finnhub keeps failing (timeouts, connection errors,
+ * 5xx), so that during an outage callers get their 503 right away instead of each waiting for a timeout.
+ */
+@ApplicationScoped
+public class FinnhubGateway {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FinnhubGateway.class);
+    private static final int TOO_MANY_REQUESTS = 429;
+
+    private final FinnhubClient finnhubClient;
+    private final String finnhubApiKey;
+    private final TokenBucketRateLimiter rateLimiter;
+    private final FinnhubCircuitBreaker circuitBreaker;
+    private final Duration maxWait;
+    private final int maxRetries;
+    private final Duration defaultBackoff;
+    private final MeterRegistry meterRegistry;
+
+    @Inject
+    public FinnhubGateway(@RestClient FinnhubClient finnhubClient,
+                          @ConfigProperty(name = "finnhub.api.key") String finnhubApiKey,
+                          @ConfigProperty(name = "finnhub.rate-limit.per-minute", defaultValue = "60") int permitsPerMinute,
+                          @ConfigProperty(name = "finnhub.rate-limit.burst", defaultValue = "10") int burst,
+                          @ConfigProperty(name = "finnhub.rate-limit.max-queue", defaultValue = "100") int maxQueueDepth,
+                          @ConfigProperty(name = "finnhub.rate-limit.max-wait", defaultValue = "5S") Duration maxWait,
+                          @ConfigProperty(name = "finnhub.retry.max-retries", defaultValue = "2") int maxRetries,
+                          @ConfigProperty(name = "finnhub.retry.default-backoff", defaultValue = "1S") Duration defaultBackoff,
+                          @ConfigProperty(name = "finnhub.circuit-breaker.failure-threshold", defaultValue = "5") int failureThreshold,
+                          @ConfigProperty(name = "finnhub.circuit-breaker.open-for", defaultValue = "30S") Duration openFor,
+                          MeterRegistry meterRegistry) {
+        this(finnhubClient, finnhubApiKey, new TokenBucketRateLimiter(permitsPerMinute, burst, maxQueueDepth),
+                new FinnhubCircuitBreaker(failureThreshold, openFor), maxWait, maxRetries, defaultBackoff, meterRegistry);
+    }
+
+    FinnhubGateway(FinnhubClient finnhubClient,
+                   String finnhubApiKey,
+                   TokenBucketRateLimiter rateLimiter,
+                   FinnhubCircuitBreaker circuitBreaker,
+                   Duration maxWait,
+                   int maxRetries,
+                   Duration defaultBackoff,
+                   MeterRegistry meterRegistry) {
+        this.finnhubClient = finnhubClient;
+        this.finnhubApiKey = finnhubApiKey;
+        this.rateLimiter = rateLimiter;
+        this.circuitBreaker = circuitBreaker;
+        this.maxWait = maxWait;
+        this.maxRetries = maxRetries;
+        this.defaultBackoff = defaultBackoff;
+        this.meterRegistry = meterRegistry;
+
+        Gauge.builder("finnhub.ratelimit.tokens", rateLimiter, TokenBucketRateLimiter::availableTokens)
+                .description("Finnhub calls that can be made right now without waiting")
+                .register(meterRegistry);
+        Gauge.builder("finnhub.ratelimit.queue", rateLimiter, TokenBucketRateLimiter::queueDepth)
+                .description("Callers waiting for a Finnhub rate limit token")
+                .register(meterRegistry);
+        FunctionCounter.builder("finnhub.ratelimit.throttled", rateLimiter, TokenBucketRateLimiter::throttledCount)
+                .description("Finnhub calls rejected by the client-side rate limiter")
+                .register(meterRegistry);
+        Gauge.builder("finnhub.circuitbreaker.state", circuitBreaker, FinnhubCircuitBreaker::stateCode)
+                .description("State of the Finnhub circuit breaker: 0 closed, 1 open, 2 half-open")
+                .register(meterRegistry);
+        FunctionCounter.builder("finnhub.circuitbreaker.rejected", circuitBreaker, FinnhubCircuitBreaker::rejectedCount)
+                .description("Finnhub calls rejected because the circuit breaker was open")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Gets the company profile (including market data) for a stock symbol.
+     *
+     * @param symbol The stock symbol.
+     * @return The profile returned by Finnhub.
+     * @throws WebApplicationException with status 503 if the rate limit doesn't allow the call in time,
+     *         or if the circuit breaker is open.
+     */
+    public FinnhubProfileDto getCompanyProfile(String symbol) {
+        for (int attempt = 0; ; attempt++) {
+            // Check the circuit before queueing for a token, but only take the half-open probe once we have one,
+            // so a probe can't be lost to the rate limiter or hold up everyone else while it waits.
+            checkCircuit();
+            acquirePermit();
+            acquireCircuit();
+            Timer.Sample call = startCall();
+            try {
+                FinnhubProfileDto profile = finnhubClient.getCompanyProfile(symbol, finnhubApiKey);
+                recordCall(call, null);
+                return profile;
+            } catch (WebApplicationException e) {
+                recordCall(call, e);
+                if (e.getResponse() == null || e.getResponse().getStatus() != TOO_MANY_REQUESTS) {
+                    throw e;
+                }
+                // Everyone backs off, not just this caller: the quota is shared.
+                Duration backoff = retryAfter(e.getResponse(), attempt);
+                rateLimiter.pauseFor(backoff);
+                LOGGER.warn("Finnhub rate limit exceeded for symbol {}. Backing off for {}.", symbol, backoff);
+                if (attempt >= maxRetries) {
+                    throw serviceUnavailable(backoff);
+                }
+            } catch (RuntimeException e) {
+                recordCall(call, e);
+                throw e;
+            }
+        }
+    }
+
+    private void acquirePermit() {
+        try {
+            if (!rateLimiter.tryAcquire(maxWait)) {
+                throw serviceUnavailable(Duration.ofSeconds(1));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw serviceUnavailable(Duration.ofSeconds(1));
+        }
+    }
+
+    /**
+     * Fails fast with 503 while the circuit breaker is open, with a Retry-After of the time it stays open.
+     * Callers use it to give up before any other work. It doesn't take the half-open probe:
+     * that is left to {@link #getCompanyProfile(String)}, which checks the circuit again right before the call.
+     */
+    public void checkCircuit() {
+        if (!circuitBreaker.checkCallPermitted()) {
+            throw finnhubUnavailable(circuitBreaker.remainingOpenTime());
+        }
+    }
+
+    /**
+     * Like {@link #checkCircuit()}, but takes the half-open probe if it is free. Only for right before a call
+     * that is then recorded with {@link #recordCall(Timer.Sample, Throwable)}: nothing that can fail
+     * without reaching Finnhub (such as waiting for a rate limit token) may come in between.
+     */
+    void acquireCircuit() {
+        if (!circuitBreaker.tryAcquire()) {
+            throw finnhubUnavailable(circuitBreaker.remainingOpenTime());
+        }
+    }
+
+    /**
+     * @return false while the circuit breaker is open, i.e. a call made now would be rejected without reaching Finnhub.
+     */
+    public boolean isAvailable() {
+        return circuitBreaker.isCallPermitted();
+    }
+
+    /**
+     * Starts timing one HTTP call to Finnhub. Waiting for a rate limit token is not part of the call.
+     */
+    Timer.Sample startCall() {
+        return Timer.start(meterRegistry);
+    }
+
+    /**
+     * Records a call started with {@link #startCall()} in the finnhub.requests timer, tagged with the response status,
+     * or with IO_ERROR if there was no response at all. The outcome is also reported to the circuit breaker.
+     *
+     * @param failure The exception the call failed with, or null if it succeeded.
+     */
+    void recordCall(Timer.Sample call, Throwable failure) {
+        String status;
+        if (failure == null) {
+            status = "200";
+            circuitBreaker.onSuccess();
+        } else if (failure instanceof WebApplicationException e && e.getResponse() != null) {
+            int code = e.getResponse().getStatus();
+            status = String.valueOf(code);
+            if (code >= 500) {
+                circuitBreaker.onFailure();
+            } else {
+                circuitBreaker.onSuccess();
+            }
+        } else {
+            status = "IO_ERROR";
+            circuitBreaker.onFailure();
+        }
+        call.stop(Timer.builder("finnhub.requests")
+                .description("Latency of the HTTP calls to Finnhub")
+                .tag("status", status)
+                .publishPercentileHistogram()
+                .register(meterRegistry));
+    }
+
+    /**
+     * The rate limiter guarding the Finnhub quota. {@link ReactiveFinnhubGateway} takes its tokens from it too,
+     * so both paths together stay within the quota.
+     */
+    TokenBucketRateLimiter rateLimiter() {
+        return rateLimiter;
+    }
+
+    /**
+     * Uses the Retry-After header (in seconds) if Finnhub sent one, and exponential backoff otherwise.
+     */
+    Duration retryAfter(Response response, int attempt) {
+        String header = response.getHeaderString(HttpHeaders.RETRY_AFTER);
+        if (header != null) {
+            try {
+                return Duration.ofSeconds(Math.max(0, Long.parseLong(header.trim())));
+            } catch (NumberFormatException e) {
+                // Finnhub only sends delta-seconds; fall back to our own backoff for anything else.
+            }
+        }
+        return defaultBackoff.multipliedBy(1L << Math.min(attempt, 10));
+    }
+
+    static WebApplicationException serviceUnavailable(Duration retryAfter) {
+        return serviceUnavailable("Finnhub rate limit reached, please retry later.", retryAfter);
+    }
+
+    static WebApplicationException finnhubUnavailable(Duration retryAfter) {
+        return serviceUnavailable("Finnhub is currently unavailable, please retry later.", retryAfter);
+    }
+
+    private static WebApplicationException serviceUnavailable(String message, Duration retryAfter) {
+        long seconds = Math.max(1, (retryAfter.toMillis() + 999) / 1000);
+        return new WebApplicationException(message,
+                Response.status(Response.Status.SERVICE_UNAVAILABLE)
+                        .header(HttpHeaders.RETRY_AFTER, seconds)
+                        .build());
+    }
+}
@@ -0,0 +1,18 @@
+package com.ludogoriesoft.client;
+
+import com.ludogoriesoft.dto.FinnhubProfileDto;
+import io.smallrye.mutiny.Uni;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.QueryParam;
+import org.eclipse.microprofile.rest.client.inject.RegisterRestClient;
+
+// The non-blocking twin of FinnhubClient. It shares the same configKey, and therefore the same URL,
+// but returns a Uni so the call never occupies a thread while waiting for Finnhub.
+@RegisterRestClient(configKey = "com.ludogoriesoft.client.FinnhubClient")
+public interface ReactiveFinnhubClient {
+
+    @GET
+    @Path("/stock/profile2")
+    Uni<FinnhubProfileDto> getCompanyProfile(@QueryParam("symbol") String symbol, @QueryParam("token") String apiToken);
+}
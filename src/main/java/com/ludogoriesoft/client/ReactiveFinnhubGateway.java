@@ -0,0 +1,114 @@
+package com.ludogoriesoft.client;
+
+import com.ludogoriesoft.dto.FinnhubProfileDto;
+import io.micrometer.core.instrument.Timer;
+import io.smallrye.mutiny.Uni;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.ws.rs.WebApplicationException;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.eclipse.microprofile.rest.client.inject.RestClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+
+/**
+ * The non-blocking counterpart of {@link FinnhubGateway}, built on {@link ReactiveFinnhubClient}.
+ * It takes its tokens from the same rate limiter, reports to the same circuit breaker and backs off on 429 the same way,
+ * but waits with timers instead of sleeping, so it is safe to use on the event loop.
+ */
+@ApplicationScoped
+public class ReactiveFinnhubGateway {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReactiveFinnhubGateway.class);
+    private static final int TOO_MANY_REQUESTS = 429;
+
+    private final ReactiveFinnhubClient finnhubClient;
+    private final FinnhubGateway finnhubGateway;
+    private final String finnhubApiKey;
+    private final Duration maxWait;
+    private final int maxRetries;
+
+    public ReactiveFinnhubGateway(@RestClient ReactiveFinnhubClient finnhubClient,
+                                  FinnhubGateway finnhubGateway,
+                                  @ConfigProperty(name = "finnhub.api.key") String finnhubApiKey,
+                                  @ConfigProperty(name = "finnhub.rate-limit.max-wait", defaultValue = "5S") Duration maxWait,
+                                  @ConfigProperty(name = "finnhub.retry.max-retries", defaultValue = "2") int maxRetries) {
+        this.finnhubClient = finnhubClient;
+        this.finnhubGateway = finnhubGateway;
+        this.finnhubApiKey = finnhubApiKey;
+        this.maxWait = maxWait;
+        this.maxRetries = maxRetries;
+    }
+
+    /**
+     * Gets the company profile (including market data) for a stock symbol.
+     *
+     * @param symbol The stock symbol.
+     * @return A Uni with the profile returned by Finnhub, or failing with a 503 WebApplicationException
+     *         if the rate limit doesn't allow the call in time, or if the circuit breaker is open.
+     */
+    public Uni<FinnhubProfileDto> getCompanyProfile(String symbol) {
+        return attempt(symbol, 0);
+    }
+
+    private Uni<FinnhubProfileDto> attempt(String symbol, int attempt) {
+        // As in the blocking gateway, the half-open probe is only taken once we have a token, right before the call.
+        return checkCircuit()
+                .chain(() -> acquirePermit(System.nanoTime() + maxWait.toNanos()))
+                .invoke(finnhubGateway::acquireCircuit)
+                .chain(() -> {
+                    Timer.Sample call = finnhubGateway.startCall();
+                    return finnhubClient.getCompanyProfile(symbol, finnhubApiKey)
+                            .onItemOrFailure().invoke((profile, failure) -> finnhubGateway.recordCall(call, failure));
+                })
+                .onFailure(ReactiveFinnhubGateway::isTooManyRequests).recoverWithUni(failure -> {
+                    // Everyone backs off, not just this caller: the quota is shared.
+                    Duration backoff = finnhubGateway.retryAfter(((WebApplicationException) failure).getResponse(), attempt);
+                    finnhubGateway.rateLimiter().pauseFor(backoff);
+                    LOGGER.warn("Finnhub rate limit exceeded for symbol {}. Backing off for {}.", symbol, backoff);
+                    if (attempt >= maxRetries) {
+                        return Uni.createFrom().failure(FinnhubGateway.serviceUnavailable(backoff));
+                    }
+                    return attempt(symbol, attempt + 1);
+                });
+    }
+
+    /**
+     * @return false while the shared circuit breaker is open, see {@link FinnhubGateway#isAvailable()}.
+     */
+    public boolean isAvailable() {
+        return finnhubGateway.isAvailable();
+    }
+
+    /**
+     * @return A Uni failing with 503 while the shared circuit breaker is open, see {@link FinnhubGateway#checkCircuit()}.
+     */
+    public Uni<Void> checkCircuit() {
+        return Uni.createFrom().voidItem().invoke(finnhubGateway::checkCircuit);
+    }
+
+    /**
+     * Takes a token from the shared bucket, re-checking after a timer instead of sleeping while it is empty.
+     */
+    private Uni<Void> acquirePermit(long deadline) {
+        return Uni.createFrom().deferred(() -> {
+            long waitNanos = finnhubGateway.rateLimiter().tryConsume();
+            if (waitNanos == 0) {
+                return Uni.createFrom().voidItem();
+            }
+            if (waitNanos > deadline - System.nanoTime()) {
+                return Uni.createFrom().failure(FinnhubGateway.serviceUnavailable(Duration.ofSeconds(1)));
+            }
+            return Uni.createFrom().voidItem()
+                    .onItem().delayIt().by(Duration.ofNanos(waitNanos))
+                    .chain(() -> acquirePermit(deadline));
+        });
+    }
+
+    private static boolean isTooManyRequests(Throwable failure) {
+        return failure instanceof WebApplicationException e
+                && e.getResponse() != null
+                && e.getResponse().getStatus() == TOO_MANY_REQUESTS;
+    }
+}
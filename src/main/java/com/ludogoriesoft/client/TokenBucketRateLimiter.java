@@ -0,0 +1,127 @@
+package com.ludogoriesoft.client;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * A token-bucket rate limiter. The bucket holds up to {@code burst} tokens and is refilled continuously
+ * at {@code permitsPerMinute}; every call takes one token. Callers that find the bucket empty wait in line,
+ * but only for a bounded time, and only if the line isn't already full.
+ *
+ * The bucket can also be paused (for example when the upstream answers 429 with a Retry-After header),
+ * in which case no tokens are handed out until the pause is over.
+ */
+public class TokenBucketRateLimiter {
+
+    private final double capacity;
+    private final double tokensPerNano;
+    private final int maxQueueDepth;
+    private final LongSupplier nanoTime;
+
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final LongAdder throttled = new LongAdder();
+
+    private double tokens;
+    private long lastRefill;
+    private long pausedUntil;
+
+    public TokenBucketRateLimiter(int permitsPerMinute, int burst, int maxQueueDepth) {
+        this(permitsPerMinute, burst, maxQueueDepth, System::nanoTime);
+    }
+
+    TokenBucketRateLimiter(int permitsPerMinute, int burst, int maxQueueDepth, LongSupplier nanoTime) {
+        this.capacity = burst;
+        this.tokensPerNano = permitsPerMinute / (double) TimeUnit.MINUTES.toNanos(1);
+        this.maxQueueDepth = maxQueueDepth;
+        this.nanoTime = nanoTime;
+        this.tokens = burst;
+        this.lastRefill = nanoTime.getAsLong();
+        this.pausedUntil = lastRefill;
+    }
+
+    /**
+     * Takes a token, waiting for one if necessary.
+     *
+     * @param maxWait The longest time the caller is willing to wait.
+     * @return true if a token was taken, false if the caller was throttled
+     *         (the line was full, or no token became available within maxWait).
+     */
+    public boolean tryAcquire(Duration maxWait) throws InterruptedException {
+        long waitNanos = tryConsume();
+        if (waitNanos == 0) {
+            return true;
+        }
+        if (waiting.incrementAndGet() > maxQueueDepth) {
+            waiting.decrementAndGet();
+            throttled.increment();
+            return false;
+        }
+        try {
+            long deadline = nanoTime.getAsLong() + maxWait.toNanos();
+            while (waitNanos > 0) {
+                long remaining = deadline - nanoTime.getAsLong();
+                if (waitNanos > remaining) {
+                    throttled.increment();
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+                waitNanos = tryConsume();
+            }
+            return true;
+        } finally {
+            waiting.decrementAndGet();
+        }
+    }
+
+    /**
+     * Stops handing out tokens for the given duration and drains the bucket,
+     * so that traffic resumes gradually once the pause is over.
+     */
+    public synchronized void pauseFor(Duration duration) {
+        refill();
+        pausedUntil = Math.max(pausedUntil, nanoTime.getAsLong() + duration.toNanos());
+        tokens = 0;
+    }
+
+    /**
+     * @return 0 if a token was taken, otherwise the number of nanoseconds until one may be available.
+     */
+    synchronized long tryConsume() {
+        refill();
+        long now = nanoTime.getAsLong();
+        if (now < pausedUntil) {
+            return pausedUntil - now;
+        }
+        if (tokens >= 1) {
+            tokens -= 1;
+            return 0;
+        }
+        return Math.max(1, (long) Math.ceil((1 - tokens) / tokensPerNano));
+    }
+
+    public synchronized double availableTokens() {
+        refill();
+        return tokens;
+    }
+
+    public int queueDepth() {
+        return waiting.get();
+    }
+
+    public long throttledCount() {
+        return throttled.sum();
+    }
+
+    private void refill() {
+        long now = nanoTime.getAsLong();
+        // While paused, the bucket stays empty.
+        long refillFrom = Math.max(lastRefill, pausedUntil);
+        if (now > refillFrom) {
+            tokens = Math.min(capacity, tokens + (now - refillFrom) * tokensPerNano);
+        }
+        lastRefill = Math.max(now, lastRefill);
+    }
+}
@@ -0,0 +1,13 @@
+package com.ludogoriesoft.dto;
+
+import java.util.List;
+
+/**
+ * The summary of a bulk company import, together with the outcome of every row.
+ */
+public record CompanyImportResultDto(
+        int created,
+        int conflicts,
+        int invalid,
+        List<CompanyImportRowDto> rows
+) {}
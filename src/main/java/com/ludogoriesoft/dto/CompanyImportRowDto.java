@@ -0,0 +1,27 @@
+package com.ludogoriesoft.dto;
+
+import java.util.List;
+
+/**
+ * The outcome of importing a single row of a bulk company import.
+ *
+ * @param row The 1-based position of the row in the request body.
+ * @param symbol The symbol of the company, if it could be read.
+ * @param status Whether the company was created, already existed, or was rejected.
+ * @param id The ID of the created company. Only set when the status is CREATED.
+ * @param errors The validation or parsing errors. Only set when the status is INVALID.
+ */
+public record CompanyImportRowDto(
+        int row,
+        String symbol,
+        Status status,
+        Long id,
+        List<String> errors
+) {
+
+    public enum Status {
+        CREATED,
+        CONFLICT,
+        INVALID
+    }
+}
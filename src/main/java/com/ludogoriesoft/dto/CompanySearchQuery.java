@@ -0,0 +1,14 @@
+package com.ludogoriesoft.dto;
+
+/**
+ * The filters of a company search. Every filter is optional, and the ones that are given must all match.
+ *
+ * @param country The two-letter country code, matched exactly.
+ * @param namePrefix The start of the company name, matched case-insensitively.
+ * @param symbolPrefix The start of the stock symbol, matched case-insensitively.
+ */
+public record CompanySearchQuery(
+        String country,
+        String namePrefix,
+        String symbolPrefix
+) {}
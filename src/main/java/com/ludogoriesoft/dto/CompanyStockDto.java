@@ -11,8 +11,22 @@ public record CompanyStockDto(
         String website,
         String email,
         Instant createdAt,
+        Long version,
 
         // Fields from Finnhub (and our StockData table)
         Double marketCapitalization,
-        Double shareOutstanding
-) {}
\ No newline at end of file
+        Double shareOutstanding,
+        Instant fetchedAt,
+
+        // True if the stock data is not from today (the latest we have while a refresh is pending or Finnhub is down)
+        boolean stale
+) {
+
+    /**
+     * @return A copy of this DTO that is marked as stale.
+     */
+    public CompanyStockDto asStale() {
+        return new CompanyStockDto(id, name, country, symbol, website, email, createdAt, version,
+                marketCapitalization, shareOutstanding, fetchedAt, true);
+    }
+}
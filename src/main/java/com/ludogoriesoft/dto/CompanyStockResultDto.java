@@ -0,0 +1,18 @@
+package com.ludogoriesoft.dto;
+
+/**
+ * One entry of a batch stock lookup: either the combined company and stock data, or the reason it couldn't be loaded.
+ */
+public record CompanyStockResultDto(
+        CompanyStockDto data,
+        String error
+) {
+
+    public static CompanyStockResultDto success(CompanyStockDto data) {
+        return new CompanyStockResultDto(data, null);
+    }
+
+    public static CompanyStockResultDto failure(String error) {
+        return new CompanyStockResultDto(null, error);
+    }
+}
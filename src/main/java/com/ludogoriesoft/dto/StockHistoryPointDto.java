@@ -0,0 +1,20 @@
+package com.ludogoriesoft.dto;
+
+import java.time.Instant;
+
+/**
+ * One point of a company's stock history.
+ *
+ * @param bucket The start of the bucket this point summarizes. For raw history, the time of the snapshot.
+ * @param fetchedAt When the latest snapshot within the bucket was fetched.
+ * @param marketCapitalization The market capitalization, aggregated over the bucket.
+ * @param shareOutstanding The shares outstanding, aggregated over the bucket.
+ * @param samples The number of snapshots within the bucket.
+ */
+public record StockHistoryPointDto(
+        Instant bucket,
+        Instant fetchedAt,
+        Double marketCapitalization,
+        Double shareOutstanding,
+        long samples
+) {}
@@ -0,0 +1,50 @@
+package com.ludogoriesoft.dto;
+
+import java.time.Instant;
+
+/**
+ * The parameters of a stock history read.
+ *
+ * @param from The start of the time range, inclusive.
+ * @param to The end of the time range, exclusive.
+ * @param resolution The size of the buckets the snapshots are downsampled into.
+ * @param aggregation How the snapshots within one bucket are combined into a single point.
+ */
+public record StockHistoryQuery(
+        Instant from,
+        Instant to,
+        Resolution resolution,
+        Aggregation aggregation
+) {
+
+    /**
+     * Bucket sizes, aligned to UTC calendar boundaries. RAW returns every snapshot as its own point.
+     */
+    public enum Resolution {
+        RAW(null),
+        HOUR("hour"),
+        DAY("day"),
+        WEEK("week"),
+        MONTH("month");
+
+        private final String truncUnit;
+
+        Resolution(String truncUnit) {
+            this.truncUnit = truncUnit;
+        }
+
+        /**
+         * @return The Postgres date_trunc field for this bucket size, or null for RAW.
+         */
+        public String truncUnit() {
+            return truncUnit;
+        }
+    }
+
+    public enum Aggregation {
+        /** The latest snapshot within the bucket. */
+        LAST,
+        /** The average of all snapshots within the bucket. */
+        AVG
+    }
+}
@@ -0,0 +1,26 @@
+package com.ludogoriesoft.dto;
+
+import java.time.Instant;
+
+/**
+ * The progress of the background pre-warming of the daily stock snapshots.
+ *
+ * @param running Whether a pre-warm run is currently in progress.
+ * @param freshnessWindowStart The start of the day the current (or last) run is refreshing data for.
+ * @param total The number of companies that needed fresh data when the run started.
+ * @param refreshed The number of companies refreshed so far.
+ * @param failed The number of companies that could not be refreshed.
+ * @param lastCompanyId The ID of the last company processed.
+ * @param startedAt When the current (or last) run started.
+ * @param finishedAt When the last run finished. Null while a run is in progress.
+ */
+public record StockPrewarmStatusDto(
+        boolean running,
+        Instant freshnessWindowStart,
+        long total,
+        long refreshed,
+        long failed,
+        Long lastCompanyId,
+        Instant startedAt,
+        Instant finishedAt
+) {}
@@ -1,10 +1,14 @@
 package com.ludogoriesoft.entity;
 
 import io.quarkus.hibernate.orm.panache.PanacheEntity;
+import jakarta.persistence.Cacheable;
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.Table;
+import jakarta.persistence.Version;
 import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.NaturalId;
+import org.hibernate.annotations.NaturalIdCache;
 
 import java.time.Instant;
 
@@ -12,9 +16,14 @@ import java.time.Instant;
  * Represents a company entity that will be mapped to the 'companies' table in the database.
  * By extending PanacheEntity, we automatically get an 'id' field of type Long.
  * This entity follows the standard JavaBean pattern with private fields and public accessors.
+ *
+ * Companies change rarely, so they are kept in the Hibernate second-level cache, by ID and by symbol.
+ * Other application nodes are told about changes through Postgres notifications, see CompanyCacheInvalidator.
  */
 @Entity
 @Table(name = "companies")
+@Cacheable
+@NaturalIdCache
 public class Company extends PanacheEntity {
 
     @Column(nullable = false)
@@ -23,6 +32,8 @@ public class Company extends PanacheEntity {
     @Column(length = 2, nullable = false)
     private String country;
 
+    // Updates may change the symbol, so the natural ID is mutable.
+    @NaturalId(mutable = true)
     @Column(unique = true, nullable = false)
     private String symbol;
 
@@ -35,6 +46,12 @@ public class Company extends PanacheEntity {
     @Column(nullable = false, updatable = false)
     private Instant createdAt;
 
+    // Incremented on every update. Responses derive their ETag from it, and a concurrent update fails
+    // instead of silently overwriting the other one.
+    @Version
+    @Column(nullable = false)
+    private Long version;
+
     public String getName() {
         return name;
     }
@@ -78,4 +95,13 @@ public class Company extends PanacheEntity {
     public Instant getCreatedAt() {
         return createdAt;
     }
+
+    // Only for rows inserted with native SQL, where @CreationTimestamp doesn't apply.
+    public void setCreatedAt(Instant createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public Long getVersion() {
+        return version;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,31 @@
+package com.ludogoriesoft.entity;
+
+import io.quarkus.hibernate.orm.panache.PanacheEntityBase;
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * A short-lived claim on refreshing one company's stock data from Finnhub.
+ * The row is written and committed before the Finnhub call, so the claim is visible to every
+ * application node without keeping a transaction open, and it simply expires if its holder dies.
+ * The owner is a random token of the holder, so only the holder can release its claim.
+ */
+@Entity
+@Table(name = "stock_refresh_leases")
+public class StockRefreshLease extends PanacheEntityBase {
+
+    @Id
+    @Column(name = "company_id")
+    public Long companyId;
+
+    @Column(nullable = false)
+    public Instant leasedUntil;
+
+    @Column(nullable = false)
+    public UUID owner;
+}
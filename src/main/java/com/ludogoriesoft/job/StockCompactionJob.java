@@ -0,0 +1,83 @@
+package com.ludogoriesoft.job;
+
+import com.ludogoriesoft.repository.StockRollupRepository;
+import io.quarkus.scheduler.Scheduled;
+import jakarta.enterprise.context.ApplicationScoped;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.Optional;
+
+/**
+ * Rolls the raw stock snapshots up into one row per company and UTC day, then deletes the raw snapshots
+ * that are older than the configured retention. Only days that are over are rolled up, and raw snapshots are
+ * only deleted once their day has a rollup, so history at day resolution and coarser never loses data.
+ * <p>
+ * Progress is kept in a watermark in the database and every day is rolled up in its own transaction,
+ * so a run that is interrupted, or a node that was down for a while, just continues where the last one stopped.
+ */
+@ApplicationScoped
+public class StockCompactionJob {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(StockCompactionJob.class);
+
+    private final StockRollupRepository rollupRepository;
+    private final Duration rawRetention;
+    private final int maxDaysPerRun;
+    private final Clock clock;
+
+    public StockCompactionJob(StockRollupRepository rollupRepository,
+                              @ConfigProperty(name = "stock.compaction.raw-retention", defaultValue = "P7D") Duration rawRetention,
+                              @ConfigProperty(name = "stock.compaction.max-days-per-run", defaultValue = "31") int maxDaysPerRun) {
+        this(rollupRepository, rawRetention, maxDaysPerRun, Clock.systemUTC());
+    }
+
+    StockCompactionJob(StockRollupRepository rollupRepository, Duration rawRetention, int maxDaysPerRun, Clock clock) {
+        this.rollupRepository = rollupRepository;
+        this.rawRetention = rawRetention;
+        this.maxDaysPerRun = maxDaysPerRun;
+        this.clock = clock;
+    }
+
+    @Scheduled(every = "{stock.compaction.every}", concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    void scheduledCompaction() {
+        compact();
+    }
+
+    /**
+     * Rolls up the days that are over and don't have rollups yet, up to the configured number of days per run,
+     * and deletes the raw snapshots past the retention whose days have been rolled up.
+     */
+    public void compact() {
+        LocalDate today = LocalDate.now(clock.withZone(ZoneOffset.UTC));
+        Optional<LocalDate> rolledUpThrough = rollupRepository.findRolledUpThrough();
+        Optional<LocalDate> next = rolledUpThrough.map(day -> day.plusDays(1)).or(rollupRepository::findFirstRawDay);
+
+        if (next.isPresent()) {
+            LocalDate day = next.get();
+            for (int i = 0; i < maxDaysPerRun && day.isBefore(today); i++, day = day.plusDays(1)) {
+                rollupRepository.rollUpDay(day);
+                rolledUpThrough = Optional.of(day);
+            }
+        }
+
+        if (rolledUpThrough.isEmpty()) {
+            return;
+        }
+        // Never deletes past the watermark, even if the retention is shorter than a day.
+        Instant retentionCutoff = clock.instant().minus(rawRetention);
+        Instant rolledUpCutoff = rolledUpThrough.get().plusDays(1).atStartOfDay().toInstant(ZoneOffset.UTC);
+        Instant cutoff = retentionCutoff.isBefore(rolledUpCutoff) ? retentionCutoff : rolledUpCutoff;
+        StockRollupRepository.RawDeletion deletion = rollupRepository.deleteRawBefore(cutoff);
+        if (!deletion.isEmpty()) {
+            LOGGER.info("Compacted stock data: rolled up through {}, dropped the partitions of {} and deleted {} more raw snapshots before {}",
+                    rolledUpThrough.get(), deletion.droppedPartitions(), deletion.deletedSnapshots(), cutoff);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.ludogoriesoft.job;
+
+import com.ludogoriesoft.repository.StockDataPartitionRepository;
+import io.quarkus.scheduler.Scheduled;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.transaction.Transactional;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Clock;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+
+/**
+ * Maintains the monthly partitions of the stock_data table.
+ * It creates the partitions for the current and the next few months ahead of time, so inserts never find
+ * a month without a partition, and it enforces retention by dropping whole partitions once they are older
+ * than the configured number of months. Dropping a partition is instant, unlike deleting its rows.
+ */
+@ApplicationScoped
+public class StockDataPartitionJob {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(StockDataPartitionJob.class);
+
+    private final StockDataPartitionRepository partitionRepository;
+    private final int monthsAhead;
+    private final int retentionMonths;
+    private final Clock clock;
+
+    public StockDataPartitionJob(StockDataPartitionRepository partitionRepository,
+                                 @ConfigProperty(name = "stock.partitions.months-ahead", defaultValue = "2") int monthsAhead,
+                                 @ConfigProperty(name = "stock.partitions.retention-months", defaultValue = "13") int retentionMonths) {
+        this(partitionRepository, monthsAhead, retentionMonths, Clock.systemUTC());
+    }
+
+    StockDataPartitionJob(StockDataPartitionRepository partitionRepository, int monthsAhead, int retentionMonths, Clock clock) {
+        this.partitionRepository = partitionRepository;
+        this.monthsAhead = monthsAhead;
+        this.retentionMonths = retentionMonths;
+        this.clock = clock;
+    }
+
+    // Runs right after startup too, so a node that was down for a while catches up before it inserts anything.
+    @Scheduled(every = "{stock.partitions.every}", concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    void scheduledMaintenance() {
+        maintainPartitions();
+    }
+
+    /**
+     * Creates the missing partitions up to the configured number of months ahead,
+     * and drops the ones that fell out of the retention window.
+     */
+    @Transactional
+    public void maintainPartitions() {
+        YearMonth currentMonth = YearMonth.now(clock.withZone(ZoneOffset.UTC));
+
+        for (int i = 0; i <= monthsAhead; i++) {
+            partitionRepository.createPartition(currentMonth.plusMonths(i));
+        }
+
+        // The current month counts as the first month of the retention window.
+        YearMonth oldestRetained = currentMonth.minusMonths(retentionMonths - 1L);
+        for (YearMonth month : partitionRepository.findPartitionMonths()) {
+            if (month.isBefore(oldestRetained)) {
+                LOGGER.info("Dropping stock data partition for {} (retention is {} months)", month, retentionMonths);
+                partitionRepository.dropPartition(month);
+            }
+        }
+    }
+}
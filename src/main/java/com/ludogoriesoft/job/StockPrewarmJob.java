@@ -0,0 +1,118 @@
+package com.ludogoriesoft.job;
+
+import com.ludogoriesoft.cache.StockFreshness;
+import com.ludogoriesoft.dto.StockPrewarmStatusDto;
+import com.ludogoriesoft.repository.CompanyRepository;
+import com.ludogoriesoft.service.CompanyService;
+import io.quarkus.scheduler.Scheduled;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.context.control.ActivateRequestContext;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Refreshes the daily stock snapshot of every company in the background, shortly after the freshness boundary,
+ * so that user-facing requests to GET /companies/{id}/stocks are almost always cache hits.
+ *
+ * Each run only visits companies that don't have data for today yet, so a run that was interrupted
+ * (for example by a restart) simply continues with the remaining companies on the next tick.
+ * Calls are spaced out by a configurable pacing interval to stay under the Finnhub rate limit.
+ */
+@ApplicationScoped
+public class StockPrewarmJob {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(StockPrewarmJob.class);
+    private static final int PAGE_SIZE = 100;
+
+    private final CompanyRepository companyRepository;
+    private final CompanyService companyService;
+    private final Duration pacing;
+    private final Clock clock = Clock.systemUTC();
+
+    private volatile StockPrewarmStatusDto status = new StockPrewarmStatusDto(false, null, 0, 0, 0, null, null, null);
+
+    public StockPrewarmJob(CompanyRepository companyRepository,
+                           CompanyService companyService,
+                           @ConfigProperty(name = "stock.prewarm.pacing", defaultValue = "1100ms") Duration pacing) {
+        this.companyRepository = companyRepository;
+        this.companyService = companyService;
+        this.pacing = pacing;
+    }
+
+    @Scheduled(every = "{stock.prewarm.every}", delayed = "{stock.prewarm.initial-delay}",
+            concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    void scheduledPrewarm() {
+        prewarm();
+    }
+
+    /**
+     * Refreshes the stock data of every company that has no data for the current freshness window yet.
+     */
+    @ActivateRequestContext
+    public void prewarm() {
+        Instant windowStart = StockFreshness.startOfToday(clock);
+        long pending = companyRepository.countWithoutStockDataSince(windowStart);
+        if (pending == 0) {
+            return;
+        }
+
+        LOGGER.info("Pre-warming stock data for {} companies", pending);
+        Instant startedAt = clock.instant();
+        long refreshed = 0;
+        long failed = 0;
+        Long afterId = 0L;
+        Long lastCompanyId = null;
+        status = new StockPrewarmStatusDto(true, windowStart, pending, 0, 0, null, startedAt, null);
+
+        // The run is over however it ends, also when it is interrupted or a page can't be read.
+        try {
+            List<Long> companyIds;
+            while (!(companyIds = companyRepository.findIdsWithoutStockDataSince(windowStart, afterId, PAGE_SIZE)).isEmpty()) {
+                for (Long companyId : companyIds) {
+                    try {
+                        // Goes through the regular read path, so the snapshot is stored and the L1 cache is populated.
+                        // Waits for the refresh instead of taking yesterday's data, which is what we are here to replace.
+                        companyService.getFreshCompanyStockData(companyId);
+                        refreshed++;
+                    } catch (RuntimeException e) {
+                        failed++;
+                        LOGGER.warn("Failed to pre-warm stock data for company ID: {}", companyId, e);
+                    }
+                    lastCompanyId = companyId;
+                    status = new StockPrewarmStatusDto(true, windowStart, pending, refreshed, failed, companyId, startedAt, null);
+                    if (!pause()) {
+                        LOGGER.info("Pre-warming interrupted: {} refreshed, {} failed", refreshed, failed);
+                        return;
+                    }
+                }
+                afterId = companyIds.get(companyIds.size() - 1);
+            }
+            LOGGER.info("Pre-warmed stock data: {} refreshed, {} failed", refreshed, failed);
+        } finally {
+            status = new StockPrewarmStatusDto(false, windowStart, pending, refreshed, failed, lastCompanyId, startedAt, clock.instant());
+        }
+    }
+
+    public StockPrewarmStatusDto getStatus() {
+        return status;
+    }
+
+    private boolean pause() {
+        if (pacing.isZero()) {
+            return true;
+        }
+        try {
+            Thread.sleep(pacing.toMillis());
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
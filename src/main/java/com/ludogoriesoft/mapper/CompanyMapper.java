@@ -69,6 +69,26 @@ public class CompanyMapper {
         entity.setEmail(dto.email());
     }
 
+    /**
+     * Converts a Company entity to a CompanyStockDto without any stock data.
+     */
+    public CompanyStockDto toCompanyStockDto(Company company) {
+        return new CompanyStockDto(
+                company.id,
+                company.getName(),
+                company.getCountry(),
+                company.getSymbol(),
+                company.getWebsite(),
+                company.getEmail(),
+                company.getCreatedAt(),
+                company.getVersion(),
+                null,
+                null,
+                null,
+                false
+        );
+    }
+
     public CompanyStockDto toCompanyStockDto(Company company, StockData stockData) {
         return new CompanyStockDto(
                 company.id,
@@ -78,8 +98,31 @@ public class CompanyMapper {
                 company.getWebsite(),
                 company.getEmail(),
                 company.getCreatedAt(),
+                company.getVersion(),
+                stockData.getMarketCapitalization(),
+                stockData.getShareOutstanding(),
+                stockData.fetchedAt,
+                false
+        );
+    }
+
+    /**
+     * Combines a company that was read without its stock data, or with outdated stock data, with a new snapshot.
+     */
+    public CompanyStockDto withStockData(CompanyStockDto company, StockData stockData) {
+        return new CompanyStockDto(
+                company.id(),
+                company.name(),
+                company.country(),
+                company.symbol(),
+                company.website(),
+                company.email(),
+                company.createdAt(),
+                company.version(),
                 stockData.getMarketCapitalization(),
-                stockData.getShareOutstanding()
+                stockData.getShareOutstanding(),
+                stockData.fetchedAt,
+                false
         );
     }
-}
\ No newline at end of file
+}
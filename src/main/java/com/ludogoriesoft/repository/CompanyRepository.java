@@ -1,10 +1,40 @@
 package com.ludogoriesoft.repository;
 
+import com.ludogoriesoft.dto.CompanyDto;
+import com.ludogoriesoft.dto.CompanySearchQuery;
 import com.ludogoriesoft.entity.Company;
+import io.micrometer.core.annotation.Timed;
 import io.quarkus.hibernate.orm.panache.PanacheRepository;
 import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.persistence.TypedQuery;
+import jakarta.transaction.Transactional;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.hibernate.FlushMode;
+import org.hibernate.Session;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.IdentifierGenerator;
+import org.hibernate.jpa.HibernateHints;
 
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 /**
  * The Repository for the Company entity. Implements the PanacheRepository interface,
@@ -16,7 +46,291 @@ import java.util.Optional;
 @ApplicationScoped
 public class CompanyRepository implements PanacheRepository<Company> {
 
+    @ConfigProperty(name = "companies.stream.fetch-size", defaultValue = "500")
+    int streamFetchSize;
+
+    /**
+     * Looks a company up by its symbol, which is its natural ID. Served from the second-level cache
+     * when the symbol's company has been loaded before, without any query.
+     */
+    @Timed(value = "repository.queries", extraTags = {"query", "findBySymbol"}, histogram = true)
     public Optional<Company> findBySymbol(String symbol) {
-        return find("symbol", symbol).firstResultOptional();
+        return getEntityManager().unwrap(Session.class)
+                .bySimpleNaturalId(Company.class)
+                .loadOptional(symbol);
+    }
+
+    /**
+     * Loads many companies by ID. Unlike an "id in" query, this is answered from the second-level cache
+     * for every company that is in it, and only the others are read from the database, in one query.
+     *
+     * @param ids The IDs of the companies.
+     * @return The found companies, in the order of the given IDs. Unknown IDs are left out.
+     */
+    public List<Company> findByIds(Collection<Long> ids) {
+        return getEntityManager().unwrap(Session.class)
+                .findMultiple(Company.class, List.copyOf(ids))
+                .stream()
+                .filter(Objects::nonNull)
+                .toList();
+    }
+
+    // Reads rows straight into CompanyDto records. Nothing is added to the persistence context,
+    // so there are no entities to hydrate, snapshot for dirty checking, or flush.
+    private static final String SELECT_COMPANY_DTO = "select new com.ludogoriesoft.dto.CompanyDto("
+            + "c.id, c.name, c.country, c.symbol, c.website, c.email, c.createdAt) from Company c ";
+
+    /**
+     * Returns one page of companies using keyset pagination on the ID.
+     * Unlike offset pagination, the cost of a page doesn't grow with how deep into the table it is.
+     *
+     * @param afterId The ID of the last company of the previous page, or null for the first page.
+     * @param limit The maximum number of companies to return.
+     * @return The companies with an ID greater than afterId, ordered by ID.
+     */
+    @Timed(value = "repository.queries", extraTags = {"query", "findPage"}, histogram = true)
+    public List<CompanyDto> findPage(Long afterId, int limit) {
+        return getEntityManager()
+                .createQuery(SELECT_COMPANY_DTO + "where c.id > :afterId order by c.id", CompanyDto.class)
+                .setParameter("afterId", afterId == null ? 0L : afterId)
+                .setHint(HibernateHints.HINT_FLUSH_MODE, FlushMode.MANUAL)
+                .setMaxResults(limit)
+                .getResultList();
+    }
+
+    /**
+     * Returns one page of the companies matching all given filters, using keyset pagination on the ID.
+     * Only the filters that are set end up in the query, so the planner can pick the matching index
+     * (see the V6 migration): (country, id) for a country, and the text_pattern_ops indexes for the prefixes.
+     *
+     * @param query The filters. Blank ones are ignored.
+     * @param afterId The ID of the last company of the previous page, or null for the first page.
+     * @param limit The maximum number of companies to return.
+     * @return The matching companies with an ID greater than afterId, ordered by ID.
+     */
+    @Timed(value = "repository.queries", extraTags = {"query", "search"}, histogram = true)
+    public List<CompanyDto> search(CompanySearchQuery query, Long afterId, int limit) {
+        StringBuilder where = new StringBuilder("where c.id > :afterId");
+        Map<String, Object> parameters = new HashMap<>();
+        parameters.put("afterId", afterId == null ? 0L : afterId);
+        if (isSet(query.country())) {
+            where.append(" and c.country = :country");
+            parameters.put("country", query.country());
+        }
+        if (isSet(query.namePrefix())) {
+            where.append(" and lower(c.name) like :namePrefix escape '!'");
+            parameters.put("namePrefix", likePrefix(query.namePrefix().toLowerCase(Locale.ROOT)));
+        }
+        if (isSet(query.symbolPrefix())) {
+            where.append(" and c.symbol like :symbolPrefix escape '!'");
+            parameters.put("symbolPrefix", likePrefix(query.symbolPrefix().toUpperCase(Locale.ROOT)));
+        }
+        TypedQuery<CompanyDto> search = getEntityManager()
+                .createQuery(SELECT_COMPANY_DTO + where.append(" order by c.id"), CompanyDto.class)
+                .setHint(HibernateHints.HINT_FLUSH_MODE, FlushMode.MANUAL)
+                .setMaxResults(limit);
+        parameters.forEach(search::setParameter);
+        return search.getResultList();
+    }
+
+    private static boolean isSet(String filter) {
+        return filter != null && !filter.isBlank();
+    }
+
+    // User input must only ever match literally, so LIKE wildcards in it are escaped.
+    private static String likePrefix(String prefix) {
+        return prefix.replace("!", "!!").replace("%", "!%").replace("_", "!_") + "%";
+    }
+
+    /**
+     * Computes a fingerprint of the page {@link #findPage(Long, int)} would return, from the ID and version
+     * of every company on it. It changes whenever a company on the page is updated, or one is added or removed,
+     * but it is computed in the database and only one short value is returned, so it is much cheaper than the page.
+     *
+     * @param afterId The ID of the last company of the previous page, or null for the first page.
+     * @param limit The maximum number of companies on the page.
+     * @return The MD5 hex digest of the page's "id:version" pairs.
+     */
+    public String findPageFingerprint(Long afterId, int limit) {
+        return (String) getEntityManager()
+                .createNativeQuery("SELECT md5(coalesce(string_agg(id || ':' || version, ',' ORDER BY id), '')) "
+                        + "FROM (SELECT id, version FROM companies WHERE id > ?1 ORDER BY id LIMIT ?2) page", String.class)
+                .setParameter(1, afterId == null ? 0L : afterId)
+                .setParameter(2, limit)
+                .getSingleResult();
+    }
+
+    /**
+     * Passes every company, ordered by ID, to the given action.
+     * Rows are read from a database cursor in chunks of the configured fetch size, and the persistence context
+     * is cleared after each chunk, so memory usage stays flat no matter how big the table is.
+     * Must be called inside a transaction.
+     */
+    public void forEachCompany(Consumer<Company> action) {
+        try (Stream<Company> companies = find("order by id")
+                .withHint(HibernateHints.HINT_FETCH_SIZE, streamFetchSize)
+                .withHint(HibernateHints.HINT_READ_ONLY, true)
+                .stream()) {
+            Iterator<Company> iterator = companies.iterator();
+            int count = 0;
+            while (iterator.hasNext()) {
+                action.accept(iterator.next());
+                if (++count % streamFetchSize == 0) {
+                    getEntityManager().clear();
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns one page of the IDs of companies that have no stock data fetched since the given moment.
+     * Because companies drop out of the result as soon as they are refreshed, walking these pages
+     * naturally resumes where a previous (interrupted) walk left off.
+     *
+     * @param since The start of the freshness window.
+     * @param afterId The last ID of the previous page, or 0 for the first page.
+     * @param limit The maximum number of IDs to return.
+     * @return The IDs, in ascending order.
+     */
+    public List<Long> findIdsWithoutStockDataSince(Instant since, Long afterId, int limit) {
+        return getEntityManager()
+                .createQuery("select c.id from Company c where c.id > :afterId and not exists "
+                        + "(select 1 from StockData s where s.company = c and s.fetchedAt >= :since) order by c.id", Long.class)
+                .setParameter("afterId", afterId)
+                .setParameter("since", since)
+                .setMaxResults(limit)
+                .getResultList();
+    }
+
+    /**
+     * @return The number of companies that have no stock data fetched since the given moment.
+     */
+    public long countWithoutStockDataSince(Instant since) {
+        return getEntityManager()
+                .createQuery("select count(c) from Company c where not exists "
+                        + "(select 1 from StockData s where s.company = c and s.fetchedAt >= :since)", Long.class)
+                .setParameter("since", since)
+                .getSingleResult();
+    }
+
+    /**
+     * Inserts a batch of new companies with a single statement, skipping every company whose symbol already exists.
+     * IDs are taken from Hibernate's own ID generator, so they never collide with companies persisted through JPA.
+     *
+     * @param companies The companies to insert. Each one gets its ID assigned, even if it turns out to be a conflict.
+     * @return For each company, in the same order: its ID if it was inserted, or null if its symbol already existed.
+     */
+    @Transactional
+    public List<Long> insertIgnoringConflicts(List<Company> companies) {
+        if (companies.isEmpty()) {
+            return List.of();
+        }
+        assignIds(companies);
+
+        Set<Long> insertedIds = getEntityManager().unwrap(Session.class)
+                .doReturningWork(connection -> insertReturningIds(connection, companies));
+
+        List<Long> results = new ArrayList<>(companies.size());
+        for (Company company : companies) {
+            results.add(insertedIds.contains(company.id) ? company.id : null);
+        }
+        return results;
+    }
+
+    /**
+     * Inserts a new company with a single INSERT ... ON CONFLICT (symbol) DO NOTHING statement.
+     * Unlike checking the symbol first and persisting afterwards, this can't race with a concurrent insert
+     * of the same symbol: the database decides, and exactly one of them wins.
+     *
+     * @param company The company to insert. It gets its ID assigned, and its createdAt if it was inserted.
+     * @return true if the company was inserted, false if its symbol already existed.
+     */
+    @Transactional
+    public boolean insertIfAbsent(Company company) {
+        assignIds(List.of(company));
+
+        Instant createdAt = getEntityManager().unwrap(Session.class).doReturningWork(connection -> {
+            String sql = "INSERT INTO companies (id, name, country, symbol, website, email, createdAt) "
+                    + "VALUES (?, ?, ?, ?, ?, ?, now()) "
+                    + "ON CONFLICT (symbol) DO NOTHING "
+                    + "RETURNING createdAt";
+            try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                statement.setLong(1, company.id);
+                statement.setString(2, company.getName());
+                statement.setString(3, company.getCountry());
+                statement.setString(4, company.getSymbol());
+                statement.setString(5, company.getWebsite());
+                statement.setString(6, company.getEmail());
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    return resultSet.next() ? resultSet.getObject(1, OffsetDateTime.class).toInstant() : null;
+                }
+            }
+        });
+
+        if (createdAt == null) {
+            return false;
+        }
+        company.setCreatedAt(createdAt);
+        return true;
+    }
+
+    private void assignIds(List<Company> companies) {
+        SharedSessionContractImplementor session = getEntityManager().unwrap(SharedSessionContractImplementor.class);
+        IdentifierGenerator idGenerator = (IdentifierGenerator) session.getFactory()
+                .getMappingMetamodel()
+                .getEntityDescriptor(Company.class)
+                .getGenerator();
+        for (Company company : companies) {
+            company.id = (Long) idGenerator.generate(session, company);
+        }
+    }
+
+    // The rows are passed as one array per column and expanded with unnest(), so a whole batch
+    // is a single round trip, and RETURNING tells us exactly which rows were inserted.
+    private static Set<Long> insertReturningIds(Connection connection, List<Company> companies) throws SQLException {
+        int size = companies.size();
+        Long[] ids = new Long[size];
+        String[] names = new String[size];
+        String[] countries = new String[size];
+        String[] symbols = new String[size];
+        String[] websites = new String[size];
+        String[] emails = new String[size];
+        for (int i = 0; i < size; i++) {
+            Company company = companies.get(i);
+            ids[i] = company.id;
+            names[i] = company.getName();
+            countries[i] = company.getCountry();
+            symbols[i] = company.getSymbol();
+            websites[i] = company.getWebsite();
+            emails[i] = company.getEmail();
+        }
+
+        String sql = "INSERT INTO companies (id, name, country, symbol, website, email, createdAt) "
+                + "SELECT id, name, country, symbol, website, email, now() "
+                + "FROM unnest(?::bigint[], ?::text[], ?::text[], ?::text[], ?::text[], ?::text[]) "
+                + "AS r(id, name, country, symbol, website, email) "
+                + "ON CONFLICT (symbol) DO NOTHING "
+                + "RETURNING id";
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            Array[] columns = {
+                    connection.createArrayOf("bigint", ids),
+                    connection.createArrayOf("text", names),
+                    connection.createArrayOf("text", countries),
+                    connection.createArrayOf("text", symbols),
+                    connection.createArrayOf("text", websites),
+                    connection.createArrayOf("text", emails)
+            };
+            for (int i = 0; i < columns.length; i++) {
+                statement.setArray(i + 1, columns[i]);
+            }
+
+            Set<Long> insertedIds = new HashSet<>();
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    insertedIds.add(resultSet.getLong(1));
+                }
+            }
+            return insertedIds;
+        }
     }
-}
\ No newline at end of file
+}
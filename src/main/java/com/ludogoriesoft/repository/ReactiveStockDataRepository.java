@@ -0,0 +1,144 @@
+package com.ludogoriesoft.repository;
+
+import com.ludogoriesoft.cache.StockFreshness;
+import com.ludogoriesoft.dto.CompanyStockDto;
+import com.ludogoriesoft.dto.FinnhubProfileDto;
+import io.smallrye.mutiny.Uni;
+import io.vertx.mutiny.sqlclient.Pool;
+import io.vertx.mutiny.sqlclient.Row;
+import io.vertx.mutiny.sqlclient.Tuple;
+import jakarta.enterprise.context.ApplicationScoped;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.UUID;
+
+/**
+ * The non-blocking counterpart of the queries {@link StockDataRepository} and {@link CompanyRepository}
+ * run for a stock lookup, on the reactive Postgres client. It works on the same tables as the Hibernate entities,
+ * so both paths see each other's snapshots and refresh claims.
+ */
+@ApplicationScoped
+public class ReactiveStockDataRepository {
+
+    private final Pool pool;
+
+    public ReactiveStockDataRepository(Pool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Loads a company together with its latest stock data from today, if there is any, in a single query.
+     *
+     * @param companyId The ID of the company.
+     * @return A Uni with the stored company, or a null item if the company doesn't exist.
+     */
+    public Uni<StoredCompanyStock> findCompanyWithTodaysStockData(Long companyId) {
+        return findCompanyWithStockDataSince(companyId, StockFreshness.startOfToday(Clock.systemUTC()));
+    }
+
+    /**
+     * Loads a company together with its latest stock data fetched at or after the given instant, whichever day
+     * that was, in a single query. This is what is served, marked as stale, while today's data is being refreshed.
+     *
+     * @param companyId The ID of the company.
+     * @param since The oldest fetchedAt that is still acceptable.
+     * @return A Uni with the stored company, or a null item if the company doesn't exist.
+     */
+    public Uni<StoredCompanyStock> findCompanyWithStockDataSince(Long companyId, Instant since) {
+        Instant endOfDay = StockFreshness.nextBoundary(Clock.systemUTC());
+        return pool.preparedQuery("SELECT c.id, c.name, c.country, c.symbol, c.website, c.email, c.createdAt, c.version, "
+                        + "s.marketCapitalization, s.shareOutstanding, s.fetchedAt "
+                        + "FROM companies c "
+                        + "LEFT JOIN LATERAL (SELECT marketCapitalization, shareOutstanding, fetchedAt FROM stock_data "
+                        + "WHERE company_id = c.id AND fetchedAt >= $2 AND fetchedAt < $3 ORDER BY fetchedAt DESC LIMIT 1) s ON true "
+                        + "WHERE c.id = $1")
+                .execute(Tuple.of(companyId, since.atOffset(ZoneOffset.UTC), endOfDay.atOffset(ZoneOffset.UTC)))
+                .map(rows -> rows.iterator().hasNext() ? toStoredCompanyStock(rows.iterator().next()) : null);
+    }
+
+    /**
+     * Stores a new StockData snapshot for a company and releases our refresh claim, if we hold one,
+     * in one insert-only transaction.
+     *
+     * @param companyId The ID of the company.
+     * @param finnhubData The profile returned by Finnhub.
+     * @param claimOwner The owner token of our refresh claim, or null if we refreshed without holding the claim.
+     * @return A Uni with the fetchedAt timestamp of the new snapshot.
+     */
+    public Uni<Instant> insertStockData(Long companyId, FinnhubProfileDto finnhubData, UUID claimOwner) {
+        // The ID comes from the same sequence Hibernate uses. Hibernate reserves the block of 50 IDs ending at
+        // the value it gets from nextval, so taking a value ourselves never collides with those blocks.
+        return pool.withTransaction(connection -> connection
+                .preparedQuery("INSERT INTO stock_data (id, marketCapitalization, shareOutstanding, fetchedAt, company_id) "
+                        + "VALUES (nextval('stock_data_SEQ'), $1, $2, now(), $3) RETURNING fetchedAt")
+                .execute(Tuple.of(finnhubData.marketCapitalization(), finnhubData.shareOutstanding(), companyId))
+                .call(() -> claimOwner == null
+                        ? Uni.createFrom().voidItem()
+                        : connection.preparedQuery("DELETE FROM stock_refresh_leases WHERE company_id = $1 AND owner = $2")
+                                .execute(Tuple.of(companyId, claimOwner)))
+                .map(rows -> toInstant(rows.iterator().next().getOffsetDateTime("fetchedat"))));
+    }
+
+    /**
+     * Tries to claim the refresh of a company's stock data, see {@link StockDataRepository#tryClaimRefresh}.
+     *
+     * @return A Uni with the owner token of the claim, or a null item if another node currently holds it.
+     */
+    public Uni<UUID> tryClaimRefresh(Long companyId, Duration lease) {
+        UUID owner = UUID.randomUUID();
+        return pool.preparedQuery("INSERT INTO stock_refresh_leases (company_id, leasedUntil, owner) "
+                        + "VALUES ($1, now() + make_interval(secs => $2), $3) "
+                        + "ON CONFLICT (company_id) DO UPDATE SET leasedUntil = EXCLUDED.leasedUntil, owner = EXCLUDED.owner "
+                        + "WHERE stock_refresh_leases.leasedUntil < now()")
+                .execute(Tuple.of(companyId, lease.toMillis() / 1000.0, owner))
+                .map(rows -> rows.rowCount() == 1 ? owner : null);
+    }
+
+    /**
+     * Releases a claim taken with {@link #tryClaimRefresh(Long, Duration)}, unless another node has taken it over.
+     */
+    public Uni<Void> releaseRefreshClaim(Long companyId, UUID owner) {
+        return pool.preparedQuery("DELETE FROM stock_refresh_leases WHERE company_id = $1 AND owner = $2")
+                .execute(Tuple.of(companyId, owner))
+                .replaceWithVoid();
+    }
+
+    private static StoredCompanyStock toStoredCompanyStock(Row row) {
+        Instant fetchedAt = toInstant(row.getOffsetDateTime("fetchedat"));
+        CompanyStockDto data = new CompanyStockDto(
+                row.getLong("id"),
+                row.getString("name"),
+                row.getString("country"),
+                row.getString("symbol"),
+                row.getString("website"),
+                row.getString("email"),
+                toInstant(row.getOffsetDateTime("createdat")),
+                row.getLong("version"),
+                row.getDouble("marketcapitalization"),
+                row.getDouble("shareoutstanding"),
+                fetchedAt,
+                false);
+        return new StoredCompanyStock(data, fetchedAt);
+    }
+
+    private static Instant toInstant(OffsetDateTime timestamp) {
+        return timestamp == null ? null : timestamp.toInstant();
+    }
+
+    /**
+     * A company as stored in the database, with its latest stock data from the queried time range.
+     *
+     * @param data The company, and its market data if there is any.
+     * @param fetchedAt When that stock data was fetched, or null if there is none in the range.
+     */
+    public record StoredCompanyStock(CompanyStockDto data, Instant fetchedAt) {
+
+        public boolean isFreshToday() {
+            return fetchedAt != null && !fetchedAt.isBefore(StockFreshness.startOfToday(Clock.systemUTC()));
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.ludogoriesoft.repository;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.persistence.EntityManager;
+
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Manages the monthly partitions of the stock_data table.
+ * Partitions are named stock_data_YYYY_MM and cover one calendar month in UTC, see the V3 migration.
+ */
+@ApplicationScoped
+public class StockDataPartitionRepository {
+
+    private static final String PARTITION_PREFIX = "stock_data_";
+    private static final DateTimeFormatter PARTITION_SUFFIX = DateTimeFormatter.ofPattern("yyyy_MM");
+
+    private final EntityManager entityManager;
+
+    public StockDataPartitionRepository(EntityManager entityManager) {
+        this.entityManager = entityManager;
+    }
+
+    /**
+     * @return The months that currently have a partition, oldest first.
+     */
+    @SuppressWarnings("unchecked")
+    public List<YearMonth> findPartitionMonths() {
+        List<String> names = entityManager.createNativeQuery(
+                        "SELECT child.relname::text FROM pg_inherits "
+                                + "JOIN pg_class parent ON parent.oid = pg_inherits.inhparent "
+                                + "JOIN pg_class child ON child.oid = pg_inherits.inhrelid "
+                                + "WHERE parent.relname = 'stock_data'")
+                .getResultList();
+        return names.stream()
+                .map(StockDataPartitionRepository::toMonth)
+                .flatMap(Optional::stream)
+                .sorted()
+                .toList();
+    }
+
+    /**
+     * Creates the partition for a month, unless it already exists.
+     *
+     * @param month The month the partition should cover.
+     */
+    public void createPartition(YearMonth month) {
+        // DDL can't take bind parameters. All values are derived from a YearMonth, so they are safe to inline.
+        String from = month.atDay(1).atStartOfDay().atOffset(ZoneOffset.UTC).toString();
+        String to = month.plusMonths(1).atDay(1).atStartOfDay().atOffset(ZoneOffset.UTC).toString();
+        entityManager.createNativeQuery("CREATE TABLE IF NOT EXISTS " + partitionName(month)
+                        + " PARTITION OF stock_data FOR VALUES FROM ('" + from + "') TO ('" + to + "')")
+                .executeUpdate();
+    }
+
+    /**
+     * Detaches the partition for a month from stock_data and drops it, and with it all stock data fetched in that month.
+     * Only call this for months returned by {@link #findPartitionMonths()}.
+     *
+     * @param month The month whose partition should be dropped.
+     */
+    public void dropPartition(YearMonth month) {
+        String partition = partitionName(month);
+        entityManager.createNativeQuery("ALTER TABLE stock_data DETACH PARTITION " + partition).executeUpdate();
+        entityManager.createNativeQuery("DROP TABLE " + partition).executeUpdate();
+    }
+
+    static String partitionName(YearMonth month) {
+        return PARTITION_PREFIX + month.format(PARTITION_SUFFIX);
+    }
+
+    private static Optional<YearMonth> toMonth(String partitionName) {
+        if (!partitionName.startsWith(PARTITION_PREFIX)) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(YearMonth.parse(partitionName.substring(PARTITION_PREFIX.length()), PARTITION_SUFFIX));
+        } catch (DateTimeParseException e) {
+            // Not one of ours (e.g. a partition created by hand); leave it alone.
+            return Optional.empty();
+        }
+    }
+}
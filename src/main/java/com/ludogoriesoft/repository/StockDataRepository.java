@@ -1,13 +1,33 @@
 package com.ludogoriesoft.repository;
+import com.ludogoriesoft.cache.StockFreshness;
+import com.ludogoriesoft.dto.CompanyStockDto;
+import com.ludogoriesoft.dto.StockHistoryPointDto;
+import com.ludogoriesoft.dto.StockHistoryQuery;
 import com.ludogoriesoft.entity.StockData;
+import io.micrometer.core.annotation.Timed;
 import io.quarkus.hibernate.orm.panache.PanacheRepository;
 import jakarta.enterprise.context.ApplicationScoped;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.hibernate.FlushMode;
+import org.hibernate.jpa.HibernateHints;
+import org.hibernate.query.NativeQuery;
+import java.time.Clock;
+import java.time.Duration;
 import java.time.Instant;
-import java.time.LocalDate;
-import java.time.ZoneOffset;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 @ApplicationScoped
 public class StockDataRepository implements PanacheRepository<StockData> {
+
+    @ConfigProperty(name = "stock.history.fetch-size", defaultValue = "500")
+    int historyFetchSize;
+
     /**
      * This is our caching method. It finds the most recent stock data entry for a given company
      * that was fetched today.
@@ -15,18 +35,232 @@ public class StockDataRepository implements PanacheRepository<StockData> {
      * @param companyId The ID of the company.
      * @return An Optional containing the StockData if found, otherwise an empty Optional.
      */
+    @Timed(value = "repository.queries", extraTags = {"query", "findLatestByCompanyIdForToday"}, histogram = true)
     public Optional<StockData> findLatestByCompanyIdForToday(Long companyId) {
-        // Get the timestamp for the beginning of today (midnight UTC).
-        Instant startOfDay = LocalDate.now().atStartOfDay().toInstant(ZoneOffset.UTC);
+        // Get the boundaries of today (midnight UTC to midnight UTC).
+        Instant startOfDay = StockFreshness.startOfToday(Clock.systemUTC());
+        Instant endOfDay = StockFreshness.nextBoundary(Clock.systemUTC());
 
         // Panache Query:
         // "company.id = ?1" -> matches the company ID.
-        // "and fetchedAt >= ?2" -> ensures the data was fetched on or after the start of today.
+        // "and fetchedAt >= ?2 and fetchedAt < ?3" -> ensures the data was fetched today. The upper bound lets
+        //     Postgres prune every partition except the current month's, including the ones created ahead of time.
         // "order by fetchedAt desc" -> gets the newest entry first.
         // .firstResultOptional() -> returns only the first result, wrapped in an Optional.
-        return find("company.id = ?1 and fetchedAt >= ?2 order by fetchedAt desc",
+        return find("company.id = ?1 and fetchedAt >= ?2 and fetchedAt < ?3 order by fetchedAt desc",
                 companyId,
-                startOfDay)
+                startOfDay,
+                endOfDay)
                 .firstResultOptional();
     }
-}
\ No newline at end of file
+
+    /**
+     * Finds the most recent stock data entry for a given company that was fetched at or after the given instant,
+     * whether or not it is from today. This is what we serve, marked as stale, while today's data is being refreshed.
+     *
+     * @param companyId The ID of the company.
+     * @param since The oldest fetchedAt that is still acceptable.
+     * @return An Optional containing the StockData if found, otherwise an empty Optional.
+     */
+    @Timed(value = "repository.queries", extraTags = {"query", "findLatestByCompanyIdSince"}, histogram = true)
+    public Optional<StockData> findLatestByCompanyIdSince(Long companyId, Instant since) {
+        // The upper bound keeps the partitions created ahead of time out of the plan, as in the query for today.
+        return find("company.id = ?1 and fetchedAt >= ?2 and fetchedAt < ?3 order by fetchedAt desc",
+                companyId,
+                since,
+                StockFreshness.nextBoundary(Clock.systemUTC()))
+                .firstResultOptional();
+    }
+
+    /**
+     * Loads a company together with its most recent stock data from today, straight into a CompanyStockDto.
+     * Neither the Company nor the StockData entity is loaded, so the persistence context stays empty
+     * and there is nothing to dirty-check or flush.
+     *
+     * @param companyId The ID of the company.
+     * @return The combined DTO, whose stock fields (including fetchedAt) are null if the company has no stock data
+     *         from today, or an empty Optional if the company doesn't exist.
+     */
+    @Timed(value = "repository.queries", extraTags = {"query", "findCompanyStockForToday"}, histogram = true)
+    public Optional<CompanyStockDto> findCompanyStockForToday(Long companyId) {
+        Instant startOfDay = StockFreshness.startOfToday(Clock.systemUTC());
+        Instant endOfDay = StockFreshness.nextBoundary(Clock.systemUTC());
+        return getEntityManager()
+                .createQuery("select new com.ludogoriesoft.dto.CompanyStockDto("
+                        + "c.id, c.name, c.country, c.symbol, c.website, c.email, c.createdAt, c.version, "
+                        + "s.marketCapitalization, s.shareOutstanding, s.fetchedAt, false) "
+                        + "from Company c left join StockData s on s.company = c and s.fetchedAt >= :startOfDay and s.fetchedAt < :endOfDay "
+                        + "where c.id = :companyId order by s.fetchedAt desc nulls last", CompanyStockDto.class)
+                .setParameter("companyId", companyId)
+                .setParameter("startOfDay", startOfDay)
+                .setParameter("endOfDay", endOfDay)
+                .setHint(HibernateHints.HINT_FLUSH_MODE, FlushMode.MANUAL)
+                .setMaxResults(1)
+                .getResultList()
+                .stream()
+                .findFirst();
+    }
+
+    /**
+     * The batch version of {@link #findLatestByCompanyIdForToday(Long)}: loads today's stock data
+     * for many companies with a single query.
+     *
+     * @param companyIds The IDs of the companies.
+     * @return The most recent StockData fetched today, keyed by company ID. Companies without data for today are absent.
+     */
+    @Timed(value = "repository.queries", extraTags = {"query", "findLatestByCompanyIdsForToday"}, histogram = true)
+    public Map<Long, StockData> findLatestByCompanyIdsForToday(Collection<Long> companyIds) {
+        Instant startOfDay = StockFreshness.startOfToday(Clock.systemUTC());
+        Instant endOfDay = StockFreshness.nextBoundary(Clock.systemUTC());
+        Map<Long, StockData> latest = new HashMap<>();
+        // Rows come newest first, so the first row we see for a company is its latest one.
+        find("company.id in ?1 and fetchedAt >= ?2 and fetchedAt < ?3 order by fetchedAt desc", companyIds, startOfDay, endOfDay)
+                .list()
+                .forEach(stockData -> latest.putIfAbsent(stockData.company.id, stockData));
+        return latest;
+    }
+
+    /**
+     * Returns one page of companies, each with its most recent stock data, using keyset pagination on the company ID.
+     * It is a single statement: the page is read from the companies primary key, and a LATERAL subquery picks each
+     * company's newest snapshot with one probe of the (company_id, fetchedAt DESC) index per partition.
+     * Unlike DISTINCT ON over stock_data, this never reads more than one snapshot per company.
+     * Compaction deletes raw snapshots past their retention, so the subquery also probes the company's newest daily
+     * rollup (one primary key probe) and takes whichever is newer: a company whose raw snapshots are all compacted
+     * still shows the last values it had, not as if it had never been fetched.
+     *
+     * @param afterCompanyId The ID of the last company of the previous page, or null for the first page.
+     * @param limit The maximum number of companies to return.
+     * @return The companies ordered by ID. Companies without any stock data have null stock fields,
+     *         and those whose latest stock data is not from today are marked as stale.
+     */
+    @Timed(value = "repository.queries", extraTags = {"query", "findLatestPage"}, histogram = true)
+    @SuppressWarnings("unchecked")
+    public List<CompanyStockDto> findLatestPage(Long afterCompanyId, int limit) {
+        Instant startOfDay = StockFreshness.startOfToday(Clock.systemUTC());
+        NativeQuery<Object[]> latestQuery = getEntityManager()
+                .createNativeQuery("SELECT c.id, c.name, c.country, c.symbol, c.website, c.email, c.createdAt AS created_at, c.version, "
+                        + "s.marketCapitalization AS market_cap, s.shareOutstanding AS shares, s.fetchedAt AS fetched_at "
+                        + "FROM companies c "
+                        + "LEFT JOIN LATERAL (SELECT * FROM ("
+                        + "(SELECT marketCapitalization, shareOutstanding, fetchedAt FROM stock_data "
+                        + "WHERE company_id = c.id ORDER BY fetchedAt DESC LIMIT 1) "
+                        + "UNION ALL "
+                        + "(SELECT last_market_cap, last_shares, last_fetched_at FROM stock_data_daily "
+                        + "WHERE company_id = c.id ORDER BY day DESC LIMIT 1)"
+                        + ") latest ORDER BY fetchedAt DESC LIMIT 1) s ON true "
+                        + "WHERE c.id > :afterId ORDER BY c.id LIMIT :limit")
+                .setParameter("afterId", afterCompanyId == null ? 0L : afterCompanyId)
+                .setParameter("limit", limit)
+                .setHint(HibernateHints.HINT_FLUSH_MODE, FlushMode.MANUAL)
+                .unwrap(NativeQuery.class);
+        latestQuery.addScalar("id", Long.class)
+                .addScalar("name", String.class)
+                .addScalar("country", String.class)
+                .addScalar("symbol", String.class)
+                .addScalar("website", String.class)
+                .addScalar("email", String.class)
+                .addScalar("created_at", Instant.class)
+                .addScalar("version", Long.class)
+                .addScalar("market_cap", Double.class)
+                .addScalar("shares", Double.class)
+                .addScalar("fetched_at", Instant.class);
+
+        return latestQuery.getResultList().stream()
+                .map(row -> new CompanyStockDto((Long) row[0], (String) row[1], (String) row[2], (String) row[3],
+                        (String) row[4], (String) row[5], (Instant) row[6], (Long) row[7],
+                        (Double) row[8], (Double) row[9], (Instant) row[10],
+                        row[10] != null && ((Instant) row[10]).isBefore(startOfDay)))
+                .toList();
+    }
+
+    /**
+     * Passes a company's stock history within a time range to the given action, one point per bucket, oldest first.
+     * The downsampling happens in the database, and the points are read from a cursor in chunks of the configured
+     * fetch size, so even a multi-year range never sits in memory as a whole.
+     * Must be called inside a transaction.
+     *
+     * @param companyId The ID of the company.
+     * @param query The time range, bucket size and aggregation.
+     * @param action Receives each point as it is read from the database.
+     */
+    @SuppressWarnings("unchecked")
+    public void forEachHistoryPoint(Long companyId, StockHistoryQuery query, Consumer<StockHistoryPointDto> action) {
+        NativeQuery<Object[]> historyQuery = getEntityManager()
+                .createNativeQuery(historySql(query))
+                .setParameter("companyId", companyId)
+                .setParameter("from", query.from())
+                .setParameter("to", query.to())
+                .setHint(HibernateHints.HINT_FETCH_SIZE, historyFetchSize)
+                .unwrap(NativeQuery.class);
+        historyQuery.addScalar("bucket", Instant.class)
+                .addScalar("fetched_at", Instant.class)
+                .addScalar("market_cap", Double.class)
+                .addScalar("shares", Double.class)
+                .addScalar("samples", Long.class);
+
+        try (Stream<Object[]> rows = historyQuery.getResultStream()) {
+            rows.forEach(row -> action.accept(new StockHistoryPointDto(
+                    (Instant) row[0], (Instant) row[1], (Double) row[2], (Double) row[3], (Long) row[4])));
+        }
+    }
+
+    private static String historySql(StockHistoryQuery query) {
+        String range = "FROM stock_data WHERE company_id = :companyId AND fetchedAt >= :from AND fetchedAt < :to";
+        if (query.resolution() == StockHistoryQuery.Resolution.RAW) {
+            return "SELECT fetchedAt AS bucket, fetchedAt AS fetched_at, marketCapitalization AS market_cap, "
+                    + "shareOutstanding AS shares, 1 AS samples " + range + " ORDER BY fetchedAt";
+        }
+
+        // The unit comes from the enum, never from user input, so it is safe to inline.
+        String bucketed = "(SELECT date_trunc('" + query.resolution().truncUnit() + "', fetchedAt AT TIME ZONE 'UTC') "
+                + "AT TIME ZONE 'UTC' AS bucket, fetchedAt, marketCapitalization, shareOutstanding " + range + ") s";
+        return switch (query.aggregation()) {
+            case LAST -> "SELECT DISTINCT ON (bucket) bucket, fetchedAt AS fetched_at, marketCapitalization AS market_cap, "
+                    + "shareOutstanding AS shares, count(*) OVER (PARTITION BY bucket) AS samples "
+                    + "FROM " + bucketed + " ORDER BY bucket, fetchedAt DESC";
+            case AVG -> "SELECT bucket, max(fetchedAt) AS fetched_at, avg(marketCapitalization) AS market_cap, "
+                    + "avg(shareOutstanding) AS shares, count(*) AS samples "
+                    + "FROM " + bucketed + " GROUP BY bucket ORDER BY bucket";
+        };
+    }
+
+    /**
+     * Tries to claim the refresh of a company's stock data for the given duration.
+     * The claim is a row in stock_refresh_leases, so it is shared by every application node using the same
+     * database. It succeeds if there is no lease for the company yet or the existing one has expired.
+     * Time is taken from the database clock, so the nodes' clocks don't need to agree.
+     *
+     * @param companyId The ID of the company.
+     * @param lease How long the claim is valid if it is never released.
+     * @return The owner token of the claim if it was taken, or an empty Optional if another node currently holds it.
+     */
+    public Optional<UUID> tryClaimRefresh(Long companyId, Duration lease) {
+        UUID owner = UUID.randomUUID();
+        int claimed = getEntityManager()
+                .createNativeQuery("INSERT INTO stock_refresh_leases (company_id, leasedUntil, owner) "
+                        + "VALUES (?1, now() + make_interval(secs => ?2), ?3) "
+                        + "ON CONFLICT (company_id) DO UPDATE SET leasedUntil = EXCLUDED.leasedUntil, owner = EXCLUDED.owner "
+                        + "WHERE stock_refresh_leases.leasedUntil < now()")
+                .setParameter(1, companyId)
+                .setParameter(2, lease.toMillis() / 1000.0)
+                .setParameter(3, owner)
+                .executeUpdate();
+        return claimed == 1 ? Optional.of(owner) : Optional.empty();
+    }
+
+    /**
+     * Releases a claim taken with {@link #tryClaimRefresh(Long, Duration)}. A claim that expired
+     * and was taken over by another node in the meantime is left alone.
+     *
+     * @param companyId The ID of the company.
+     * @param owner The owner token returned when the claim was taken.
+     */
+    public void releaseRefreshClaim(Long companyId, UUID owner) {
+        getEntityManager()
+                .createNativeQuery("DELETE FROM stock_refresh_leases WHERE company_id = ?1 AND owner = ?2")
+                .setParameter(1, companyId)
+                .setParameter(2, owner)
+                .executeUpdate();
+    }
+}
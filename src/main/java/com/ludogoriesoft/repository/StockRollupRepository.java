@@ -0,0 +1,210 @@
+package com.ludogoriesoft.repository;
+
+import com.ludogoriesoft.dto.StockHistoryPointDto;
+import com.ludogoriesoft.dto.StockHistoryQuery;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.persistence.EntityManager;
+import jakarta.transaction.Transactional;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.hibernate.jpa.HibernateHints;
+import org.hibernate.query.NativeQuery;
+
+import java.sql.Date;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Manages the daily rollups of the raw stock data (the stock_data_daily table, see the V4 migration)
+ * and the compaction watermark that records how far they reach.
+ */
+@ApplicationScoped
+public class StockRollupRepository {
+
+    private final EntityManager entityManager;
+    private final StockDataPartitionRepository partitionRepository;
+    private final int historyFetchSize;
+
+    public StockRollupRepository(EntityManager entityManager,
+                                 StockDataPartitionRepository partitionRepository,
+                                 @ConfigProperty(name = "stock.history.fetch-size", defaultValue = "500") int historyFetchSize) {
+        this.entityManager = entityManager;
+        this.partitionRepository = partitionRepository;
+        this.historyFetchSize = historyFetchSize;
+    }
+
+    /**
+     * @return The last day that has been rolled up, or an empty Optional if compaction never ran.
+     */
+    @Transactional
+    public Optional<LocalDate> findRolledUpThrough() {
+        List<?> result = entityManager
+                .createNativeQuery("SELECT rolled_up_through FROM stock_compaction_state WHERE id = 1", LocalDate.class)
+                .getResultList();
+        return result.stream().map(LocalDate.class::cast).findFirst();
+    }
+
+    /**
+     * @return The UTC day of the oldest raw snapshot, or an empty Optional if there are none.
+     */
+    @Transactional
+    public Optional<LocalDate> findFirstRawDay() {
+        Instant oldest = (Instant) entityManager
+                .createNativeQuery("SELECT min(fetchedAt) FROM stock_data", Instant.class)
+                .getSingleResult();
+        return Optional.ofNullable(oldest).map(instant -> LocalDate.ofInstant(instant, ZoneOffset.UTC));
+    }
+
+    /**
+     * Writes the rollups of one day for every company that has raw snapshots on it, and moves the watermark
+     * up to that day, in one transaction. Rolling up a day again recomputes the same rows,
+     * so a run that was interrupted can simply be repeated.
+     *
+     * @param day The UTC day to roll up. It must be over, so that no more snapshots can arrive for it.
+     */
+    @Transactional
+    public void rollUpDay(LocalDate day) {
+        entityManager.createNativeQuery("INSERT INTO stock_data_daily (company_id, day, "
+                        + "open_market_cap, last_market_cap, min_market_cap, max_market_cap, sum_market_cap, market_cap_samples, "
+                        + "open_shares, last_shares, min_shares, max_shares, sum_shares, shares_samples, "
+                        + "samples, first_fetched_at, last_fetched_at) "
+                        + "SELECT company_id, :day, "
+                        + "(array_agg(marketCapitalization ORDER BY fetchedAt))[1], "
+                        + "(array_agg(marketCapitalization ORDER BY fetchedAt DESC))[1], "
+                        + "min(marketCapitalization), max(marketCapitalization), sum(marketCapitalization), count(marketCapitalization), "
+                        + "(array_agg(shareOutstanding ORDER BY fetchedAt))[1], "
+                        + "(array_agg(shareOutstanding ORDER BY fetchedAt DESC))[1], "
+                        + "min(shareOutstanding), max(shareOutstanding), sum(shareOutstanding), count(shareOutstanding), "
+                        + "count(*), min(fetchedAt), max(fetchedAt) "
+                        + "FROM stock_data WHERE fetchedAt >= :dayStart AND fetchedAt < :dayEnd "
+                        + "GROUP BY company_id "
+                        + "ON CONFLICT (company_id, day) DO UPDATE SET "
+                        + "open_market_cap = EXCLUDED.open_market_cap, last_market_cap = EXCLUDED.last_market_cap, "
+                        + "min_market_cap = EXCLUDED.min_market_cap, max_market_cap = EXCLUDED.max_market_cap, "
+                        + "sum_market_cap = EXCLUDED.sum_market_cap, market_cap_samples = EXCLUDED.market_cap_samples, "
+                        + "open_shares = EXCLUDED.open_shares, last_shares = EXCLUDED.last_shares, "
+                        + "min_shares = EXCLUDED.min_shares, max_shares = EXCLUDED.max_shares, "
+                        + "sum_shares = EXCLUDED.sum_shares, shares_samples = EXCLUDED.shares_samples, "
+                        + "samples = EXCLUDED.samples, first_fetched_at = EXCLUDED.first_fetched_at, "
+                        + "last_fetched_at = EXCLUDED.last_fetched_at")
+                .setParameter("day", Date.valueOf(day))
+                .setParameter("dayStart", startOf(day))
+                .setParameter("dayEnd", startOf(day.plusDays(1)))
+                .executeUpdate();
+
+        // Never moves backwards, in case another node already got further.
+        entityManager.createNativeQuery("INSERT INTO stock_compaction_state (id, rolled_up_through) VALUES (1, :day) "
+                        + "ON CONFLICT (id) DO UPDATE SET rolled_up_through = "
+                        + "GREATEST(stock_compaction_state.rolled_up_through, EXCLUDED.rolled_up_through)")
+                .setParameter("day", Date.valueOf(day))
+                .executeUpdate();
+    }
+
+    /**
+     * Deletes the raw snapshots fetched before the given moment.
+     * Callers must make sure those days have been rolled up.
+     *
+     * Monthly partitions that lie entirely before the cutoff are detached and dropped as a whole,
+     * which is instant however many snapshots they hold. Only the partition the cutoff falls into
+     * is cleared row by row.
+     *
+     * @return The dropped partitions and the number of snapshots deleted from the boundary partition.
+     */
+    @Transactional
+    public RawDeletion deleteRawBefore(Instant cutoff) {
+        YearMonth boundaryMonth = YearMonth.from(cutoff.atOffset(ZoneOffset.UTC));
+        List<YearMonth> droppedPartitions = partitionRepository.findPartitionMonths().stream()
+                .filter(month -> month.isBefore(boundaryMonth))
+                .toList();
+        droppedPartitions.forEach(partitionRepository::dropPartition);
+
+        // Partition pruning limits this to the boundary partition (and any partition not named by month).
+        int deletedSnapshots = entityManager.createNativeQuery("DELETE FROM stock_data WHERE fetchedAt < :cutoff")
+                .setParameter("cutoff", cutoff)
+                .executeUpdate();
+        return new RawDeletion(droppedPartitions, deletedSnapshots);
+    }
+
+    /**
+     * Passes a company's stock history at day resolution or coarser to the given action, one point per bucket,
+     * oldest first. Days up to the watermark are read from the rollups; later days (at least today) don't have
+     * rollups yet and are summarized from the raw snapshots on the fly, in the same query.
+     * The range is widened to whole UTC days. Must be called inside a transaction.
+     *
+     * @param companyId The ID of the company.
+     * @param query The time range, bucket size (DAY, WEEK or MONTH) and aggregation.
+     * @param rolledUpThrough The current watermark, or null if compaction never ran.
+     * @param action Receives each point as it is read from the database.
+     */
+    @SuppressWarnings("unchecked")
+    public void forEachHistoryPoint(Long companyId, StockHistoryQuery query, LocalDate rolledUpThrough,
+                                    Consumer<StockHistoryPointDto> action) {
+        LocalDate fromDay = LocalDate.ofInstant(query.from(), ZoneOffset.UTC);
+        LocalDate toDay = LocalDate.ofInstant(query.to().minusNanos(1), ZoneOffset.UTC);
+        // Raw snapshots of days that have rollups are skipped, even if they haven't been deleted yet.
+        LocalDate endDay = toDay.plusDays(1);
+        LocalDate firstRawDay = rolledUpThrough == null || rolledUpThrough.isBefore(fromDay) ? fromDay : rolledUpThrough.plusDays(1);
+        LocalDate rollupEndDay = firstRawDay.isBefore(endDay) ? firstRawDay : endDay;
+
+        String daily = "SELECT day, last_fetched_at, last_market_cap, last_shares, "
+                + "sum_market_cap, market_cap_samples, sum_shares, shares_samples, samples "
+                + "FROM stock_data_daily WHERE company_id = :companyId AND day >= :fromDay AND day < :rollupEndDay "
+                + "UNION ALL "
+                + "SELECT (fetchedAt AT TIME ZONE 'UTC')::date, max(fetchedAt), "
+                + "(array_agg(marketCapitalization ORDER BY fetchedAt DESC))[1], (array_agg(shareOutstanding ORDER BY fetchedAt DESC))[1], "
+                + "sum(marketCapitalization), count(marketCapitalization), sum(shareOutstanding), count(shareOutstanding), count(*) "
+                + "FROM stock_data WHERE company_id = :companyId AND fetchedAt >= :rawStart AND fetchedAt < :rangeEnd "
+                + "GROUP BY 1";
+        // The unit comes from the enum, never from user input, so it is safe to inline.
+        String bucketed = "(SELECT date_trunc('" + query.resolution().truncUnit() + "', day::timestamp) AT TIME ZONE 'UTC' AS bucket, d.* "
+                + "FROM (" + daily + ") d) b";
+        String sql = switch (query.aggregation()) {
+            case LAST -> "SELECT DISTINCT ON (bucket) bucket, last_fetched_at AS fetched_at, last_market_cap AS market_cap, "
+                    + "last_shares AS shares, (sum(samples) OVER (PARTITION BY bucket))::bigint AS samples "
+                    + "FROM " + bucketed + " ORDER BY bucket, day DESC";
+            case AVG -> "SELECT bucket, max(last_fetched_at) AS fetched_at, "
+                    + "sum(sum_market_cap) / nullif(sum(market_cap_samples), 0) AS market_cap, "
+                    + "sum(sum_shares) / nullif(sum(shares_samples), 0) AS shares, sum(samples)::bigint AS samples "
+                    + "FROM " + bucketed + " GROUP BY bucket ORDER BY bucket";
+        };
+
+        NativeQuery<Object[]> historyQuery = entityManager.createNativeQuery(sql)
+                .setParameter("companyId", companyId)
+                .setParameter("fromDay", Date.valueOf(fromDay))
+                .setParameter("rollupEndDay", Date.valueOf(rollupEndDay))
+                .setParameter("rawStart", startOf(firstRawDay))
+                .setParameter("rangeEnd", startOf(endDay))
+                .setHint(HibernateHints.HINT_FETCH_SIZE, historyFetchSize)
+                .unwrap(NativeQuery.class);
+        historyQuery.addScalar("bucket", Instant.class)
+                .addScalar("fetched_at", Instant.class)
+                .addScalar("market_cap", Double.class)
+                .addScalar("shares", Double.class)
+                .addScalar("samples", Long.class);
+
+        try (Stream<Object[]> rows = historyQuery.getResultStream()) {
+            rows.forEach(row -> action.accept(new StockHistoryPointDto(
+                    (Instant) row[0], (Instant) row[1], (Double) row[2], (Double) row[3], (Long) row[4])));
+        }
+    }
+
+    private static Instant startOf(LocalDate day) {
+        return day.atStartOfDay().toInstant(ZoneOffset.UTC);
+    }
+
+    /**
+     * @param droppedPartitions The months whose partitions were dropped as a whole.
+     * @param deletedSnapshots The number of snapshots deleted row by row from the boundary partition.
+     */
+    public record RawDeletion(List<YearMonth> droppedPartitions, int deletedSnapshots) {
+
+        public boolean isEmpty() {
+            return droppedPartitions.isEmpty() && deletedSnapshots == 0;
+        }
+    }
+}
@@ -1,29 +1,70 @@
 package com.ludogoriesoft.resource;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.ludogoriesoft.dto.CompanyDto;
+import com.ludogoriesoft.dto.CompanyImportResultDto;
+import com.ludogoriesoft.dto.CompanySearchQuery;
 import com.ludogoriesoft.dto.CompanyStockDto;
+import com.ludogoriesoft.dto.CompanyStockResultDto;
+import com.ludogoriesoft.service.CompanyImportService;
 import com.ludogoriesoft.service.CompanyService;
+import com.ludogoriesoft.service.CompanyStockBatchService;
+import io.quarkus.arc.properties.UnlessBuildProperty;
 import jakarta.validation.Valid;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.Pattern;
+import jakarta.validation.constraints.Size;
 import jakarta.ws.rs.*;
+import jakarta.ws.rs.core.CacheControl;
+import jakarta.ws.rs.core.Context;
+import jakarta.ws.rs.core.EntityTag;
 import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Request;
 import jakarta.ws.rs.core.Response;
 import jakarta.ws.rs.PathParam;
+import jakarta.ws.rs.core.StreamingOutput;
+import jakarta.ws.rs.core.UriInfo;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
 
 /**
  * The REST API resource for managing companies.
  * This class defines the public HTTP endpoints.
+ * Its endpoints block, so they run on the worker thread pool, unless companies.virtual-threads.enabled
+ * replaces this class with {@link VirtualThreadCompanyResource} at build time.
  */
 @Path("/companies")
+@UnlessBuildProperty(name = "companies.virtual-threads.enabled", stringValue = "true", enableIfMissing = true)
 @Produces(MediaType.APPLICATION_JSON)
 @Consumes(MediaType.APPLICATION_JSON)
 public class CompanyResource {
 
+    static final int MAX_PAGE_SIZE = 1000;
+    static final int MAX_PREFIX_LENGTH = 100;
+    static final String APPLICATION_NDJSON = "application/x-ndjson";
+    static final int MAX_BATCH_IDS = 500;
+
     private final CompanyService companyService;
+    private final CompanyImportService companyImportService;
+    private final CompanyStockBatchService companyStockBatchService;
+    private final ObjectMapper objectMapper;
 
-    public CompanyResource(CompanyService companyService) {
+    public CompanyResource(CompanyService companyService,
+                           CompanyImportService companyImportService,
+                           CompanyStockBatchService companyStockBatchService,
+                           ObjectMapper objectMapper) {
         this.companyService = companyService;
+        this.companyImportService = companyImportService;
+        this.companyStockBatchService = companyStockBatchService;
+        this.objectMapper = objectMapper;
     }
 
     /**
@@ -41,14 +82,120 @@ public class CompanyResource {
     }
 
     /**
-     * Endpoint for listing all companies.
-     * Corresponds to: GET /companies
+     * Endpoint for importing many companies at once from a JSON array.
+     * Each company is validated on its own, and companies whose symbol already exists are skipped.
+     * Corresponds to: POST /companies/bulk
+     *
+     * @param body The request body, read as a stream.
+     * @return An HTTP 200 OK response with the outcome (CREATED, CONFLICT or INVALID) of every row.
+     */
+    @POST
+    @Path("/bulk")
+    public CompanyImportResultDto importCompanies(InputStream body) throws IOException {
+        return companyImportService.importJsonArray(body);
+    }
+
+    /**
+     * Same as {@link #importCompanies(InputStream)}, but for newline-delimited JSON (one company per line).
+     * Corresponds to: POST /companies/bulk with Content-Type: application/x-ndjson
+     */
+    @POST
+    @Path("/bulk")
+    @Consumes(APPLICATION_NDJSON)
+    public CompanyImportResultDto importCompaniesNdjson(InputStream body) throws IOException {
+        return companyImportService.importNdjson(body);
+    }
+
+    /**
+     * Endpoint for listing companies, one page at a time.
+     * Pages are addressed with a cursor (the ID of the last company on the previous page) instead of an offset.
+     * If there may be more companies, the response carries a Link header with rel="next" pointing to the next page.
+     * The ETag is a fingerprint of the page, computed in the database: if it matches the request's If-None-Match,
+     * the response is a 304 Not Modified and the page itself is never loaded.
+     * Corresponds to: GET /companies?after={id}&limit={n}
+     *
+     * Without parameters, this returns the first page of 100 companies, not all of them as it used to.
+     * Clients that need every company follow the Link headers, or use {@link #streamAllCompanies()}.
+     *
+     * @param after The ID of the last company of the previous page. Omit it to get the first page.
+     * @param limit The maximum number of companies to return.
+     * @return An HTTP 200 OK response with one page of companies, or 304 Not Modified.
+     */
+    @GET
+    public Response getAllCompanies(@QueryParam("after") Long after,
+                                    @QueryParam("limit") @DefaultValue("100") @Min(1) @Max(MAX_PAGE_SIZE) int limit,
+                                    @Context UriInfo uriInfo,
+                                    @Context Request request) {
+        // The fingerprint is taken before the page is read, so a concurrent update can only make it too old,
+        // which costs the client one extra 200, never a stale 304.
+        EntityTag tag = new EntityTag(companyService.getCompanyPageFingerprint(after, limit));
+        CacheControl cacheControl = ConditionalResponses.revalidate();
+        Response notModified = ConditionalResponses.notModified(request, tag, cacheControl);
+        if (notModified != null) {
+            return notModified;
+        }
+
+        List<CompanyDto> companies = companyService.getAllCompanies(after, limit);
+        Response.ResponseBuilder response = Response.ok(companies).tag(tag).cacheControl(cacheControl);
+        addNextLink(response, companies, CompanyDto::id, limit, uriInfo);
+        return response.build();
+    }
+
+    /**
+     * Endpoint for searching companies, one page at a time, paginated like {@link #getAllCompanies}.
+     * All filters are optional; the ones that are given must all match.
+     * Corresponds to: GET /companies/search?country={cc}&namePrefix={name}&symbolPrefix={symbol}&after={id}&limit={n}
+     *
+     * @param country The two-letter country code.
+     * @param namePrefix The start of the company name, case-insensitive.
+     * @param symbolPrefix The start of the stock symbol, case-insensitive.
+     * @param after The ID of the last company of the previous page. Omit it to get the first page.
+     * @param limit The maximum number of companies to return.
+     * @return An HTTP 200 OK response with one page of matching companies.
+     */
+    @GET
+    @Path("/search")
+    public Response searchCompanies(@QueryParam("country") @Pattern(regexp = "[A-Z]{2}") String country,
+                                    @QueryParam("namePrefix") @Size(max = MAX_PREFIX_LENGTH) String namePrefix,
+                                    @QueryParam("symbolPrefix") @Size(max = MAX_PREFIX_LENGTH) String symbolPrefix,
+                                    @QueryParam("after") Long after,
+                                    @QueryParam("limit") @DefaultValue("20") @Min(1) @Max(MAX_PAGE_SIZE) int limit,
+                                    @Context UriInfo uriInfo) {
+        List<CompanyDto> companies = companyService.searchCompanies(
+                new CompanySearchQuery(country, namePrefix, symbolPrefix), after, limit);
+        Response.ResponseBuilder response = Response.ok(companies);
+        addNextLink(response, companies, CompanyDto::id, limit, uriInfo);
+        return response.build();
+    }
+
+    // A full page means there may be more companies after the last one.
+    private static <T> void addNextLink(Response.ResponseBuilder response, List<T> page, Function<T, Long> idOf,
+                                        int limit, UriInfo uriInfo) {
+        if (page.size() == limit) {
+            Long lastId = idOf.apply(page.get(page.size() - 1));
+            response.link(uriInfo.getRequestUriBuilder().replaceQueryParam("after", lastId).build(), "next");
+        }
+    }
+
+    /**
+     * Endpoint for streaming all companies as a single JSON array.
+     * Companies are read from a database cursor and written to the response one by one,
+     * so memory usage stays flat no matter how many companies there are.
+     * Corresponds to: GET /companies/stream
      *
-     * @return An HTTP 200 OK response with a list of all companies.
+     * @return An HTTP 200 OK response with a JSON array of all companies.
      */
     @GET
-    public List<CompanyDto> getAllCompanies() {
-        return companyService.getAllCompanies();
+    @Path("/stream")
+    public Response streamAllCompanies() {
+        StreamingOutput body = output -> {
+            try (JsonGenerator generator = objectMapper.createGenerator(output)) {
+                generator.writeStartArray();
+                companyService.streamAllCompanies(company -> writeCompany(generator, company));
+                generator.writeEndArray();
+            }
+        };
+        return Response.ok(body, MediaType.APPLICATION_JSON).build();
     }
 
     /**
@@ -70,12 +217,80 @@ public class CompanyResource {
      * Endpoint for getting combined company and stock data.
      * The task description asked for /company-stocks/{companyId}, but a more RESTful
      * convention is to identify the resource first, then the sub-resource.
+     * The response carries an ETag and Cache-Control: no-cache, so clients may keep it but must revalidate it
+     * on every use; a matching If-None-Match gets a 304 Not Modified.
      * Corresponds to: GET /companies/{id}/stocks
      */
     @GET
     @Path("/{id}/stocks")
-    public Response getCompanyWithStocks(@PathParam("id") Long id) {
+    public Response getCompanyWithStocks(@PathParam("id") Long id, @Context Request request) {
         CompanyStockDto companyStockData = companyService.getCompanyStockData(id);
-        return Response.ok(companyStockData).build();
+        return ConditionalResponses.companyStock(request, companyStockData);
+    }
+
+    /**
+     * Endpoint for getting combined company and stock data for many companies in one call.
+     * IDs can be given comma-separated, as repeated parameters, or both.
+     * Corresponds to: GET /companies/stocks?ids=1,2,3
+     *
+     * @param ids The IDs of the companies, at most MAX_BATCH_IDS of them.
+     * @return An HTTP 200 OK response with one entry per company ID, each holding either the data or an error.
+     */
+    @GET
+    @Path("/stocks")
+    public Map<Long, CompanyStockResultDto> getCompaniesWithStocks(@QueryParam("ids") List<String> ids) {
+        return companyStockBatchService.getCompanyStockData(parseIds(ids));
+    }
+
+    /**
+     * Endpoint for a market overview: companies with the most recent stock data stored for each of them,
+     * read with a single query and paginated like {@link #getAllCompanies}. It never calls Finnhub, so the data
+     * may be older than today; fetchedAt says when it was fetched, and is null if it never was.
+     * Corresponds to: GET /companies/stocks/latest?after={id}&limit={n}
+     *
+     * @param after The ID of the last company of the previous page. Omit it to get the first page.
+     * @param limit The maximum number of companies to return.
+     * @return An HTTP 200 OK response with one page of companies and their latest stock data.
+     */
+    @GET
+    @Path("/stocks/latest")
+    public Response getCompaniesWithLatestStocks(@QueryParam("after") Long after,
+                                                 @QueryParam("limit") @DefaultValue("100") @Min(1) @Max(MAX_PAGE_SIZE) int limit,
+                                                 @Context UriInfo uriInfo) {
+        List<CompanyStockDto> companies = companyService.getLatestStockData(after, limit);
+        Response.ResponseBuilder response = Response.ok(companies);
+        addNextLink(response, companies, CompanyStockDto::id, limit, uriInfo);
+        return response.build();
+    }
+
+    private static void writeCompany(JsonGenerator generator, CompanyDto company) {
+        try {
+            generator.writeObject(company);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static List<Long> parseIds(List<String> rawIds) {
+        List<Long> ids = new ArrayList<>();
+        for (String rawId : rawIds) {
+            for (String part : rawId.split(",")) {
+                if (part.isBlank()) {
+                    continue;
+                }
+                try {
+                    ids.add(Long.parseLong(part.trim()));
+                } catch (NumberFormatException e) {
+                    throw new BadRequestException("Invalid company id: " + part.trim());
+                }
+            }
+        }
+        if (ids.isEmpty()) {
+            throw new BadRequestException("At least one company id is required");
+        }
+        if (ids.size() > MAX_BATCH_IDS) {
+            throw new BadRequestException("At most " + MAX_BATCH_IDS + " company ids are allowed per request");
+        }
+        return ids;
     }
-}
\ No newline at end of file
+}
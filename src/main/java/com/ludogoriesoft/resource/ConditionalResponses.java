@@ -0,0 +1,61 @@
+package com.ludogoriesoft.resource;
+
+import com.ludogoriesoft.dto.CompanyStockDto;
+import jakarta.ws.rs.core.CacheControl;
+import jakarta.ws.rs.core.EntityTag;
+import jakarta.ws.rs.core.Request;
+import jakarta.ws.rs.core.Response;
+
+/**
+ * Builds the conditional GET responses shared by the company endpoints: strong ETags derived from the version
+ * of the data, Cache-Control headers, and 304 Not Modified when the client's If-None-Match still matches.
+ * A 304 carries no body, so the DTO is never serialized for it.
+ */
+final class ConditionalResponses {
+
+    private ConditionalResponses() {
+    }
+
+    /**
+     * A company's stock data changes when the company is updated (its version) or a new snapshot is fetched.
+     * The same snapshot served as stale is a different representation, as the response says so.
+     */
+    static EntityTag stockTag(CompanyStockDto companyStock) {
+        long fetchedAt = companyStock.fetchedAt() == null ? 0 : companyStock.fetchedAt().toEpochMilli();
+        return new EntityTag(companyStock.id() + "-" + companyStock.version() + "-" + fetchedAt
+                + (companyStock.stale() ? "-stale" : ""));
+    }
+
+    /**
+     * Data that can change at any time: clients may keep it, but must revalidate it on every use.
+     */
+    static CacheControl revalidate() {
+        CacheControl cacheControl = new CacheControl();
+        cacheControl.setNoTransform(false);
+        cacheControl.setNoCache(true);
+        return cacheControl;
+    }
+
+    /**
+     * @return A 304 Not Modified response if the request's preconditions match the ETag, otherwise null.
+     */
+    static Response notModified(Request request, EntityTag tag, CacheControl cacheControl) {
+        Response.ResponseBuilder notModified = request.evaluatePreconditions(tag);
+        return notModified == null ? null : notModified.tag(tag).cacheControl(cacheControl).build();
+    }
+
+    /**
+     * @return A 304 Not Modified if the client already has this version of the stock data, otherwise a 200 with it.
+     *         The snapshot only changes once a day, but the company in the same response can be edited at any time,
+     *         so clients must revalidate it on every use; an unchanged response costs them just a 304.
+     */
+    static Response companyStock(Request request, CompanyStockDto companyStock) {
+        EntityTag tag = stockTag(companyStock);
+        CacheControl cacheControl = revalidate();
+        Response notModified = notModified(request, tag, cacheControl);
+        if (notModified != null) {
+            return notModified;
+        }
+        return Response.ok(companyStock).tag(tag).cacheControl(cacheControl).build();
+    }
+}
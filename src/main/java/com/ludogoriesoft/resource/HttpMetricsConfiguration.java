@@ -0,0 +1,34 @@
+package com.ludogoriesoft.resource;
+
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.config.MeterFilter;
+import io.micrometer.core.instrument.distribution.DistributionStatisticConfig;
+import jakarta.enterprise.inject.Produces;
+import jakarta.inject.Singleton;
+
+/**
+ * Quarkus already times every endpoint in http.server.requests, tagged with the method, URI template and status.
+ * This adds histogram buckets to that timer, so latency percentiles per endpoint can be computed in Prometheus.
+ */
+@Singleton
+public class HttpMetricsConfiguration {
+
+    private static final String HTTP_SERVER_REQUESTS = "http.server.requests";
+
+    @Produces
+    @Singleton
+    public MeterFilter httpServerRequestHistograms() {
+        return new MeterFilter() {
+            @Override
+            public DistributionStatisticConfig configure(Meter.Id id, DistributionStatisticConfig config) {
+                if (!HTTP_SERVER_REQUESTS.equals(id.getName())) {
+                    return config;
+                }
+                return DistributionStatisticConfig.builder()
+                        .percentilesHistogram(true)
+                        .build()
+                        .merge(config);
+            }
+        };
+    }
+}
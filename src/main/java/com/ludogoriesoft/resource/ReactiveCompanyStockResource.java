@@ -0,0 +1,44 @@
+package com.ludogoriesoft.resource;
+
+import com.ludogoriesoft.service.ReactiveCompanyStockService;
+import io.quarkus.arc.properties.IfBuildProperty;
+import io.smallrye.mutiny.Uni;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.PathParam;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.Context;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Request;
+import jakarta.ws.rs.core.Response;
+
+
+/**
+ * The non-blocking implementation of GET /companies/{id}/stocks, selected at build time with
+ * companies.reactive-stocks.enabled=true. Because it returns a Uni, it runs on the event loop,
+ * and its more specific root path takes precedence over the blocking endpoint in {@link CompanyResource}.
+ */
+@Path("/companies/{id}/stocks")
+@Produces(MediaType.APPLICATION_JSON)
+@IfBuildProperty(name = "companies.reactive-stocks.enabled", stringValue = "true")
+public class ReactiveCompanyStockResource {
+
+    private final ReactiveCompanyStockService reactiveCompanyStockService;
+
+    public ReactiveCompanyStockResource(ReactiveCompanyStockService reactiveCompanyStockService) {
+        this.reactiveCompanyStockService = reactiveCompanyStockService;
+    }
+
+    /**
+     * Corresponds to: GET /companies/{id}/stocks
+     * Supports conditional GET the same way as {@link CompanyResource#getCompanyWithStocks(Long, Request)}.
+     *
+     * @param id The ID of the company.
+     * @return A Uni with the combined company and stock data, or a 304 Not Modified.
+     */
+    @GET
+    public Uni<Response> getCompanyWithStocks(@PathParam("id") Long id, @Context Request request) {
+        return reactiveCompanyStockService.getCompanyStockData(id)
+                .map(companyStock -> ConditionalResponses.companyStock(request, companyStock));
+    }
+}
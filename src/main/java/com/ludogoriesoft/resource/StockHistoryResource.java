@@ -0,0 +1,107 @@
+package com.ludogoriesoft.resource;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ludogoriesoft.dto.StockHistoryPointDto;
+import com.ludogoriesoft.dto.StockHistoryQuery;
+import com.ludogoriesoft.service.StockHistoryService;
+import jakarta.ws.rs.BadRequestException;
+import jakarta.ws.rs.DefaultValue;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.PathParam;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.QueryParam;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.StreamingOutput;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
+
+/**
+ * The REST API resource for reading the stock history of a company.
+ */
+@Path("/companies/{id}/stocks/history")
+@Produces(MediaType.APPLICATION_JSON)
+public class StockHistoryResource {
+
+    static final Duration DEFAULT_RANGE = Duration.ofDays(30);
+
+    private final StockHistoryService stockHistoryService;
+    private final ObjectMapper objectMapper;
+
+    public StockHistoryResource(StockHistoryService stockHistoryService, ObjectMapper objectMapper) {
+        this.stockHistoryService = stockHistoryService;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Endpoint for streaming the stock history of a company as a JSON array, downsampled into buckets.
+     * Points are aggregated in the database and written to the response one by one as they are read,
+     * so memory usage stays flat no matter how long the range is.
+     * Corresponds to: GET /companies/{id}/stocks/history?from=&to=&resolution=&aggregation=
+     *
+     * @param id The ID of the company.
+     * @param from The start of the range (ISO-8601 instant, inclusive). Defaults to 30 days before to.
+     * @param to The end of the range (ISO-8601 instant, exclusive). Defaults to now.
+     * @param resolution The bucket size: raw, hour, day, week or month.
+     * @param aggregation How snapshots within a bucket are combined: last or avg.
+     * @return An HTTP 200 OK response with a JSON array of points, oldest first.
+     */
+    @GET
+    public Response getStockHistory(@PathParam("id") Long id,
+                                    @QueryParam("from") String from,
+                                    @QueryParam("to") String to,
+                                    @QueryParam("resolution") @DefaultValue("day") String resolution,
+                                    @QueryParam("aggregation") @DefaultValue("last") String aggregation) {
+        Instant toInstant = to == null ? Instant.now() : parseInstant("to", to);
+        Instant fromInstant = from == null ? toInstant.minus(DEFAULT_RANGE) : parseInstant("from", from);
+        if (!fromInstant.isBefore(toInstant)) {
+            throw new BadRequestException("from must be before to");
+        }
+        StockHistoryQuery query = new StockHistoryQuery(fromInstant, toInstant,
+                parseEnum(StockHistoryQuery.Resolution.class, "resolution", resolution),
+                parseEnum(StockHistoryQuery.Aggregation.class, "aggregation", aggregation));
+
+        // Fail with a proper 404 before the first byte of the body is written.
+        stockHistoryService.requireCompany(id);
+
+        StreamingOutput body = output -> {
+            try (JsonGenerator generator = objectMapper.createGenerator(output)) {
+                generator.writeStartArray();
+                stockHistoryService.streamHistory(id, query, point -> writePoint(generator, point));
+                generator.writeEndArray();
+            }
+        };
+        return Response.ok(body, MediaType.APPLICATION_JSON).build();
+    }
+
+    private static void writePoint(JsonGenerator generator, StockHistoryPointDto point) {
+        try {
+            generator.writeObject(point);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static Instant parseInstant(String name, String value) {
+        try {
+            return Instant.parse(value);
+        } catch (DateTimeParseException e) {
+            throw new BadRequestException("Invalid " + name + ": " + value + " (expected an ISO-8601 instant)");
+        }
+    }
+
+    private static <E extends Enum<E>> E parseEnum(Class<E> type, String name, String value) {
+        try {
+            return Enum.valueOf(type, value.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException("Invalid " + name + ": " + value);
+        }
+    }
+}
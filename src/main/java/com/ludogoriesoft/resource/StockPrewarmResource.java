@@ -0,0 +1,32 @@
+package com.ludogoriesoft.resource;
+
+import com.ludogoriesoft.dto.StockPrewarmStatusDto;
+import com.ludogoriesoft.job.StockPrewarmJob;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.MediaType;
+
+/**
+ * Operational endpoint exposing the progress of the background stock pre-warming.
+ */
+@Path("/admin/stock-prewarm")
+@Produces(MediaType.APPLICATION_JSON)
+public class StockPrewarmResource {
+
+    private final StockPrewarmJob stockPrewarmJob;
+
+    public StockPrewarmResource(StockPrewarmJob stockPrewarmJob) {
+        this.stockPrewarmJob = stockPrewarmJob;
+    }
+
+    /**
+     * Corresponds to: GET /admin/stock-prewarm
+     *
+     * @return The progress of the current or last pre-warm run.
+     */
+    @GET
+    public StockPrewarmStatusDto getStatus() {
+        return stockPrewarmJob.getStatus();
+    }
+}
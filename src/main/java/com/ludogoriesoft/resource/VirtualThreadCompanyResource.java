@@ -0,0 +1,33 @@
+package com.ludogoriesoft.resource;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ludogoriesoft.service.CompanyImportService;
+import com.ludogoriesoft.service.CompanyService;
+import com.ludogoriesoft.service.CompanyStockBatchService;
+import io.quarkus.arc.properties.IfBuildProperty;
+import io.smallrye.common.annotation.RunOnVirtualThread;
+import jakarta.ws.rs.Consumes;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.MediaType;
+
+/**
+ * Serves exactly the endpoints of {@link CompanyResource}, but runs every request on a Java 21 virtual thread
+ * instead of a worker thread, so the number of requests blocked on JDBC or Finnhub isn't capped by the worker pool.
+ * It is selected at build time with companies.virtual-threads.enabled=true, which also leaves CompanyResource out.
+ * Transactions keep working as before, because @Transactional binds them to the current (virtual) thread.
+ */
+@Path("/companies")
+@Produces(MediaType.APPLICATION_JSON)
+@Consumes(MediaType.APPLICATION_JSON)
+@RunOnVirtualThread
+@IfBuildProperty(name = "companies.virtual-threads.enabled", stringValue = "true")
+public class VirtualThreadCompanyResource extends CompanyResource {
+
+    public VirtualThreadCompanyResource(CompanyService companyService,
+                                        CompanyImportService companyImportService,
+                                        CompanyStockBatchService companyStockBatchService,
+                                        ObjectMapper objectMapper) {
+        super(companyService, companyImportService, companyStockBatchService, objectMapper);
+    }
+}
@@ -0,0 +1,203 @@
+package com.ludogoriesoft.service;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ludogoriesoft.dto.CompanyDto;
+import com.ludogoriesoft.dto.CompanyImportResultDto;
+import com.ludogoriesoft.dto.CompanyImportRowDto;
+import com.ludogoriesoft.entity.Company;
+import com.ludogoriesoft.mapper.CompanyMapper;
+import com.ludogoriesoft.repository.CompanyRepository;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import jakarta.ws.rs.BadRequestException;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Service class for importing large numbers of companies in one request.
+ * The request body is read as a stream, every company is validated on its own,
+ * and valid companies are inserted in batches, so an import of tens of thousands
+ * of companies needs only a handful of database round trips.
+ *
+ * A batch is a single multi-row INSERT ... SELECT FROM unnest(...) rather than a JDBC batch of one INSERT per row:
+ * its RETURNING clause tells exactly which rows were inserted and which were conflicts, which a JDBC batch with
+ * ON CONFLICT DO NOTHING can't, and it is one round trip regardless of the driver's batch rewriting settings.
+ */
+@ApplicationScoped
+public class CompanyImportService {
+
+    private final CompanyRepository companyRepository;
+    private final CompanyMapper companyMapper;
+    private final Validator validator;
+    private final ObjectMapper objectMapper;
+    private final int batchSize;
+
+    public CompanyImportService(CompanyRepository companyRepository,
+                                CompanyMapper companyMapper,
+                                Validator validator,
+                                ObjectMapper objectMapper,
+                                @ConfigProperty(name = "companies.import.batch-size", defaultValue = "1000") int batchSize) {
+        this.companyRepository = companyRepository;
+        this.companyMapper = companyMapper;
+        this.validator = validator;
+        this.objectMapper = objectMapper;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Imports companies from newline-delimited JSON (one company object per line).
+     * A line that isn't a valid JSON company object (including a literal null) is reported as INVALID,
+     * and the import carries on with the next line.
+     *
+     * @param input The request body.
+     * @return The outcome of every row.
+     */
+    public CompanyImportResultDto importNdjson(InputStream input) throws IOException {
+        BatchImport batchImport = new BatchImport();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+        String line;
+        int row = 0;
+        while ((line = reader.readLine()) != null) {
+            if (line.isBlank()) {
+                continue;
+            }
+            row++;
+            try {
+                batchImport.add(row, objectMapper.readValue(line, CompanyDto.class));
+            } catch (JsonProcessingException e) {
+                batchImport.reject(row, null, List.of("Malformed JSON: " + e.getOriginalMessage()));
+            }
+        }
+        return batchImport.finish();
+    }
+
+    /**
+     * Imports companies from a JSON array of company objects.
+     * The array is read element by element, so it is never held in memory as a whole.
+     * An element that isn't a valid company object is reported as INVALID, and the import carries on with the next one.
+     * A syntax error stops the import, since there is no way to find the next element after it: the element
+     * it occurred in is reported as INVALID, and all rows before it are reported as usual.
+     *
+     * @param input The request body.
+     * @return The outcome of every row.
+     * @throws BadRequestException if the body is not a JSON array.
+     */
+    public CompanyImportResultDto importJsonArray(InputStream input) throws IOException {
+        BatchImport batchImport = new BatchImport();
+        try (JsonParser parser = objectMapper.createParser(input)) {
+            try {
+                if (parser.nextToken() != JsonToken.START_ARRAY) {
+                    throw new BadRequestException("Expected a JSON array of companies");
+                }
+            } catch (JsonProcessingException e) {
+                // Nothing has been written yet, so the whole request can still be rejected.
+                throw new BadRequestException("Malformed JSON: " + e.getOriginalMessage());
+            }
+            int row = 1;
+            try {
+                for (; parser.nextToken() != JsonToken.END_ARRAY; row++) {
+                    addElement(batchImport, row, parser.readValueAsTree());
+                }
+            } catch (JsonProcessingException e) {
+                // Earlier batches are already committed, so report what happened instead of failing the request.
+                batchImport.reject(row, null, List.of("Malformed JSON, import stopped: " + e.getOriginalMessage()));
+            }
+        }
+        return batchImport.finish();
+    }
+
+    private void addElement(BatchImport batchImport, int row, JsonNode element) {
+        if (element == null || !element.isObject()) {
+            batchImport.reject(row, null, List.of("Expected a company object"));
+            return;
+        }
+        try {
+            batchImport.add(row, objectMapper.treeToValue(element, CompanyDto.class));
+        } catch (JsonProcessingException e) {
+            String symbol = element.hasNonNull("symbol") ? element.get("symbol").asText() : null;
+            batchImport.reject(row, symbol, List.of("Invalid company: " + e.getOriginalMessage()));
+        }
+    }
+
+    /**
+     * Collects the rows of one import, writes them in batches and records the outcome of each row.
+     */
+    private final class BatchImport {
+
+        private final List<CompanyImportRowDto> results = new ArrayList<>();
+        private final List<Integer> pendingRows = new ArrayList<>(batchSize);
+        private final List<Company> pendingCompanies = new ArrayList<>(batchSize);
+        private int created;
+        private int conflicts;
+        private int invalid;
+
+        void add(int row, CompanyDto companyDto) {
+            if (companyDto == null) {
+                reject(row, null, List.of("Expected a company object, got null"));
+                return;
+            }
+            Set<ConstraintViolation<CompanyDto>> violations = validator.validate(companyDto);
+            if (!violations.isEmpty()) {
+                List<String> errors = violations.stream()
+                        .map(violation -> violation.getPropertyPath() + ": " + violation.getMessage())
+                        .sorted()
+                        .toList();
+                reject(row, companyDto.symbol(), errors);
+                return;
+            }
+
+            pendingRows.add(row);
+            pendingCompanies.add(companyMapper.toEntity(companyDto));
+            if (pendingCompanies.size() >= batchSize) {
+                flush();
+            }
+        }
+
+        void reject(int row, String symbol, List<String> errors) {
+            invalid++;
+            results.add(new CompanyImportRowDto(row, symbol, CompanyImportRowDto.Status.INVALID, null, errors));
+        }
+
+        CompanyImportResultDto finish() {
+            flush();
+            // Invalid rows are recorded straight away and valid ones only when their batch is written.
+            results.sort(Comparator.comparingInt(CompanyImportRowDto::row));
+            return new CompanyImportResultDto(created, conflicts, invalid, results);
+        }
+
+        private void flush() {
+            if (pendingCompanies.isEmpty()) {
+                return;
+            }
+            // Every batch is committed in its own short transaction.
+            List<Long> insertedIds = companyRepository.insertIgnoringConflicts(List.copyOf(pendingCompanies));
+            for (int i = 0; i < pendingCompanies.size(); i++) {
+                Long id = insertedIds.get(i);
+                String symbol = pendingCompanies.get(i).getSymbol();
+                if (id != null) {
+                    created++;
+                    results.add(new CompanyImportRowDto(pendingRows.get(i), symbol, CompanyImportRowDto.Status.CREATED, id, null));
+                } else {
+                    conflicts++;
+                    results.add(new CompanyImportRowDto(pendingRows.get(i), symbol, CompanyImportRowDto.Status.CONFLICT, null, null));
+                }
+            }
+            pendingRows.clear();
+            pendingCompanies.clear();
+        }
+    }
+}
@@ -1,26 +1,41 @@
 package com.ludogoriesoft.service;
 
-import com.ludogoriesoft.client.FinnhubClient;
+import com.ludogoriesoft.cache.CompanyStockCache;
+import com.ludogoriesoft.cache.SingleFlight;
+import com.ludogoriesoft.cache.StockCacheMetrics;
+import com.ludogoriesoft.client.FinnhubGateway;
 import com.ludogoriesoft.dto.CompanyDto;
+import com.ludogoriesoft.dto.CompanySearchQuery;
 import com.ludogoriesoft.dto.CompanyStockDto;
 import com.ludogoriesoft.dto.FinnhubProfileDto;
 import com.ludogoriesoft.entity.Company;
 import com.ludogoriesoft.entity.StockData;
 import com.ludogoriesoft.mapper.CompanyMapper;
 import com.ludogoriesoft.repository.CompanyRepository;
-import com.ludogoriesoft.repository.StockDataRepository;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
 import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Event;
+import jakarta.inject.Inject;
+import jakarta.persistence.OptimisticLockException;
 import jakarta.transaction.Transactional;
 import jakarta.ws.rs.NotFoundException;
 import jakarta.ws.rs.WebApplicationException;
 import jakarta.ws.rs.core.Response;
 import org.eclipse.microprofile.config.inject.ConfigProperty;
-import org.eclipse.microprofile.rest.client.inject.RestClient;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.time.Duration;
+import java.time.Instant;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
 
 /**
  * Service class containing the core business logic for company operations.
@@ -30,23 +45,63 @@ import java.util.Optional;
 public class CompanyService {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(CompanyService.class);
+    private static final long REFRESH_LOCK_POLL_MILLIS = 50;
 
     private final CompanyRepository companyRepository;
     private final CompanyMapper companyMapper;
-    private final StockDataRepository stockDataRepository;
-    private final FinnhubClient finnhubClient;
-    private final String finnhubApiKey;
+    private final StockDataStore stockDataStore;
+    private final FinnhubGateway finnhubGateway;
+    private final CompanyStockCache companyStockCache;
+    private final StockCacheMetrics stockCacheMetrics;
+    private final Event<CompanyUpdatedEvent> companyUpdatedEvent;
+    // Coalesces concurrent cache misses, so that at most one Finnhub call per symbol is in progress.
+    private final SingleFlight<String, CompanyStockDto> finnhubRequests = new SingleFlight<>();
+    // The companies whose stale stock data is being refreshed in the background, so each has one refresh at a time.
+    private final Set<Long> backgroundRefreshes = ConcurrentHashMap.newKeySet();
+    private final Duration refreshLockWait;
+    private final Duration staleMaxAge;
+    private final Executor refreshExecutor;
 
+    @Inject
     public CompanyService(CompanyRepository companyRepository,
                           CompanyMapper companyMapper,
-                          StockDataRepository stockDataRepository,
-                          @RestClient FinnhubClient finnhubClient,
-                          @ConfigProperty(name = "finnhub.api.key") String finnhubApiKey) {
+                          StockDataStore stockDataStore,
+                          FinnhubGateway finnhubGateway,
+                          CompanyStockCache companyStockCache,
+                          StockCacheMetrics stockCacheMetrics,
+                          Event<CompanyUpdatedEvent> companyUpdatedEvent,
+                          MeterRegistry meterRegistry,
+                          @ConfigProperty(name = "stock.refresh.lock-wait", defaultValue = "2S") Duration refreshLockWait,
+                          @ConfigProperty(name = "stock.stale.max-age", defaultValue = "P7D") Duration staleMaxAge) {
+        this(companyRepository, companyMapper, stockDataStore, finnhubGateway, companyStockCache, stockCacheMetrics,
+                companyUpdatedEvent, meterRegistry, refreshLockWait, staleMaxAge, Executors.newVirtualThreadPerTaskExecutor());
+    }
+
+    CompanyService(CompanyRepository companyRepository,
+                   CompanyMapper companyMapper,
+                   StockDataStore stockDataStore,
+                   FinnhubGateway finnhubGateway,
+                   CompanyStockCache companyStockCache,
+                   StockCacheMetrics stockCacheMetrics,
+                   Event<CompanyUpdatedEvent> companyUpdatedEvent,
+                   MeterRegistry meterRegistry,
+                   Duration refreshLockWait,
+                   Duration staleMaxAge,
+                   Executor refreshExecutor) {
         this.companyRepository = companyRepository;
         this.companyMapper = companyMapper;
-        this.stockDataRepository = stockDataRepository;
-        this.finnhubClient = finnhubClient;
-        this.finnhubApiKey = finnhubApiKey;
+        this.stockDataStore = stockDataStore;
+        this.finnhubGateway = finnhubGateway;
+        this.companyStockCache = companyStockCache;
+        this.stockCacheMetrics = stockCacheMetrics;
+        this.companyUpdatedEvent = companyUpdatedEvent;
+        this.refreshLockWait = refreshLockWait;
+        this.staleMaxAge = staleMaxAge;
+        this.refreshExecutor = refreshExecutor;
+
+        FunctionCounter.builder("finnhub.requests.coalesced", finnhubRequests, SingleFlight::coalescedCount)
+                .description("Requests that waited for an in-flight Finnhub call instead of making their own")
+                .register(meterRegistry);
     }
 
     /**
@@ -58,35 +113,65 @@ public class CompanyService {
      */
     @Transactional
     public CompanyDto createCompany(CompanyDto companyDto) {
-        // Checks if the symbol already exists
-        companyRepository.findBySymbol(companyDto.symbol()).ifPresent(company -> {
-            // If exists, throw 409 Conflict
-            throw new WebApplicationException("Company with symbol " + companyDto.symbol() + " already exists.", Response.Status.CONFLICT);
-        });
-
         // 1. Map the incoming DTO to a database entity
         Company company = companyMapper.toEntity(companyDto);
 
-        // 2. Persist the new entity using the repository
-        companyRepository.persist(company);
+        // 2. Insert it unless the symbol already exists. This is a single statement, so two concurrent creates
+        // of the same symbol can't both pass a check before either of them inserts.
+        if (!companyRepository.insertIfAbsent(company)) {
+            // If exists, throw 409 Conflict
+            throw new WebApplicationException("Company with symbol " + companyDto.symbol() + " already exists.", Response.Status.CONFLICT);
+        }
 
-        // 3. Map the persisted entity (which now has an id and createdAt) back to a DTO and return it
+        // 3. Map the inserted entity (which now has an id and createdAt) back to a DTO and return it
         return companyMapper.toDto(company);
     }
 
     /**
-     * Retrieves all companies from the database.
+     * Retrieves one page of companies, using keyset pagination on the ID.
      *
-     * @return A list of CompanyDto objects.
+     * @param after The ID of the last company of the previous page, or null for the first page.
+     * @param limit The maximum number of companies to return.
+     * @return A list of CompanyDto objects, ordered by ID.
      */
-    public List<CompanyDto> getAllCompanies() {
-        // 1. Fetch all Company entities from the database
-        List<Company> companies = companyRepository.listAll();
+    public List<CompanyDto> getAllCompanies(Long after, int limit) {
+        // The page is read straight into DTOs, so no entities are loaded just to be mapped and thrown away.
+        return companyRepository.findPage(after, limit);
+    }
 
-        // 2. Use a Java Stream to map each entity to a DTO
-        return companies.stream()
-                .map(companyMapper::toDto)
-                .toList();
+    /**
+     * Searches companies by country, name prefix and symbol prefix, one page at a time.
+     *
+     * @param query The filters. Blank ones are ignored.
+     * @param after The ID of the last company of the previous page, or null for the first page.
+     * @param limit The maximum number of companies to return.
+     * @return A list of the matching CompanyDto objects, ordered by ID.
+     */
+    public List<CompanyDto> searchCompanies(CompanySearchQuery query, Long after, int limit) {
+        return companyRepository.search(query, after, limit);
+    }
+
+    /**
+     * Returns a fingerprint of the page {@link #getAllCompanies(Long, int)} would return, for use as its ETag.
+     * It only changes when a company on the page is created, updated or deleted.
+     *
+     * @param after The ID of the last company of the previous page, or null for the first page.
+     * @param limit The maximum number of companies on the page.
+     * @return An opaque fingerprint of the page.
+     */
+    public String getCompanyPageFingerprint(Long after, int limit) {
+        return companyRepository.findPageFingerprint(after, limit);
+    }
+
+    /**
+     * Streams all companies, ordered by ID, to the given consumer one at a time.
+     * Nothing is collected in memory, so this is safe to use for tables of any size.
+     *
+     * @param consumer Receives each company as it is read from the database.
+     */
+    @Transactional
+    public void streamAllCompanies(Consumer<CompanyDto> consumer) {
+        companyRepository.forEachCompany(company -> consumer.accept(companyMapper.toDto(company)));
     }
 
     /**
@@ -109,46 +194,193 @@ public class CompanyService {
 
         // 3. Persist the changes. While not always strictly necessary for managed entities
         // within a transaction, it's an explicit and safe way to ensure the update happens.
-        companyRepository.persist(companyToUpdate);
+        // Flushing here surfaces a concurrent update of the same company (a version mismatch) as a 409.
+        try {
+            companyRepository.persistAndFlush(companyToUpdate);
+        } catch (OptimisticLockException e) {
+            throw new WebApplicationException("Company with id " + id + " was updated concurrently, please retry.", Response.Status.CONFLICT);
+        }
 
-        // 4. Map the updated entity back to a DTO and return it.
+        // 4. Let the in-memory caches drop their copy of this company once the transaction commits.
+        companyUpdatedEvent.fire(new CompanyUpdatedEvent(id));
+
+        // 5. Map the updated entity back to a DTO and return it.
         return companyMapper.toDto(companyToUpdate);
     }
 
     /**
-     * Gets combined company and stock data. Implements a daily caching mechanism.
+     * Gets combined company and stock data. Implements a daily caching mechanism
+     * with an in-memory L1 cache in front of the StockData table.
+     * This method is deliberately not transactional: the database reads and the write are separate short
+     * transactions, and the Finnhub call in between runs without holding a database connection.
+     *
+     * Without data from today, the most recent older snapshot (up to the configured maximum age) is returned
+     * right away, marked as stale, and refreshed from Finnhub in the background. Only a company without any
+     * such snapshot makes the caller wait for Finnhub.
      */
-    @Transactional
     public CompanyStockDto getCompanyStockData(Long companyId) {
-        // 1. First, find the company in our database.
-        Company company = companyRepository.findByIdOptional(companyId)
-                .orElseThrow(() -> new NotFoundException("Company with id " + companyId + " not found"));
+        return getCompanyStockData(companyId, true);
+    }
+
+    /**
+     * Like {@link #getCompanyStockData(Long)}, but never returns stale data: without data from today,
+     * the caller waits for the refresh from Finnhub.
+     */
+    public CompanyStockDto getFreshCompanyStockData(Long companyId) {
+        return getCompanyStockData(companyId, false);
+    }
+
+    private CompanyStockDto getCompanyStockData(Long companyId, boolean serveStale) {
+        // 0. L1 CACHE HIT: The assembled DTO is already in memory, so we don't touch the database at all.
+        Optional<CompanyStockDto> l1Hit = companyStockCache.get(companyId);
+        if (l1Hit.isPresent()) {
+            stockCacheMetrics.l1Hit();
+            return l1Hit.get();
+        }
 
-        // 2. Check the cache: Do we already have stock data for this company from today?
-        Optional<StockData> cachedStockData = stockDataRepository.findLatestByCompanyIdForToday(companyId);
+        // 1. Read phase: find the company and, if we have it, its stock data from today, as one read-only projection.
+        CompanyStockDto stored = stockDataStore.findCompanyWithTodaysStockData(companyId)
+                .orElseThrow(() -> new NotFoundException("Company with id " + companyId + " not found"));
 
-        StockData stockDataToUse;
-        if (cachedStockData.isPresent()) {
-            // 3a. CACHE HIT: We found data from today. Use it.
-            LOGGER.info("CACHE HIT for company ID: {}", companyId);
-            stockDataToUse = cachedStockData.get();
+        CompanyStockDto result;
+        if (stored.fetchedAt() != null) {
+            // 2a. CACHE HIT: We found data from today. The projection already is the response.
+            stockCacheMetrics.databaseHit();
+            result = stored;
         } else {
-            // 3b. CACHE MISS: No data for today. Call the external Finnhub API.
-            LOGGER.info("CACHE MISS for company ID: {}. Calling Finnhub API.", companyId);
-            FinnhubProfileDto finnhubData = finnhubClient.getCompanyProfile(company.getSymbol(), finnhubApiKey);
-
-            // 4. Create a NEW StockData entity to store the results. We never update old ones.
-            StockData newStockData = new StockData();
-            newStockData.company = company;
-            newStockData.setMarketCapitalization(finnhubData.marketCapitalization());
-            newStockData.setShareOutstanding(finnhubData.shareOutstanding());
-
-            // 5. Save the new data to our database for future requests today.
-            stockDataRepository.persist(newStockData);
-            stockDataToUse = newStockData;
+            // 2b. STALE: No data for today, but an older snapshot. Serve it right away and refresh it in the background.
+            // It is not kept in the L1 cache, so the requests after the refresh get the new data.
+            Optional<CompanyStockDto> lastKnown = serveStale ? findStaleStockData(stored) : Optional.empty();
+            if (lastKnown.isPresent()) {
+                stockCacheMetrics.staleHit();
+                refreshInBackground(stored);
+                return lastKnown.get();
+            }
+
+            // 2c. CACHE MISS: No data for today. Call the external Finnhub API.
+            // Concurrent misses for the same symbol share a single upstream call and its result.
+            stockCacheMetrics.miss();
+            result = finnhubRequests.execute(stored.symbol(), () -> fetchAndStoreStockData(stored));
         }
 
-        // 6. Map the company data and the chosen stock data to our final DTO and return it.
-        return companyMapper.toCompanyStockDto(company, stockDataToUse);
+        // 3. Keep the final DTO in memory until the next freshness boundary.
+        companyStockCache.put(companyId, result);
+        return result;
+    }
+
+    /**
+     * Lists companies with the most recent stock data we have stored for each of them, one page at a time.
+     * This only reads what is in the database and never calls Finnhub, so the data may be older than today;
+     * fetchedAt tells how old it is, and it is null for companies that were never looked up.
+     *
+     * @param after The ID of the last company of the previous page, or null for the first page.
+     * @param limit The maximum number of companies to return.
+     * @return A list of CompanyStockDto objects, ordered by company ID.
+     */
+    public List<CompanyStockDto> getLatestStockData(Long after, int limit) {
+        return stockDataStore.findLatestStockDataPage(after, limit);
+    }
+
+    /**
+     * Finds the most recent snapshot of a company that is not older than the configured maximum age.
+     *
+     * @param company The company, as read without stock data from today.
+     * @return The company with that snapshot, marked as stale, or an empty Optional if there is none.
+     */
+    private Optional<CompanyStockDto> findStaleStockData(CompanyStockDto company) {
+        return stockDataStore.findLatestStockDataSince(company.id(), Instant.now().minus(staleMaxAge))
+                .map(stockData -> companyMapper.withStockData(company, stockData).asStale());
+    }
+
+    /**
+     * Refreshes a company's stock data from Finnhub without making the caller wait, and puts the result
+     * in the L1 cache. Nothing is started while the Finnhub circuit breaker is open, or while the company
+     * is already being refreshed in the background.
+     */
+    private void refreshInBackground(CompanyStockDto company) {
+        if (!finnhubGateway.isAvailable() || !backgroundRefreshes.add(company.id())) {
+            return;
+        }
+        refreshExecutor.execute(() -> {
+            try {
+                CompanyStockDto refreshed = finnhubRequests.execute(company.symbol(), () -> fetchAndStoreStockData(company));
+                companyStockCache.put(company.id(), refreshed);
+            } catch (RuntimeException e) {
+                LOGGER.warn("Failed to refresh stock data in the background for company ID: {}", company.id(), e);
+            } finally {
+                backgroundRefreshes.remove(company.id());
+            }
+        });
+    }
+
+    /**
+     * Refreshes a company's stock data from Finnhub and puts the result in the L1 cache. This goes through
+     * the same coalesced, claimed path as a single lookup, so concurrent lookups of the same symbol, on this
+     * node or on others, still make only one Finnhub call and store only one snapshot.
+     *
+     * @param company The company, as read without stock data from today.
+     * @return The combined company and stock DTO.
+     */
+    public CompanyStockDto refreshStockData(CompanyStockDto company) {
+        CompanyStockDto refreshed = finnhubRequests.execute(company.symbol(), () -> fetchAndStoreStockData(company));
+        companyStockCache.put(company.id(), refreshed);
+        return refreshed;
+    }
+
+    /**
+     * Fetches fresh stock data from Finnhub and stores it as a new StockData snapshot.
+     * Other application nodes are coordinated through a refresh claim in the database: whoever holds it refreshes,
+     * the others wait briefly and then reuse the snapshot it inserted.
+     *
+     * @param company The company to fetch stock data for, as read without stock data from today.
+     * @return The combined company and stock DTO.
+     */
+    private CompanyStockDto fetchAndStoreStockData(CompanyStockDto company) {
+        // While the circuit breaker is open, fail before claiming anything: the Finnhub call would be rejected anyway.
+        finnhubGateway.checkCircuit();
+        Optional<UUID> claim = stockDataStore.tryClaimRefresh(company.id());
+        if (claim.isEmpty()) {
+            // Another node is refreshing this company right now, so wait for its snapshot instead.
+            Optional<StockData> refreshedElsewhere = awaitRefreshElsewhere(company.id());
+            if (refreshedElsewhere.isPresent()) {
+                return companyMapper.withStockData(company, refreshedElsewhere.get());
+            }
+            LOGGER.warn("Timed out waiting for another node to refresh company ID: {}. Refreshing it here.", company.id());
+        }
+
+        // 4. Fetch phase: no transaction is active here, so a slow Finnhub doesn't pin a pooled connection.
+        FinnhubProfileDto finnhubData;
+        try {
+            finnhubData = finnhubGateway.getCompanyProfile(company.symbol());
+        } catch (RuntimeException e) {
+            // Only our own claim: after a timed-out wait, the claim still belongs to the node we waited for.
+            claim.ifPresent(owner -> stockDataStore.releaseRefreshClaim(company.id(), owner));
+            throw e;
+        }
+
+        // 5. Write phase: a short, insert-only transaction that also releases the claim, if we hold it.
+        StockData newStockData = stockDataStore.saveStockData(company.id(), finnhubData, claim.orElse(null));
+        return companyMapper.withStockData(company, newStockData);
+    }
+
+    /**
+     * Polls for today's snapshot of a company until it appears or the configured wait elapses.
+     * Every poll is its own short read, so waiting doesn't hold a connection either.
+     */
+    private Optional<StockData> awaitRefreshElsewhere(Long companyId) {
+        long deadline = System.nanoTime() + refreshLockWait.toNanos();
+        while (System.nanoTime() < deadline) {
+            try {
+                Thread.sleep(REFRESH_LOCK_POLL_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return Optional.empty();
+            }
+            Optional<StockData> stockData = stockDataStore.findTodaysStockData(companyId);
+            if (stockData.isPresent()) {
+                return stockData;
+            }
+        }
+        return Optional.empty();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,224 @@
+package com.ludogoriesoft.service;
+
+import com.ludogoriesoft.cache.CompanyStockCache;
+import com.ludogoriesoft.cache.StockCacheMetrics;
+import com.ludogoriesoft.client.FinnhubGateway;
+import com.ludogoriesoft.dto.CompanyStockDto;
+import com.ludogoriesoft.dto.CompanyStockResultDto;
+import com.ludogoriesoft.dto.FinnhubProfileDto;
+import com.ludogoriesoft.entity.Company;
+import com.ludogoriesoft.entity.StockData;
+import com.ludogoriesoft.mapper.CompanyMapper;
+import jakarta.enterprise.context.ApplicationScoped;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Service class for looking up combined company and stock data for many companies at once.
+ * It is the batch counterpart of {@link CompanyService#getCompanyStockData(Long)}:
+ * cache hits are resolved with one query, misses are fetched from Finnhub in parallel (with a configurable cap)
+ * outside of any transaction, and the new snapshots are persisted together.
+ *
+ * Each miss takes the same refresh claim as a single lookup, so no two lookups (on this node or on others)
+ * fetch and store the same company at the same time. A miss whose claim is held elsewhere is handed to
+ * {@link CompanyService#refreshStockData(CompanyStockDto)}, which joins or waits for that refresh.
+ */
+@ApplicationScoped
+public class CompanyStockBatchService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CompanyStockBatchService.class);
+    private static final String REFRESH_FAILED = "Could not fetch stock data from Finnhub";
+
+    private final StockDataStore stockDataStore;
+    private final CompanyMapper companyMapper;
+    private final CompanyService companyService;
+    private final FinnhubGateway finnhubGateway;
+    private final CompanyStockCache companyStockCache;
+    private final StockCacheMetrics stockCacheMetrics;
+    private final int finnhubConcurrency;
+
+    public CompanyStockBatchService(StockDataStore stockDataStore,
+                                    CompanyMapper companyMapper,
+                                    CompanyService companyService,
+                                    FinnhubGateway finnhubGateway,
+                                    CompanyStockCache companyStockCache,
+                                    StockCacheMetrics stockCacheMetrics,
+                                    @ConfigProperty(name = "stock.batch.finnhub-concurrency", defaultValue = "8") int finnhubConcurrency) {
+        this.stockDataStore = stockDataStore;
+        this.companyMapper = companyMapper;
+        this.companyService = companyService;
+        this.finnhubGateway = finnhubGateway;
+        this.companyStockCache = companyStockCache;
+        this.stockCacheMetrics = stockCacheMetrics;
+        this.finnhubConcurrency = finnhubConcurrency;
+    }
+
+    /**
+     * Gets combined company and stock data for every given company.
+     * A failure for one company (unknown ID, Finnhub error) is reported in its own entry and doesn't fail the others.
+     *
+     * @param companyIds The IDs of the companies. Duplicates are ignored.
+     * @return One entry per distinct company ID, in request order.
+     */
+    public Map<Long, CompanyStockResultDto> getCompanyStockData(List<Long> companyIds) {
+        Map<Long, CompanyStockResultDto> results = new LinkedHashMap<>();
+
+        // 1. L1 cache hits don't need the database at all.
+        List<Long> idsToLoad = new ArrayList<>();
+        for (Long companyId : new LinkedHashSet<>(companyIds)) {
+            results.put(companyId, companyStockCache.get(companyId).map(CompanyStockResultDto::success).orElse(null));
+            if (results.get(companyId) == null) {
+                idsToLoad.add(companyId);
+            } else {
+                stockCacheMetrics.l1Hit();
+            }
+        }
+        if (idsToLoad.isEmpty()) {
+            return results;
+        }
+
+        // 2. Read phase: one query for the companies and one for today's stock data of all of them.
+        Map<Long, StockDataStore.CompanyStockData> stored = stockDataStore.findCompaniesWithTodaysStockData(idsToLoad);
+
+        List<CompanyStockDto> misses = new ArrayList<>();
+        for (Long companyId : idsToLoad) {
+            StockDataStore.CompanyStockData companyStockData = stored.get(companyId);
+            if (companyStockData == null) {
+                results.put(companyId, CompanyStockResultDto.failure("Company with id " + companyId + " not found"));
+            } else if (companyStockData.todaysStockData() != null) {
+                stockCacheMetrics.databaseHit();
+                results.put(companyId, cacheAndWrap(companyStockData.company(), companyStockData.todaysStockData()));
+            } else {
+                stockCacheMetrics.miss();
+                misses.add(companyMapper.toCompanyStockDto(companyStockData.company()));
+            }
+        }
+
+        // 3. Fetch phase: claim and fetch the misses in parallel, outside of any transaction.
+        List<StockDataStore.ClaimedRefresh> fetched = new ArrayList<>();
+        Map<Long, CompanyStockDto> missesById = new LinkedHashMap<>();
+        misses.forEach(company -> missesById.put(company.id(), company));
+        fetchAll(misses).forEach((companyId, outcome) -> {
+            if (outcome.fetched() != null) {
+                fetched.add(outcome.fetched());
+            } else {
+                results.put(companyId, outcome.result());
+            }
+        });
+
+        // 4. Write phase: persist all new snapshots together, releasing our claims, in one short transaction.
+        if (!fetched.isEmpty()) {
+            results.putAll(saveAll(fetched, missesById));
+        }
+
+        return results;
+    }
+
+    private CompanyStockResultDto cacheAndWrap(Company company, StockData stockData) {
+        CompanyStockDto companyStockDto = companyMapper.toCompanyStockDto(company, stockData);
+        companyStockCache.put(company.id, companyStockDto);
+        return CompanyStockResultDto.success(companyStockDto);
+    }
+
+    private Map<Long, CompanyStockResultDto> saveAll(List<StockDataStore.ClaimedRefresh> fetched, Map<Long, CompanyStockDto> missesById) {
+        Map<Long, CompanyStockResultDto> results = new LinkedHashMap<>();
+        Map<Long, StockData> saved;
+        try {
+            saved = stockDataStore.saveAll(fetched);
+        } catch (RuntimeException e) {
+            // Other nodes must not wait for claims nobody will fill.
+            LOGGER.warn("Failed to store the stock data of a batch lookup", e);
+            fetched.forEach(refresh -> stockDataStore.releaseRefreshClaim(refresh.companyId(), refresh.claimOwner()));
+            fetched.forEach(refresh -> results.put(refresh.companyId(), CompanyStockResultDto.failure(REFRESH_FAILED)));
+            return results;
+        }
+        saved.forEach((companyId, stockData) -> {
+            CompanyStockDto companyStockDto = companyMapper.withStockData(missesById.get(companyId), stockData);
+            companyStockCache.put(companyId, companyStockDto);
+            results.put(companyId, CompanyStockResultDto.success(companyStockDto));
+        });
+        return results;
+    }
+
+    /**
+     * Claims and fetches every company, with at most the configured number of Finnhub calls in flight at a time.
+     *
+     * @return The outcome for each company ID.
+     */
+    private Map<Long, FetchOutcome> fetchAll(List<CompanyStockDto> companies) {
+        Map<Long, FetchOutcome> outcomes = new LinkedHashMap<>();
+        if (companies.isEmpty()) {
+            return outcomes;
+        }
+
+        // A fixed pool of virtual threads caps the concurrency without tying up platform threads.
+        try (ExecutorService executor = Executors.newFixedThreadPool(finnhubConcurrency, Thread.ofVirtual().factory())) {
+            Map<Long, Future<FetchOutcome>> fetches = new LinkedHashMap<>();
+            for (CompanyStockDto company : companies) {
+                fetches.put(company.id(), executor.submit(() -> fetch(company)));
+            }
+            fetches.forEach((companyId, fetch) -> outcomes.put(companyId, await(companyId, fetch)));
+        }
+        return outcomes;
+    }
+
+    /**
+     * Fetches a company's profile from Finnhub under our refresh claim, to be stored by the write phase.
+     * If someone else holds the claim, that refresh is joined or waited for instead, and its result is final.
+     */
+    private FetchOutcome fetch(CompanyStockDto company) {
+        // While the circuit breaker is open, fail before claiming anything: the Finnhub call would be rejected anyway.
+        finnhubGateway.checkCircuit();
+        Optional<UUID> claim = stockDataStore.tryClaimRefresh(company.id());
+        if (claim.isEmpty()) {
+            return FetchOutcome.done(CompanyStockResultDto.success(companyService.refreshStockData(company)));
+        }
+        try {
+            FinnhubProfileDto finnhubData = finnhubGateway.getCompanyProfile(company.symbol());
+            return FetchOutcome.fetched(new StockDataStore.ClaimedRefresh(company.id(), finnhubData, claim.get()));
+        } catch (RuntimeException e) {
+            stockDataStore.releaseRefreshClaim(company.id(), claim.get());
+            throw e;
+        }
+    }
+
+    private static FetchOutcome await(Long companyId, Future<FetchOutcome> fetch) {
+        try {
+            return fetch.get();
+        } catch (ExecutionException e) {
+            // The cause may carry upstream details, so it is only logged and the client gets a fixed message.
+            LOGGER.warn("Failed to refresh stock data for company ID: {}", companyId, e.getCause());
+            return FetchOutcome.done(CompanyStockResultDto.failure(REFRESH_FAILED));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return FetchOutcome.done(CompanyStockResultDto.failure(REFRESH_FAILED));
+        }
+    }
+
+    /**
+     * Either a profile fetched under our claim and still to be stored, or the final result for the company.
+     */
+    private record FetchOutcome(StockDataStore.ClaimedRefresh fetched, CompanyStockResultDto result) {
+
+        static FetchOutcome fetched(StockDataStore.ClaimedRefresh fetched) {
+            return new FetchOutcome(fetched, null);
+        }
+
+        static FetchOutcome done(CompanyStockResultDto result) {
+            return new FetchOutcome(null, result);
+        }
+    }
+}
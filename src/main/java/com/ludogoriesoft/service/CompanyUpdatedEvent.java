@@ -0,0 +1,7 @@
+package com.ludogoriesoft.service;
+
+/**
+ * CDI event fired by CompanyService whenever an existing company is modified.
+ * Observers use it to evict any derived data they hold for that company.
+ */
+public record CompanyUpdatedEvent(Long companyId) {}
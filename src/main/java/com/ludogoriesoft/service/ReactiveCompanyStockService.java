@@ -0,0 +1,200 @@
+package com.ludogoriesoft.service;
+
+import com.ludogoriesoft.cache.CompanyStockCache;
+import com.ludogoriesoft.cache.StockCacheMetrics;
+import com.ludogoriesoft.client.ReactiveFinnhubGateway;
+import com.ludogoriesoft.dto.CompanyStockDto;
+import com.ludogoriesoft.dto.FinnhubProfileDto;
+import com.ludogoriesoft.repository.ReactiveStockDataRepository;
+import io.smallrye.mutiny.Uni;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.ws.rs.NotFoundException;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The non-blocking version of {@link CompanyService#getCompanyStockData(Long)}.
+ * It follows the same steps (L1 cache, today's snapshot, an older snapshot served as stale while it is refreshed
+ * in the background, one coalesced Finnhub call per symbol, a refresh claim shared with the other nodes,
+ * an insert-only write), but composes them as Uni
+ * so that no thread is occupied while a request waits for the database or Finnhub.
+ */
+@ApplicationScoped
+public class ReactiveCompanyStockService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReactiveCompanyStockService.class);
+    private static final Duration REFRESH_POLL_INTERVAL = Duration.ofMillis(50);
+
+    private final ReactiveStockDataRepository stockDataRepository;
+    private final ReactiveFinnhubGateway finnhubGateway;
+    private final CompanyStockCache companyStockCache;
+    private final StockCacheMetrics stockCacheMetrics;
+    private final Duration refreshLockWait;
+    private final Duration refreshLease;
+    private final Duration staleMaxAge;
+    // The companies whose stale stock data is being refreshed in the background, so each has one refresh at a time.
+    private final Set<Long> backgroundRefreshes = ConcurrentHashMap.newKeySet();
+    // Coalesces concurrent cache misses, so that at most one Finnhub call per symbol is in progress.
+    private final ConcurrentMap<String, CompletableFuture<CompanyStockDto>> inFlight = new ConcurrentHashMap<>();
+
+    public ReactiveCompanyStockService(ReactiveStockDataRepository stockDataRepository,
+                                       ReactiveFinnhubGateway finnhubGateway,
+                                       CompanyStockCache companyStockCache,
+                                       StockCacheMetrics stockCacheMetrics,
+                                       @ConfigProperty(name = "stock.refresh.lock-wait", defaultValue = "2S") Duration refreshLockWait,
+                                       @ConfigProperty(name = "stock.refresh.lease", defaultValue = "30S") Duration refreshLease,
+                                       @ConfigProperty(name = "stock.stale.max-age", defaultValue = "P7D") Duration staleMaxAge) {
+        this.stockDataRepository = stockDataRepository;
+        this.finnhubGateway = finnhubGateway;
+        this.companyStockCache = companyStockCache;
+        this.stockCacheMetrics = stockCacheMetrics;
+        this.refreshLockWait = refreshLockWait;
+        this.refreshLease = refreshLease;
+        this.staleMaxAge = staleMaxAge;
+    }
+
+    /**
+     * Gets combined company and stock data, refreshing it from Finnhub if we have none from today.
+     * Like the blocking version, an older snapshot is returned right away, marked as stale, while it is refreshed.
+     *
+     * @param companyId The ID of the company.
+     * @return A Uni with the combined DTO, or failing with NotFoundException if the company doesn't exist.
+     */
+    public Uni<CompanyStockDto> getCompanyStockData(Long companyId) {
+        Optional<CompanyStockDto> l1Hit = companyStockCache.get(companyId);
+        if (l1Hit.isPresent()) {
+            stockCacheMetrics.l1Hit();
+            return Uni.createFrom().item(l1Hit.get());
+        }
+
+        return stockDataRepository.findCompanyWithTodaysStockData(companyId)
+                .onItem().ifNull().failWith(() -> new NotFoundException("Company with id " + companyId + " not found"))
+                .chain(stored -> {
+                    if (stored.isFreshToday()) {
+                        stockCacheMetrics.databaseHit();
+                        companyStockCache.put(companyId, stored.data());
+                        return Uni.createFrom().item(stored.data());
+                    }
+                    return stockDataRepository.findCompanyWithStockDataSince(companyId, Instant.now().minus(staleMaxAge))
+                            .chain(lastKnown -> {
+                                if (lastKnown != null && lastKnown.fetchedAt() != null) {
+                                    // Not kept in the L1 cache, so the requests after the refresh get the new data.
+                                    stockCacheMetrics.staleHit();
+                                    refreshInBackground(stored.data());
+                                    return Uni.createFrom().item(lastKnown.data().asStale());
+                                }
+                                stockCacheMetrics.miss();
+                                return coalesced(stored.data())
+                                        .invoke(result -> companyStockCache.put(companyId, result));
+                            });
+                });
+    }
+
+    /**
+     * Refreshes a company's stock data without making the caller wait, and puts the result in the L1 cache.
+     * Nothing is started while the Finnhub circuit breaker is open, or while the company is already being refreshed.
+     */
+    private void refreshInBackground(CompanyStockDto company) {
+        if (!finnhubGateway.isAvailable() || !backgroundRefreshes.add(company.id())) {
+            return;
+        }
+        coalesced(company)
+                .eventually(() -> backgroundRefreshes.remove(company.id()))
+                .subscribe().with(
+                        refreshed -> companyStockCache.put(company.id(), refreshed),
+                        failure -> LOGGER.warn("Failed to refresh stock data in the background for company ID: {}",
+                                company.id(), failure));
+    }
+
+    /**
+     * Joins the in-flight refresh of the company's symbol, or starts one if there is none.
+     * The refresh is subscribed to on its own rather than through the first caller, so it always runs to the end
+     * and clears its entry: a cancelled caller (e.g. a client that disconnected) must not leave a flight behind
+     * that never completes. Each caller waits on its own copy of the shared future, so cancelling it doesn't
+     * cancel the flight for the others either.
+     */
+    private Uni<CompanyStockDto> coalesced(CompanyStockDto company) {
+        return Uni.createFrom().deferred(() -> {
+            CompletableFuture<CompanyStockDto> ownFlight = new CompletableFuture<>();
+            CompletableFuture<CompanyStockDto> existingFlight = inFlight.putIfAbsent(company.symbol(), ownFlight);
+            if (existingFlight != null) {
+                return Uni.createFrom().completionStage(existingFlight.copy());
+            }
+            fetchAndStoreStockData(company)
+                    .onTermination().invoke(() -> inFlight.remove(company.symbol(), ownFlight))
+                    .subscribe().with(ownFlight::complete, ownFlight::completeExceptionally);
+            return Uni.createFrom().completionStage(ownFlight.copy());
+        });
+    }
+
+    private Uni<CompanyStockDto> fetchAndStoreStockData(CompanyStockDto company) {
+        // While the circuit breaker is open, fail before claiming anything: the Finnhub call would be rejected anyway.
+        return finnhubGateway.checkCircuit()
+                .chain(() -> stockDataRepository.tryClaimRefresh(company.id(), refreshLease))
+                .chain(claimOwner -> claimOwner != null
+                        ? fetchFromFinnhub(company, claimOwner)
+                        : awaitRefreshElsewhere(company.id(), System.nanoTime() + refreshLockWait.toNanos())
+                                .chain(refreshedElsewhere -> refreshedElsewhere != null
+                                        ? Uni.createFrom().item(refreshedElsewhere)
+                                        : fetchFromFinnhub(company, null)));
+    }
+
+    /**
+     * @param claimOwner The owner token of our refresh claim, or null if we refresh without holding the claim
+     *                   (after a timed-out wait it still belongs to the node we waited for).
+     */
+    private Uni<CompanyStockDto> fetchFromFinnhub(CompanyStockDto company, UUID claimOwner) {
+        return finnhubGateway.getCompanyProfile(company.symbol())
+                // Other nodes must not wait for a claim nobody will fill.
+                .onFailure().call(() -> claimOwner == null
+                        ? Uni.createFrom().voidItem()
+                        : stockDataRepository.releaseRefreshClaim(company.id(), claimOwner))
+                .chain(finnhubData -> stockDataRepository.insertStockData(company.id(), finnhubData, claimOwner)
+                        .map(fetchedAt -> withStockData(company, finnhubData, fetchedAt)));
+    }
+
+    /**
+     * Polls for today's snapshot of a company until it appears or the deadline passes,
+     * in which case it completes with a null item.
+     */
+    private Uni<CompanyStockDto> awaitRefreshElsewhere(Long companyId, long deadline) {
+        return Uni.createFrom().deferred(() -> {
+            if (System.nanoTime() >= deadline) {
+                LOGGER.warn("Timed out waiting for another node to refresh company ID: {}. Refreshing it here.", companyId);
+                return Uni.createFrom().nullItem();
+            }
+            return Uni.createFrom().voidItem()
+                    .onItem().delayIt().by(REFRESH_POLL_INTERVAL)
+                    .chain(() -> stockDataRepository.findCompanyWithTodaysStockData(companyId))
+                    .chain(stored -> stored != null && stored.isFreshToday()
+                            ? Uni.createFrom().item(stored.data())
+                            : awaitRefreshElsewhere(companyId, deadline));
+        });
+    }
+
+    private static CompanyStockDto withStockData(CompanyStockDto company, FinnhubProfileDto finnhubData, Instant fetchedAt) {
+        return new CompanyStockDto(
+                company.id(),
+                company.name(),
+                company.country(),
+                company.symbol(),
+                company.website(),
+                company.email(),
+                company.createdAt(),
+                company.version(),
+                finnhubData.marketCapitalization(),
+                finnhubData.shareOutstanding(),
+                fetchedAt,
+                false);
+    }
+}
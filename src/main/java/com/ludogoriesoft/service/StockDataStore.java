@@ -0,0 +1,189 @@
+package com.ludogoriesoft.service;
+
+import com.ludogoriesoft.dto.CompanyStockDto;
+import com.ludogoriesoft.dto.FinnhubProfileDto;
+import com.ludogoriesoft.entity.Company;
+import com.ludogoriesoft.entity.StockData;
+import com.ludogoriesoft.repository.CompanyRepository;
+import com.ludogoriesoft.repository.StockDataRepository;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.transaction.Transactional;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Owns the database side of the stock data lookups, as a set of short transactions.
+ * The services call Finnhub between these calls, outside of any transaction,
+ * so a slow upstream never holds on to a pooled database connection.
+ */
+@ApplicationScoped
+public class StockDataStore {
+
+    private final CompanyRepository companyRepository;
+    private final StockDataRepository stockDataRepository;
+    private final Duration refreshLease;
+
+    public StockDataStore(CompanyRepository companyRepository,
+                          StockDataRepository stockDataRepository,
+                          @ConfigProperty(name = "stock.refresh.lease", defaultValue = "30S") Duration refreshLease) {
+        this.companyRepository = companyRepository;
+        this.stockDataRepository = stockDataRepository;
+        this.refreshLease = refreshLease;
+    }
+
+    /**
+     * Loads a company together with its stock data from today, if there is any, as a read-only projection.
+     *
+     * @param companyId The ID of the company.
+     * @return The company combined with its latest stock data from today (with null stock fields if there is none),
+     *         or an empty Optional if the company doesn't exist.
+     */
+    @Transactional
+    public Optional<CompanyStockDto> findCompanyWithTodaysStockData(Long companyId) {
+        return stockDataRepository.findCompanyStockForToday(companyId);
+    }
+
+    /**
+     * The batch version of {@link #findCompanyWithTodaysStockData(Long)}, with managed entities: the companies come
+     * from the second-level cache where possible, and today's stock data of all of them from one query.
+     *
+     * @param companyIds The IDs of the companies.
+     * @return The found companies, keyed by ID. Unknown IDs are absent.
+     */
+    @Transactional
+    public Map<Long, CompanyStockData> findCompaniesWithTodaysStockData(Collection<Long> companyIds) {
+        Map<Long, StockData> todaysStockData = stockDataRepository.findLatestByCompanyIdsForToday(companyIds);
+        Map<Long, CompanyStockData> found = new LinkedHashMap<>();
+        companyRepository.findByIds(companyIds)
+                .forEach(company -> found.put(company.id, new CompanyStockData(company, todaysStockData.get(company.id))));
+        return found;
+    }
+
+    /**
+     * Loads one page of companies with their most recent stock data, whenever it was fetched,
+     * see {@link StockDataRepository#findLatestPage(Long, int)}.
+     */
+    @Transactional
+    public List<CompanyStockDto> findLatestStockDataPage(Long afterCompanyId, int limit) {
+        return stockDataRepository.findLatestPage(afterCompanyId, limit);
+    }
+
+    /**
+     * Loads the latest stock data from today for a company.
+     *
+     * @param companyId The ID of the company.
+     * @return The StockData if found, otherwise an empty Optional.
+     */
+    @Transactional
+    public Optional<StockData> findTodaysStockData(Long companyId) {
+        return stockDataRepository.findLatestByCompanyIdForToday(companyId);
+    }
+
+    /**
+     * Loads the latest stock data of a company fetched at or after the given instant, whichever day that was.
+     *
+     * @param companyId The ID of the company.
+     * @param since The oldest fetchedAt that is still acceptable.
+     * @return The StockData if found, otherwise an empty Optional.
+     */
+    @Transactional
+    public Optional<StockData> findLatestStockDataSince(Long companyId, Instant since) {
+        return stockDataRepository.findLatestByCompanyIdSince(companyId, since);
+    }
+
+    /**
+     * Tries to claim the refresh of a company's stock data, see {@link StockDataRepository#tryClaimRefresh}.
+     * The claim is committed right away, so other nodes see it while we call Finnhub.
+     *
+     * @return The owner token of the claim, or an empty Optional if another node holds it.
+     */
+    @Transactional(Transactional.TxType.REQUIRES_NEW)
+    public Optional<UUID> tryClaimRefresh(Long companyId) {
+        return stockDataRepository.tryClaimRefresh(companyId, refreshLease);
+    }
+
+    /**
+     * Releases our refresh claim without storing anything, e.g. because the Finnhub call failed.
+     */
+    @Transactional(Transactional.TxType.REQUIRES_NEW)
+    public void releaseRefreshClaim(Long companyId, UUID owner) {
+        stockDataRepository.releaseRefreshClaim(companyId, owner);
+    }
+
+    /**
+     * Stores a new StockData snapshot for a company and releases our refresh claim, if we hold one,
+     * in one insert-only transaction.
+     *
+     * @param companyId The ID of the company the data belongs to.
+     * @param finnhubData The profile returned by Finnhub.
+     * @param claimOwner The owner token of our refresh claim, or null if we refreshed without holding the claim.
+     * @return The persisted StockData, including its fetchedAt timestamp.
+     */
+    @Transactional
+    public StockData saveStockData(Long companyId, FinnhubProfileDto finnhubData, UUID claimOwner) {
+        // We never update old snapshots, every refresh is a new row.
+        // Only the foreign key is needed, so the company is referenced without being loaded.
+        Company company = companyRepository.getEntityManager().getReference(Company.class, companyId);
+        StockData newStockData = newStockData(company, finnhubData);
+        stockDataRepository.persist(newStockData);
+        if (claimOwner != null) {
+            stockDataRepository.releaseRefreshClaim(companyId, claimOwner);
+        }
+        return newStockData;
+    }
+
+    /**
+     * Stores new StockData snapshots for many companies and releases our refresh claims on them,
+     * in one insert-only transaction, so that Hibernate sends the inserts in JDBC batches.
+     *
+     * @param refreshes The Finnhub profiles to store, each with the owner token of our claim on its company.
+     * @return The persisted StockData by company ID, including their fetchedAt timestamps.
+     */
+    @Transactional
+    public Map<Long, StockData> saveAll(List<ClaimedRefresh> refreshes) {
+        Map<Long, StockData> saved = new LinkedHashMap<>();
+        for (ClaimedRefresh refresh : refreshes) {
+            Company company = companyRepository.getEntityManager().getReference(Company.class, refresh.companyId());
+            saved.put(refresh.companyId(), newStockData(company, refresh.finnhubData()));
+        }
+        stockDataRepository.persist(saved.values());
+        refreshes.forEach(refresh -> stockDataRepository.releaseRefreshClaim(refresh.companyId(), refresh.claimOwner()));
+        return saved;
+    }
+
+    /**
+     * Creates a new, not yet persisted StockData snapshot from a Finnhub profile.
+     */
+    private static StockData newStockData(Company company, FinnhubProfileDto finnhubData) {
+        StockData newStockData = new StockData();
+        newStockData.company = company;
+        newStockData.setMarketCapitalization(finnhubData.marketCapitalization());
+        newStockData.setShareOutstanding(finnhubData.shareOutstanding());
+        return newStockData;
+    }
+
+    /**
+     * A company and its latest stock data from today.
+     *
+     * @param company The company.
+     * @param todaysStockData Today's StockData, or null if the company hasn't been refreshed today.
+     */
+    public record CompanyStockData(Company company, StockData todaysStockData) {}
+
+    /**
+     * A Finnhub profile fetched under our refresh claim, still to be stored.
+     *
+     * @param companyId The ID of the company.
+     * @param finnhubData The profile returned by Finnhub.
+     * @param claimOwner The owner token of our refresh claim.
+     */
+    public record ClaimedRefresh(Long companyId, FinnhubProfileDto finnhubData, UUID claimOwner) {}
+}
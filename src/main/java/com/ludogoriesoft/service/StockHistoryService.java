@@ -0,0 +1,63 @@
+package com.ludogoriesoft.service;
+
+import com.ludogoriesoft.dto.StockHistoryPointDto;
+import com.ludogoriesoft.dto.StockHistoryQuery;
+import com.ludogoriesoft.repository.CompanyRepository;
+import com.ludogoriesoft.repository.StockDataRepository;
+import com.ludogoriesoft.repository.StockRollupRepository;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.transaction.Transactional;
+import jakarta.ws.rs.NotFoundException;
+
+import java.util.function.Consumer;
+
+/**
+ * Service class for reading the stock history of a company, downsampled into buckets.
+ */
+@ApplicationScoped
+public class StockHistoryService {
+
+    private final CompanyRepository companyRepository;
+    private final StockDataRepository stockDataRepository;
+    private final StockRollupRepository stockRollupRepository;
+
+    public StockHistoryService(CompanyRepository companyRepository, StockDataRepository stockDataRepository,
+                               StockRollupRepository stockRollupRepository) {
+        this.companyRepository = companyRepository;
+        this.stockDataRepository = stockDataRepository;
+        this.stockRollupRepository = stockRollupRepository;
+    }
+
+    /**
+     * Checks that a company exists. Streaming callers use this before they start writing the response,
+     * since the status can't be changed afterwards.
+     *
+     * @param companyId The ID of the company.
+     * @throws NotFoundException if no company with the given ID is found.
+     */
+    @Transactional
+    public void requireCompany(Long companyId) {
+        if (companyRepository.count("id", companyId) == 0) {
+            throw new NotFoundException("Company with id " + companyId + " not found");
+        }
+    }
+
+    /**
+     * Streams the stock history of a company to the given consumer, one point per bucket, oldest first.
+     * Nothing is collected in memory, so this is safe to use for ranges of any length.
+     * Day resolution and coarser is served from the daily rollups, so it reaches back beyond the retention
+     * of the raw snapshots. Hour and raw resolution need the raw snapshots and only cover that retention.
+     *
+     * @param companyId The ID of the company.
+     * @param query The time range, bucket size and aggregation.
+     * @param consumer Receives each point as it is read from the database.
+     */
+    @Transactional
+    public void streamHistory(Long companyId, StockHistoryQuery query, Consumer<StockHistoryPointDto> consumer) {
+        switch (query.resolution()) {
+            case RAW, HOUR -> stockDataRepository.forEachHistoryPoint(companyId, query, consumer);
+            default -> stockRollupRepository.forEachHistoryPoint(companyId, query,
+                    stockRollupRepository.findRolledUpThrough().orElse(null), consumer);
+        }
+    }
+}
@@ -0,0 +1,12 @@
+-- Adds the new snapshot's fetchedAt (UTC, microseconds, ISO-8601) to the stock_data_changed payload,
+-- as "<company ID>:<fetchedAt>". The node that stored the snapshot has just cached it, and a cache entry that
+-- already holds this snapshot (or a newer one) is kept instead of being evicted (see CompanyStockCache).
+-- Snapshots of one company have distinct fetchedAt values, so Postgres no longer folds their notifications.
+
+CREATE OR REPLACE FUNCTION notify_stock_data_changed() RETURNS trigger AS $$
+BEGIN
+    PERFORM pg_notify('stock_data_changed',
+            NEW.company_id || ':' || to_char(NEW.fetchedAt AT TIME ZONE 'UTC', 'YYYY-MM-DD"T"HH24:MI:SS.US"Z"'));
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
@@ -0,0 +1,27 @@
+-- The schema as Hibernate generated it before migrations were introduced.
+-- Existing databases are baselined at this version (quarkus.flyway.baseline-on-migrate), so this only runs on empty ones.
+
+CREATE SEQUENCE companies_SEQ START WITH 1 INCREMENT BY 50;
+CREATE SEQUENCE stock_data_SEQ START WITH 1 INCREMENT BY 50;
+
+CREATE TABLE companies (
+    id        bigint                      NOT NULL,
+    country   varchar(2)                  NOT NULL,
+    createdAt timestamp(6) with time zone NOT NULL,
+    email     varchar(255),
+    name      varchar(255)                NOT NULL,
+    symbol    varchar(255)                NOT NULL,
+    website   varchar(255),
+    CONSTRAINT companies_pkey PRIMARY KEY (id),
+    CONSTRAINT companies_symbol_key UNIQUE (symbol)
+);
+
+CREATE TABLE stock_data (
+    id                   bigint                      NOT NULL,
+    fetchedAt            timestamp(6) with time zone NOT NULL,
+    marketCapitalization float(53),
+    shareOutstanding     float(53),
+    company_id           bigint                      NOT NULL,
+    CONSTRAINT stock_data_pkey PRIMARY KEY (id),
+    CONSTRAINT stock_data_company_fkey FOREIGN KEY (company_id) REFERENCES companies (id)
+);
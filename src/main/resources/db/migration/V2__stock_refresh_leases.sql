@@ -0,0 +1,7 @@
+-- Cluster-wide claims on refreshing a company's stock data from Finnhub (see StockRefreshLease).
+
+CREATE TABLE stock_refresh_leases (
+    company_id  bigint                      NOT NULL,
+    leasedUntil timestamp(6) with time zone NOT NULL,
+    CONSTRAINT stock_refresh_leases_pkey PRIMARY KEY (company_id)
+);
@@ -0,0 +1,41 @@
+-- Turns stock_data into a table range-partitioned by fetchedAt, one partition per calendar month (UTC),
+-- named stock_data_YYYY_MM. Lookups for today only scan the current month, and old months are
+-- removed by dropping their partition (see StockDataPartitionJob) instead of deleting rows.
+
+ALTER TABLE stock_data RENAME TO stock_data_unpartitioned;
+ALTER INDEX stock_data_pkey RENAME TO stock_data_unpartitioned_pkey;
+
+-- The partition key has to be part of the primary key.
+CREATE TABLE stock_data (
+    id                   bigint                      NOT NULL,
+    fetchedAt            timestamp(6) with time zone NOT NULL,
+    marketCapitalization float(53),
+    shareOutstanding     float(53),
+    company_id           bigint                      NOT NULL,
+    CONSTRAINT stock_data_pkey PRIMARY KEY (id, fetchedAt),
+    CONSTRAINT stock_data_company_fkey FOREIGN KEY (company_id) REFERENCES companies (id)
+) PARTITION BY RANGE (fetchedAt);
+
+-- Created on every partition, including the ones added later.
+CREATE INDEX stock_data_company_fetched_idx ON stock_data (company_id, fetchedAt DESC);
+
+-- One partition for every month that has data, up to two months ahead. The maintenance job keeps extending this.
+DO $$
+DECLARE
+    month_start timestamp := date_trunc('month', coalesce((SELECT min(fetchedAt) FROM stock_data_unpartitioned), now()) AT TIME ZONE 'UTC');
+    last_month  timestamp := date_trunc('month', now() AT TIME ZONE 'UTC') + interval '2 months';
+BEGIN
+    WHILE month_start <= last_month LOOP
+        EXECUTE format('CREATE TABLE %I PARTITION OF stock_data FOR VALUES FROM (%L) TO (%L)',
+                       'stock_data_' || to_char(month_start, 'YYYY_MM'),
+                       month_start AT TIME ZONE 'UTC',
+                       (month_start + interval '1 month') AT TIME ZONE 'UTC');
+        month_start := month_start + interval '1 month';
+    END LOOP;
+END $$;
+
+INSERT INTO stock_data (id, fetchedAt, marketCapitalization, shareOutstanding, company_id)
+SELECT id, fetchedAt, marketCapitalization, shareOutstanding, company_id
+FROM stock_data_unpartitioned;
+
+DROP TABLE stock_data_unpartitioned;
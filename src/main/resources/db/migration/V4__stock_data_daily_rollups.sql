@@ -0,0 +1,33 @@
+-- One row per company and UTC day, summarizing that day's raw stock_data snapshots.
+-- Filled by StockCompactionJob, which then deletes raw snapshots past their retention.
+
+CREATE TABLE stock_data_daily (
+    company_id         bigint                      NOT NULL,
+    day                date                        NOT NULL,
+    open_market_cap    float(53),
+    last_market_cap    float(53),
+    min_market_cap     float(53),
+    max_market_cap     float(53),
+    sum_market_cap     float(53),
+    market_cap_samples integer                     NOT NULL,
+    open_shares        float(53),
+    last_shares        float(53),
+    min_shares         float(53),
+    max_shares         float(53),
+    sum_shares         float(53),
+    shares_samples     integer                     NOT NULL,
+    samples            integer                     NOT NULL,
+    first_fetched_at   timestamp(6) with time zone NOT NULL,
+    last_fetched_at    timestamp(6) with time zone NOT NULL,
+    CONSTRAINT stock_data_daily_pkey PRIMARY KEY (company_id, day),
+    CONSTRAINT stock_data_daily_company_fkey FOREIGN KEY (company_id) REFERENCES companies (id) ON DELETE CASCADE
+);
+
+-- The watermark of the compaction: every day up to and including rolled_up_through has its rollups.
+-- A single row, so that concurrent runs on several nodes agree on it.
+CREATE TABLE stock_compaction_state (
+    id                smallint NOT NULL DEFAULT 1,
+    rolled_up_through date     NOT NULL,
+    CONSTRAINT stock_compaction_state_pkey PRIMARY KEY (id),
+    CONSTRAINT stock_compaction_state_single_row CHECK (id = 1)
+);
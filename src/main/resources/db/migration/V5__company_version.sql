@@ -0,0 +1,4 @@
+-- A version counter on companies, incremented by Hibernate on every update (see Company.version).
+-- It is part of the ETags of the company responses, and guards updates with optimistic locking.
+
+ALTER TABLE companies ADD COLUMN version bigint NOT NULL DEFAULT 0;
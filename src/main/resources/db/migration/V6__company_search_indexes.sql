@@ -0,0 +1,7 @@
+-- Indexes for the company search (GET /companies/search, see CompanyRepository.search).
+-- Results are ordered by ID for keyset pagination, so the country index carries the ID too.
+-- The prefix indexes use text_pattern_ops, so LIKE 'prefix%' can use them regardless of the database collation.
+
+CREATE INDEX companies_country_id_idx ON companies (country, id);
+CREATE INDEX companies_name_prefix_idx ON companies (lower(name) text_pattern_ops);
+CREATE INDEX companies_symbol_prefix_idx ON companies (symbol text_pattern_ops);
@@ -0,0 +1,15 @@
+-- Announces every change to a company on the company_changed channel, with the company ID as payload,
+-- so that every application node can evict its cached copy (see CompanyCacheInvalidator).
+-- Notifications are only delivered once the transaction commits, and a trigger also catches writes
+-- that don't go through the application.
+
+CREATE FUNCTION notify_company_changed() RETURNS trigger AS $$
+BEGIN
+    PERFORM pg_notify('company_changed', OLD.id::text);
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER companies_changed
+    AFTER UPDATE OR DELETE ON companies
+    FOR EACH ROW EXECUTE FUNCTION notify_company_changed();
@@ -0,0 +1,15 @@
+-- Announces every new stock snapshot on the stock_data_changed channel, with the company ID as payload,
+-- so that every application node can evict the company's cached stock data (see CacheInvalidationBus).
+-- Postgres folds identical notifications of one transaction into one, so a batch insert sends
+-- one notification per company. A row trigger on the partitioned table is cloned to every partition.
+
+CREATE FUNCTION notify_stock_data_changed() RETURNS trigger AS $$
+BEGIN
+    PERFORM pg_notify('stock_data_changed', NEW.company_id::text);
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER stock_data_changed
+    AFTER INSERT ON stock_data
+    FOR EACH ROW EXECUTE FUNCTION notify_stock_data_changed();
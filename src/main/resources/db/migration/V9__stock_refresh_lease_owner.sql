@@ -0,0 +1,5 @@
+-- Every claim on refreshing a company records who took it, so a node only ever releases its own claim
+-- and never one that another node took over after it expired.
+-- Claims still held during the upgrade get an owner nobody knows, so they simply run out.
+ALTER TABLE stock_refresh_leases ADD COLUMN owner uuid NOT NULL DEFAULT gen_random_uuid();
+ALTER TABLE stock_refresh_leases ALTER COLUMN owner DROP DEFAULT;
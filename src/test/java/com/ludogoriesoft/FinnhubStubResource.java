@@ -0,0 +1,95 @@
+package com.ludogoriesoft;
+
+import com.sun.net.httpserver.HttpServer;
+import io.quarkus.test.common.QuarkusTestResourceLifecycleManager;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A local stand-in for the Finnhub API that answers every profile request after a fixed delay.
+ * It is meant for benchmarks and load tests that must exercise the real REST client against a slow upstream,
+ * without a real API key or quota. The delay in milliseconds is set with the "delay" init argument,
+ * and the share of requests that fail with the "errorStatus" status (500 by default) with the "errorRate"
+ * init argument, between 0 and 1. The finnhub.stub.delay and finnhub.stub.error-rate system properties
+ * override both, so a load test run can be tuned from the command line.
+ */
+public class FinnhubStubResource implements QuarkusTestResourceLifecycleManager {
+
+    private static final AtomicLong REQUESTS = new AtomicLong();
+
+    private HttpServer server;
+    private long delayMillis;
+    private double errorRate;
+    private int errorStatus;
+
+    /**
+     * @return The number of profile requests the stub has received so far, failed ones included.
+     */
+    public static long requestCount() {
+        return REQUESTS.get();
+    }
+
+    @Override
+    public void init(Map<String, String> initArgs) {
+        delayMillis = Long.parseLong(System.getProperty("finnhub.stub.delay", initArgs.getOrDefault("delay", "200")));
+        errorRate = Double.parseDouble(System.getProperty("finnhub.stub.error-rate", initArgs.getOrDefault("errorRate", "0")));
+        errorStatus = Integer.parseInt(initArgs.getOrDefault("errorStatus", "500"));
+    }
+
+    @Override
+    public Map<String, String> start() {
+        try {
+            server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        // One virtual thread per request, so the stub itself never limits the concurrency under test.
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.createContext("/stock/profile2", exchange -> {
+            REQUESTS.incrementAndGet();
+            try {
+                Thread.sleep(delayMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+                exchange.sendResponseHeaders(errorStatus, -1);
+                exchange.close();
+                return;
+            }
+            String symbol = exchange.getRequestURI().getQuery().replaceAll(".*symbol=([^&]*).*", "$1");
+            byte[] body = ("{\"marketCapitalization\":1000.0,\"shareOutstanding\":10.0,\"ticker\":\"" + symbol + "\"}")
+                    .getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+
+        return Map.of(
+                "com.ludogoriesoft.client.FinnhubClient/mp-rest/url", "http://localhost:" + server.getAddress().getPort(),
+                "finnhub.api.key", "stub",
+                // The stub has no quota, so the client-side limiter must not be what we measure.
+                "finnhub.rate-limit.per-minute", "100000000",
+                "finnhub.rate-limit.burst", "100000",
+                "finnhub.rate-limit.max-queue", "100000"
+        );
+    }
+
+    @Override
+    public void stop() {
+        if (server != null) {
+            server.stop(0);
+        }
+    }
+}
@@ -17,6 +17,8 @@ public class PostgresqlTestResource implements QuarkusTestResourceLifecycleManag
         DATABASE.start();
         return Map.of(
                 "quarkus.datasource.jdbc.url", DATABASE.getJdbcUrl(),
+                "quarkus.datasource.reactive.url", "postgresql://" + DATABASE.getHost() + ":"
+                        + DATABASE.getMappedPort(PostgreSQLContainer.POSTGRESQL_PORT) + "/" + DATABASE.getDatabaseName(),
                 "quarkus.datasource.username", DATABASE.getUsername(),
                 "quarkus.datasource.password", DATABASE.getPassword()
         );
@@ -0,0 +1,160 @@
+package com.ludogoriesoft.cache;
+
+import com.ludogoriesoft.DatabaseTestBase;
+import com.ludogoriesoft.dto.CompanyStockDto;
+import com.ludogoriesoft.entity.Company;
+import com.ludogoriesoft.repository.CompanyRepository;
+import com.ludogoriesoft.repository.StockDataRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import io.quarkus.test.junit.QuarkusTest;
+import jakarta.inject.Inject;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Plays the part of another node by writing with plain JDBC, which this node's application code never sees,
+ * and checks that the database's notifications evict the affected entries from this node's caches.
+ */
+@QuarkusTest
+class CacheInvalidationBusTest extends DatabaseTestBase {
+
+    private static final Duration MAX_EVICTION_DELAY = Duration.ofSeconds(5);
+
+    @Inject
+    CompanyRepository companyRepository;
+
+    @Inject
+    StockDataRepository stockDataRepository;
+
+    @Inject
+    CompanyStockCache companyStockCache;
+
+    @Inject
+    MeterRegistry meterRegistry;
+
+    @Inject
+    CacheInvalidationBus cacheInvalidationBus;
+
+    @Inject
+    DataSource dataSource;
+
+    private Long companyId;
+    private Long otherCompanyId;
+
+    @BeforeEach
+    void setUp() {
+        // The bus connects in the background, so make sure it sees the changes the tests make.
+        awaitTrue(cacheInvalidationBus::isListening);
+        QuarkusTransaction.requiringNew().run(() -> {
+            stockDataRepository.deleteAll();
+            companyRepository.deleteAll();
+        });
+        companyId = persistCompany("Bus Corp", "BUS");
+        otherCompanyId = persistCompany("Other Corp", "OTH");
+        companyStockCache.invalidateAll();
+    }
+
+    @Test
+    void newStockSnapshotElsewhere_evictsCachedStockData() throws SQLException {
+        // ARRANGE
+        companyStockCache.put(companyId, dto(companyId));
+        companyStockCache.put(otherCompanyId, dto(otherCompanyId));
+        double notificationsBefore = notifications(CacheInvalidationBus.STOCK_DATA_CHANGED);
+
+        // ACT
+        execute("INSERT INTO stock_data (id, fetchedAt, marketCapitalization, shareOutstanding, company_id) "
+                + "VALUES (nextval('stock_data_SEQ'), now(), 100.0, 10.0, ?)", companyId);
+
+        // ASSERT: Only the affected company is evicted
+        awaitTrue(() -> companyStockCache.get(companyId).isEmpty());
+        assertTrue(companyStockCache.get(otherCompanyId).isPresent());
+        assertTrue(notifications(CacheInvalidationBus.STOCK_DATA_CHANGED) > notificationsBefore);
+    }
+
+    @Test
+    void ownStockSnapshot_staysCached() throws SQLException {
+        // ARRANGE: This node has cached the snapshot it is about to store, as CompanyService does after a refresh.
+        Instant fetchedAt = Instant.now().truncatedTo(ChronoUnit.MICROS);
+        companyStockCache.put(companyId, dto(companyId, fetchedAt));
+        companyStockCache.put(otherCompanyId, dto(otherCompanyId));
+
+        // ACT
+        execute("INSERT INTO stock_data (id, fetchedAt, marketCapitalization, shareOutstanding, company_id) "
+                + "VALUES (nextval('stock_data_SEQ'), '" + fetchedAt + "', 100.0, 10.0, ?)", companyId);
+        execute("INSERT INTO stock_data (id, fetchedAt, marketCapitalization, shareOutstanding, company_id) "
+                + "VALUES (nextval('stock_data_SEQ'), now(), 100.0, 10.0, ?)", otherCompanyId);
+
+        // ASSERT: Notifications arrive in commit order, so once the second one evicted,
+        // the first one has been handled and left the entry holding the same snapshot alone.
+        awaitTrue(() -> companyStockCache.get(otherCompanyId).isEmpty());
+        assertTrue(companyStockCache.get(companyId).isPresent());
+    }
+
+    @Test
+    void companyUpdateElsewhere_evictsCachedStockData() throws SQLException {
+        // ARRANGE
+        companyStockCache.put(companyId, dto(companyId));
+
+        // ACT
+        execute("UPDATE companies SET symbol = 'BUSX', version = version + 1 WHERE id = ?", companyId);
+
+        // ASSERT
+        awaitTrue(() -> companyStockCache.get(companyId).isEmpty());
+    }
+
+    private Long persistCompany(String name, String symbol) {
+        return QuarkusTransaction.requiringNew().call(() -> {
+            Company company = new Company();
+            company.setName(name);
+            company.setCountry("US");
+            company.setSymbol(symbol);
+            companyRepository.persist(company);
+            return company.id;
+        });
+    }
+
+    private void execute(String sql, Long companyId) throws SQLException {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setLong(1, companyId);
+            statement.executeUpdate();
+        }
+    }
+
+    private double notifications(String channel) {
+        return meterRegistry.get("cache.invalidations").tag("channel", channel).counter().count();
+    }
+
+    private static CompanyStockDto dto(Long id) {
+        return dto(id, null);
+    }
+
+    private static CompanyStockDto dto(Long id, Instant fetchedAt) {
+        return new CompanyStockDto(id, "Company " + id, "US", "C", null, null, null, 0L, 100.0, 10.0, fetchedAt, false);
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) {
+        long deadline = System.nanoTime() + MAX_EVICTION_DELAY.toNanos();
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "Not evicted within " + MAX_EVICTION_DELAY);
+            try {
+                Thread.sleep(5);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.ludogoriesoft.cache;
+
+import com.ludogoriesoft.DatabaseTestBase;
+import com.ludogoriesoft.entity.Company;
+import com.ludogoriesoft.repository.CompanyRepository;
+import com.ludogoriesoft.repository.StockDataRepository;
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import io.quarkus.test.junit.QuarkusTest;
+import jakarta.inject.Inject;
+import org.hibernate.SessionFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@QuarkusTest
+class CompanyCacheInvalidatorTest extends DatabaseTestBase {
+
+    @Inject
+    CompanyRepository companyRepository;
+
+    @Inject
+    StockDataRepository stockDataRepository;
+
+    @Inject
+    SessionFactory sessionFactory;
+
+    @Inject
+    DataSource dataSource;
+
+    @Inject
+    CacheInvalidationBus cacheInvalidationBus;
+
+    private Long companyId;
+
+    @BeforeEach
+    void setUp() {
+        // The bus connects in the background, so make sure it sees the changes the tests make.
+        awaitTrue(cacheInvalidationBus::isListening);
+        companyId = QuarkusTransaction.requiringNew().call(() -> {
+            stockDataRepository.deleteAll();
+            companyRepository.deleteAll();
+            Company company = new Company();
+            company.setName("Cached Corp");
+            company.setCountry("US");
+            company.setSymbol("CCH");
+            companyRepository.persist(company);
+            return company.id;
+        });
+        sessionFactory.getCache().evictAll();
+    }
+
+    @Test
+    void findById_isServedFromSecondLevelCache() {
+        // ACT: The first lookup reads the database and fills the cache
+        QuarkusTransaction.requiringNew().run(() -> companyRepository.findById(companyId));
+        sessionFactory.getStatistics().clear();
+        QuarkusTransaction.requiringNew().run(() -> companyRepository.findById(companyId));
+        QuarkusTransaction.requiringNew().run(() -> companyRepository.findBySymbol("CCH").orElseThrow());
+
+        // ASSERT
+        assertTrue(sessionFactory.getCache().containsEntity(Company.class, companyId));
+        assertEquals(0, sessionFactory.getStatistics().getEntityLoadCount());
+    }
+
+    @Test
+    void updateByAnotherNode_evictsCachedCompany() throws SQLException {
+        // ARRANGE: The company is cached on this node
+        QuarkusTransaction.requiringNew().run(() -> companyRepository.findById(companyId));
+        assertTrue(sessionFactory.getCache().containsEntity(Company.class, companyId));
+
+        // ACT: Another node renames it, simulated by plain JDBC, which Hibernate doesn't see
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(
+                     "UPDATE companies SET name = 'Renamed Elsewhere', symbol = 'RNE', version = version + 1 WHERE id = ?")) {
+            statement.setLong(1, companyId);
+            statement.executeUpdate();
+        }
+
+        // ASSERT: The notification evicts the cached copy, so the next lookups see the new state
+        awaitTrue(() -> !sessionFactory.getCache().containsEntity(Company.class, companyId));
+        assertEquals("Renamed Elsewhere",
+                QuarkusTransaction.requiringNew().call(() -> companyRepository.findById(companyId).getName()));
+        assertEquals(companyId,
+                QuarkusTransaction.requiringNew().call(() -> companyRepository.findBySymbol("RNE").orElseThrow().id));
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) {
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "Condition not met within 5 seconds");
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
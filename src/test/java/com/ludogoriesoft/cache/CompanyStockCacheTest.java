@@ -0,0 +1,164 @@
+package com.ludogoriesoft.cache;
+
+import com.ludogoriesoft.dto.CompanyStockDto;
+import com.ludogoriesoft.service.CompanyUpdatedEvent;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompanyStockCacheTest {
+
+    private static CompanyStockDto dto(long id) {
+        return dto(id, null);
+    }
+
+    private static CompanyStockDto dto(long id, Instant fetchedAt) {
+        return new CompanyStockDto(id, "Company " + id, "US", "C" + id, null, null, null, 0L, 100.0, 10.0, fetchedAt, false);
+    }
+
+    @Test
+    void get_shouldReturnCachedValue_beforeFreshnessBoundary() {
+        // ARRANGE
+        CompanyStockCache cache = new CompanyStockCache(10);
+        CompanyStockDto dto = dto(1);
+
+        // ACT
+        cache.put(1L, dto);
+
+        // ASSERT
+        assertSame(dto, cache.get(1L).orElseThrow());
+    }
+
+    @Test
+    void get_shouldExpireEntry_atFreshnessBoundary() {
+        // ARRANGE: A clock we can move forward past midnight UTC.
+        MutableClock clock = new MutableClock(Instant.parse("2024-05-10T23:59:00Z"));
+        CompanyStockCache cache = new CompanyStockCache(10, clock);
+        cache.put(1L, dto(1));
+
+        // ACT
+        clock.now = Instant.parse("2024-05-11T00:00:00Z");
+
+        // ASSERT
+        assertTrue(cache.get(1L).isEmpty());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void put_shouldEvictLeastRecentlyUsed_whenFull() {
+        // ARRANGE
+        CompanyStockCache cache = new CompanyStockCache(2);
+        cache.put(1L, dto(1));
+        cache.put(2L, dto(2));
+        cache.get(1L); // Touch 1 so that 2 becomes the eldest entry
+
+        // ACT
+        cache.put(3L, dto(3));
+
+        // ASSERT
+        assertTrue(cache.get(1L).isPresent());
+        assertTrue(cache.get(2L).isEmpty());
+        assertTrue(cache.get(3L).isPresent());
+    }
+
+    @Test
+    void onCompanyUpdated_shouldInvalidateEntry() {
+        // ARRANGE
+        CompanyStockCache cache = new CompanyStockCache(10);
+        cache.put(1L, dto(1));
+        cache.put(2L, dto(2));
+
+        // ACT
+        cache.onCompanyUpdated(new CompanyUpdatedEvent(1L));
+
+        // ASSERT
+        assertTrue(cache.get(1L).isEmpty());
+        assertTrue(cache.get(2L).isPresent());
+    }
+
+    @Test
+    void onInvalidation_shouldInvalidateAffectedEntry() {
+        // ARRANGE
+        CompanyStockCache cache = new CompanyStockCache(10);
+        cache.put(1L, dto(1));
+        cache.put(2L, dto(2));
+
+        // ACT
+        cache.onInvalidation(new CacheInvalidationEvent(CacheInvalidationBus.STOCK_DATA_CHANGED, 1L));
+
+        // ASSERT
+        assertTrue(cache.get(1L).isEmpty());
+        assertTrue(cache.get(2L).isPresent());
+    }
+
+    @Test
+    void onInvalidation_shouldInvalidateEverything_whenAllCompaniesAreAffected() {
+        // ARRANGE
+        CompanyStockCache cache = new CompanyStockCache(10);
+        cache.put(1L, dto(1));
+        cache.put(2L, dto(2));
+
+        // ACT
+        cache.onInvalidation(new CacheInvalidationEvent(CacheInvalidationBus.COMPANY_CHANGED, null));
+
+        // ASSERT
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void onInvalidation_shouldKeepEntry_whenItAlreadyHoldsTheNotifiedSnapshot() {
+        // ARRANGE: This node stored the snapshot itself and cached it with more digits than the database keeps.
+        CompanyStockCache cache = new CompanyStockCache(10);
+        Instant fetchedAt = Instant.parse("2024-05-10T12:00:00.123456789Z");
+        Instant storedFetchedAt = Instant.parse("2024-05-10T12:00:00.123457Z");
+        cache.put(1L, dto(1, fetchedAt));
+
+        // ACT: The notification of its own insert comes back.
+        cache.onInvalidation(new CacheInvalidationEvent(CacheInvalidationBus.STOCK_DATA_CHANGED, 1L, storedFetchedAt));
+
+        // ASSERT
+        assertTrue(cache.get(1L).isPresent());
+    }
+
+    @Test
+    void onInvalidation_shouldInvalidateEntry_whenANewerSnapshotWasStored() {
+        // ARRANGE
+        CompanyStockCache cache = new CompanyStockCache(10);
+        cache.put(1L, dto(1, Instant.parse("2024-05-10T12:00:00Z")));
+
+        // ACT
+        cache.onInvalidation(new CacheInvalidationEvent(CacheInvalidationBus.STOCK_DATA_CHANGED, 1L,
+                Instant.parse("2024-05-10T12:00:01Z")));
+
+        // ASSERT
+        assertTrue(cache.get(1L).isEmpty());
+    }
+
+    private static final class MutableClock extends Clock {
+        private Instant now;
+
+        private MutableClock(Instant now) {
+            this.now = now;
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.ludogoriesoft.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SingleFlightTest {
+
+    @Test
+    void execute_shouldRunLoaderOnce_forConcurrentCallsWithSameKey() throws Exception {
+        // ARRANGE: The leader's loader blocks until every waiter has joined its flight.
+        SingleFlight<String, String> singleFlight = new SingleFlight<>();
+        AtomicInteger loaderCalls = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        int callers = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(callers);
+
+        try {
+            // ACT
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < callers; i++) {
+                results.add(executor.submit(() -> singleFlight.execute("AAPL", () -> {
+                    loaderCalls.incrementAndGet();
+                    await(release);
+                    return "profile";
+                })));
+            }
+            waitUntil(() -> singleFlight.coalescedCount() == callers - 1);
+            release.countDown();
+
+            // ASSERT
+            for (Future<String> result : results) {
+                assertEquals("profile", result.get(5, TimeUnit.SECONDS));
+            }
+            assertEquals(1, loaderCalls.get());
+            assertEquals(callers - 1, singleFlight.coalescedCount());
+            assertEquals(0, singleFlight.inFlightCount());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void execute_shouldPropagateLeaderException_toWaiters() throws Exception {
+        // ARRANGE
+        SingleFlight<String, String> singleFlight = new SingleFlight<>();
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+
+        try {
+            // ACT
+            Future<String> leader = executor.submit(() -> singleFlight.execute("AAPL", () -> {
+                await(release);
+                throw new IllegalStateException("upstream failed");
+            }));
+            waitUntil(() -> singleFlight.inFlightCount() == 1);
+            Future<String> waiter = executor.submit(() -> singleFlight.execute("AAPL", () -> "never called"));
+            waitUntil(() -> singleFlight.coalescedCount() == 1);
+            release.countDown();
+
+            // ASSERT
+            Exception leaderFailure = assertThrows(Exception.class, () -> leader.get(5, TimeUnit.SECONDS));
+            Exception waiterFailure = assertThrows(Exception.class, () -> waiter.get(5, TimeUnit.SECONDS));
+            assertInstanceOf(IllegalStateException.class, leaderFailure.getCause());
+            assertInstanceOf(IllegalStateException.class, waiterFailure.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void execute_shouldStartNewFlight_afterPreviousOneCompleted() {
+        // ARRANGE
+        SingleFlight<String, Integer> singleFlight = new SingleFlight<>();
+        AtomicInteger loaderCalls = new AtomicInteger();
+
+        // ACT
+        singleFlight.execute("AAPL", loaderCalls::incrementAndGet);
+        int second = singleFlight.execute("AAPL", loaderCalls::incrementAndGet);
+
+        // ASSERT
+        assertEquals(2, second);
+        assertEquals(0, singleFlight.coalescedCount());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void waitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "Timed out waiting for condition");
+            Thread.sleep(5);
+        }
+    }
+}
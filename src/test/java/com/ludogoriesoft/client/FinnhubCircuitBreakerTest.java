@@ -0,0 +1,133 @@
+package com.ludogoriesoft.client;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FinnhubCircuitBreakerTest {
+
+    private final AtomicLong now = new AtomicLong();
+    private final FinnhubCircuitBreaker circuitBreaker = new FinnhubCircuitBreaker(3, Duration.ofSeconds(30), now::get);
+
+    @Test
+    void onFailure_shouldOpenCircuit_afterConsecutiveFailures() {
+        // ACT
+        circuitBreaker.onFailure();
+        circuitBreaker.onFailure();
+        assertTrue(circuitBreaker.tryAcquire());
+        circuitBreaker.onFailure();
+
+        // ASSERT
+        assertEquals(FinnhubCircuitBreaker.State.OPEN, circuitBreaker.state());
+        assertFalse(circuitBreaker.tryAcquire());
+        assertFalse(circuitBreaker.isCallPermitted());
+        assertEquals(Duration.ofSeconds(30), circuitBreaker.remainingOpenTime());
+        assertEquals(1.0, circuitBreaker.rejectedCount());
+    }
+
+    @Test
+    void onSuccess_shouldResetFailureCount() {
+        // ACT: Never three failures in a row
+        circuitBreaker.onFailure();
+        circuitBreaker.onFailure();
+        circuitBreaker.onSuccess();
+        circuitBreaker.onFailure();
+        circuitBreaker.onFailure();
+
+        // ASSERT
+        assertEquals(FinnhubCircuitBreaker.State.CLOSED, circuitBreaker.state());
+        assertTrue(circuitBreaker.tryAcquire());
+    }
+
+    @Test
+    void tryAcquire_shouldLetTrialCallThrough_afterOpenTime() {
+        // ARRANGE
+        openCircuit();
+
+        // ACT
+        now.addAndGet(TimeUnit.SECONDS.toNanos(30));
+
+        // ASSERT: Half-open, and the trial call decides
+        assertTrue(circuitBreaker.isCallPermitted());
+        assertTrue(circuitBreaker.tryAcquire());
+        assertEquals(FinnhubCircuitBreaker.State.HALF_OPEN, circuitBreaker.state());
+        circuitBreaker.onSuccess();
+        assertEquals(FinnhubCircuitBreaker.State.CLOSED, circuitBreaker.state());
+    }
+
+    @Test
+    void onFailure_shouldReopenCircuit_whenTrialCallFails() {
+        // ARRANGE
+        openCircuit();
+        now.addAndGet(TimeUnit.SECONDS.toNanos(30));
+        assertTrue(circuitBreaker.tryAcquire());
+
+        // ACT: A single failure is enough while half-open
+        circuitBreaker.onFailure();
+
+        // ASSERT
+        assertEquals(FinnhubCircuitBreaker.State.OPEN, circuitBreaker.state());
+        assertFalse(circuitBreaker.tryAcquire());
+        assertEquals(Duration.ofSeconds(30), circuitBreaker.remainingOpenTime());
+    }
+
+    @Test
+    void tryAcquire_shouldLetOnlyOneProbeThrough_whileHalfOpen() {
+        // ARRANGE
+        openCircuit();
+        now.addAndGet(TimeUnit.SECONDS.toNanos(30));
+
+        // ACT: The first caller becomes the probe
+        assertTrue(circuitBreaker.tryAcquire());
+
+        // ASSERT: Everyone else is rejected until the probe reports back
+        assertFalse(circuitBreaker.tryAcquire());
+        assertFalse(circuitBreaker.isCallPermitted());
+        assertFalse(circuitBreaker.checkCallPermitted());
+        assertEquals(2.0, circuitBreaker.rejectedCount());
+        circuitBreaker.onSuccess();
+        assertEquals(FinnhubCircuitBreaker.State.CLOSED, circuitBreaker.state());
+        assertTrue(circuitBreaker.tryAcquire());
+        assertTrue(circuitBreaker.tryAcquire());
+    }
+
+    @Test
+    void tryAcquire_shouldGiveUpOnProbe_thatNeverReportsBack() {
+        // ARRANGE: A probe is let through and never reports its outcome
+        openCircuit();
+        now.addAndGet(TimeUnit.SECONDS.toNanos(30));
+        assertTrue(circuitBreaker.tryAcquire());
+        assertFalse(circuitBreaker.tryAcquire());
+
+        // ACT
+        now.addAndGet(TimeUnit.SECONDS.toNanos(30));
+
+        // ASSERT: The next caller takes over as the probe
+        assertTrue(circuitBreaker.isCallPermitted());
+        assertTrue(circuitBreaker.tryAcquire());
+        assertFalse(circuitBreaker.tryAcquire());
+    }
+
+    @Test
+    void checkCallPermitted_shouldLeaveProbeToTheCall() {
+        // ARRANGE
+        openCircuit();
+        now.addAndGet(TimeUnit.SECONDS.toNanos(30));
+
+        // ACT & ASSERT: An early check doesn't take the probe, so the call right after it still gets it
+        assertTrue(circuitBreaker.checkCallPermitted());
+        assertTrue(circuitBreaker.tryAcquire());
+        assertEquals(0.0, circuitBreaker.rejectedCount());
+    }
+
+    private void openCircuit() {
+        for (int i = 0; i < 3; i++) {
+            circuitBreaker.onFailure();
+        }
+        assertEquals(FinnhubCircuitBreaker.State.OPEN, circuitBreaker.state());
+    }
+}
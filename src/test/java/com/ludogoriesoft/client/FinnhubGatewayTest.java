@@ -0,0 +1,191 @@
+package com.ludogoriesoft.client;
+
+import com.ludogoriesoft.dto.FinnhubProfileDto;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.ws.rs.ProcessingException;
+import jakarta.ws.rs.WebApplicationException;
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.Response;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class FinnhubGatewayTest {
+
+    @Mock
+    FinnhubClient finnhubClient;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private FinnhubGateway gateway(TokenBucketRateLimiter rateLimiter, int maxRetries) {
+        return gateway(rateLimiter, new FinnhubCircuitBreaker(5, Duration.ofSeconds(30)), maxRetries);
+    }
+
+    private FinnhubGateway gateway(TokenBucketRateLimiter rateLimiter, FinnhubCircuitBreaker circuitBreaker, int maxRetries) {
+        return new FinnhubGateway(finnhubClient, "KEY", rateLimiter, circuitBreaker, Duration.ofSeconds(1), maxRetries,
+                Duration.ZERO, meterRegistry);
+    }
+
+    private static WebApplicationException tooManyRequests(String retryAfter) {
+        return new WebApplicationException(Response.status(429).header(HttpHeaders.RETRY_AFTER, retryAfter).build());
+    }
+
+    @Test
+    void getCompanyProfile_shouldRetry_afterTooManyRequests() {
+        // ARRANGE
+        FinnhubProfileDto profile = new FinnhubProfileDto(1.0, 2.0, "Apple Inc", "US", "AAPL");
+        when(finnhubClient.getCompanyProfile("AAPL", "KEY"))
+                .thenThrow(tooManyRequests("0"))
+                .thenReturn(profile);
+
+        // ACT
+        FinnhubProfileDto result = gateway(new TokenBucketRateLimiter(6000, 10, 10), 2).getCompanyProfile("AAPL");
+
+        // ASSERT
+        assertSame(profile, result);
+        verify(finnhubClient, times(2)).getCompanyProfile("AAPL", "KEY");
+        // Every HTTP call is timed, tagged with its status
+        assertEquals(1, meterRegistry.get("finnhub.requests").tag("status", "429").timer().count());
+        assertEquals(1, meterRegistry.get("finnhub.requests").tag("status", "200").timer().count());
+    }
+
+    @Test
+    void getCompanyProfile_shouldFailWith503_whenRetriesAreExhausted() {
+        // ARRANGE
+        when(finnhubClient.getCompanyProfile("AAPL", "KEY")).thenThrow(tooManyRequests("0"));
+
+        // ACT
+        WebApplicationException thrown = assertThrows(WebApplicationException.class,
+                () -> gateway(new TokenBucketRateLimiter(6000, 10, 10), 1).getCompanyProfile("AAPL"));
+
+        // ASSERT
+        assertEquals(503, thrown.getResponse().getStatus());
+        assertNotNull(thrown.getResponse().getHeaderString(HttpHeaders.RETRY_AFTER));
+        verify(finnhubClient, times(2)).getCompanyProfile("AAPL", "KEY");
+    }
+
+    @Test
+    void getCompanyProfile_shouldFailWith503_withoutCallingFinnhub_whenThrottled() {
+        // ARRANGE: One token, refilled far too slowly for the allowed wait
+        FinnhubGateway gateway = gateway(new TokenBucketRateLimiter(1, 1, 10), 0);
+        when(finnhubClient.getCompanyProfile("AAPL", "KEY")).thenReturn(new FinnhubProfileDto(1.0, 2.0, null, null, null));
+        gateway.getCompanyProfile("AAPL");
+
+        // ACT
+        WebApplicationException thrown = assertThrows(WebApplicationException.class, () -> gateway.getCompanyProfile("AAPL"));
+
+        // ASSERT
+        assertEquals(503, thrown.getResponse().getStatus());
+        verify(finnhubClient, times(1)).getCompanyProfile("AAPL", "KEY");
+        assertEquals(1.0, meterRegistry.get("finnhub.ratelimit.throttled").functionCounter().count());
+    }
+
+    @Test
+    void getCompanyProfile_shouldPropagateOtherErrors_withoutRetrying() {
+        // ARRANGE
+        when(finnhubClient.getCompanyProfile("AAPL", "KEY")).thenThrow(new WebApplicationException(401));
+
+        // ACT & ASSERT
+        WebApplicationException thrown = assertThrows(WebApplicationException.class,
+                () -> gateway(new TokenBucketRateLimiter(6000, 10, 10), 2).getCompanyProfile("AAPL"));
+        assertEquals(401, thrown.getResponse().getStatus());
+        verify(finnhubClient, times(1)).getCompanyProfile("AAPL", "KEY");
+    }
+
+    @Test
+    void getCompanyProfile_shouldFailFast_withoutCallingFinnhub_whenCircuitIsOpen() {
+        // ARRANGE: Two timeouts in a row open the circuit
+        FinnhubGateway gateway = gateway(new TokenBucketRateLimiter(6000, 10, 10), new FinnhubCircuitBreaker(2, Duration.ofMinutes(1)), 2);
+        when(finnhubClient.getCompanyProfile("AAPL", "KEY")).thenThrow(new ProcessingException("Read timed out"));
+        assertThrows(ProcessingException.class, () -> gateway.getCompanyProfile("AAPL"));
+        assertThrows(ProcessingException.class, () -> gateway.getCompanyProfile("AAPL"));
+
+        // ACT
+        WebApplicationException thrown = assertThrows(WebApplicationException.class, () -> gateway.getCompanyProfile("AAPL"));
+
+        // ASSERT
+        assertEquals(503, thrown.getResponse().getStatus());
+        assertNotNull(thrown.getResponse().getHeaderString(HttpHeaders.RETRY_AFTER));
+        assertFalse(gateway.isAvailable());
+        verify(finnhubClient, times(2)).getCompanyProfile("AAPL", "KEY");
+        assertEquals(1.0, meterRegistry.get("finnhub.circuitbreaker.rejected").functionCounter().count());
+    }
+
+    @Test
+    void getCompanyProfile_shouldSendProbe_afterEarlyCircuitCheck() {
+        // ARRANGE: Two timeouts open the circuit, and its open time passes
+        AtomicLong now = new AtomicLong();
+        FinnhubCircuitBreaker circuitBreaker = new FinnhubCircuitBreaker(2, Duration.ofMinutes(1), now::get);
+        FinnhubGateway gateway = gateway(new TokenBucketRateLimiter(6000, 10, 10), circuitBreaker, 2);
+        FinnhubProfileDto profile = new FinnhubProfileDto(2500.0, 100.0, "Apple", "US", "AAPL");
+        when(finnhubClient.getCompanyProfile("AAPL", "KEY"))
+                .thenThrow(new ProcessingException("Read timed out"))
+                .thenThrow(new ProcessingException("Read timed out"))
+                .thenReturn(profile);
+        assertThrows(ProcessingException.class, () -> gateway.getCompanyProfile("AAPL"));
+        assertThrows(ProcessingException.class, () -> gateway.getCompanyProfile("AAPL"));
+        now.addAndGet(TimeUnit.MINUTES.toNanos(1));
+
+        // ACT: A caller checks the circuit early, as the stock services do, and then makes the call
+        gateway.checkCircuit();
+        FinnhubProfileDto result = gateway.getCompanyProfile("AAPL");
+
+        // ASSERT: The call was the probe, and it closed the circuit
+        assertEquals(profile, result);
+        assertEquals(FinnhubCircuitBreaker.State.CLOSED, circuitBreaker.state());
+    }
+
+    @Test
+    void getCompanyProfile_shouldKeepProbeFree_whenRateLimiterRejectsTheCall() {
+        // ARRANGE: Two timeouts open the circuit, and its open time passes
+        AtomicLong now = new AtomicLong();
+        TokenBucketRateLimiter rateLimiter = new TokenBucketRateLimiter(60, 2, 10, now::get);
+        FinnhubCircuitBreaker circuitBreaker = new FinnhubCircuitBreaker(2, Duration.ofMinutes(1), now::get);
+        FinnhubGateway gateway = gateway(rateLimiter, circuitBreaker, 2);
+        FinnhubProfileDto profile = new FinnhubProfileDto(2500.0, 100.0, "Apple", "US", "AAPL");
+        when(finnhubClient.getCompanyProfile("AAPL", "KEY"))
+                .thenThrow(new ProcessingException("Read timed out"))
+                .thenThrow(new ProcessingException("Read timed out"))
+                .thenReturn(profile);
+        assertThrows(ProcessingException.class, () -> gateway.getCompanyProfile("AAPL"));
+        assertThrows(ProcessingException.class, () -> gateway.getCompanyProfile("AAPL"));
+        now.addAndGet(TimeUnit.MINUTES.toNanos(1));
+
+        // ACT: The token bucket is empty, so the first caller after the open time is throttled before calling Finnhub
+        rateLimiter.pauseFor(Duration.ofSeconds(10));
+        WebApplicationException throttled = assertThrows(WebApplicationException.class, () -> gateway.getCompanyProfile("AAPL"));
+        now.addAndGet(TimeUnit.SECONDS.toNanos(10));
+        FinnhubProfileDto result = gateway.getCompanyProfile("AAPL");
+
+        // ASSERT: The throttled call didn't take the probe, so the next call was let through and closed the circuit
+        assertEquals(503, throttled.getResponse().getStatus());
+        assertEquals(profile, result);
+        assertEquals(FinnhubCircuitBreaker.State.CLOSED, circuitBreaker.state());
+        verify(finnhubClient, times(3)).getCompanyProfile("AAPL", "KEY");
+    }
+
+    @Test
+    void getCompanyProfile_shouldNotOpenCircuit_whenFinnhubAnswersWithClientErrors() {
+        // ARRANGE
+        FinnhubGateway gateway = gateway(new TokenBucketRateLimiter(6000, 10, 10), new FinnhubCircuitBreaker(2, Duration.ofMinutes(1)), 2);
+        when(finnhubClient.getCompanyProfile("NOPE", "KEY")).thenThrow(new WebApplicationException(404));
+
+        // ACT
+        for (int i = 0; i < 3; i++) {
+            assertThrows(WebApplicationException.class, () -> gateway.getCompanyProfile("NOPE"));
+        }
+
+        // ASSERT: Finnhub answered every time, so it is still called
+        assertTrue(gateway.isAvailable());
+        verify(finnhubClient, times(3)).getCompanyProfile("NOPE", "KEY");
+    }
+}
@@ -0,0 +1,79 @@
+package com.ludogoriesoft.client;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenBucketRateLimiterTest {
+
+    private final AtomicLong now = new AtomicLong();
+
+    @Test
+    void tryConsume_shouldAllowBurst_thenRefillAtConfiguredRate() {
+        // ARRANGE: 60 per minute = one token per second, burst of 2
+        TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(60, 2, 10, now::get);
+
+        // ACT & ASSERT
+        assertEquals(0, limiter.tryConsume());
+        assertEquals(0, limiter.tryConsume());
+        assertEquals(TimeUnit.SECONDS.toNanos(1), limiter.tryConsume()); // Bucket is empty
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        assertEquals(0, limiter.tryConsume());
+    }
+
+    @Test
+    void tryConsume_shouldNeverExceedBurst() {
+        // ARRANGE
+        TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(60, 2, 10, now::get);
+
+        // ACT: A long idle period
+        now.addAndGet(TimeUnit.MINUTES.toNanos(10));
+
+        // ASSERT
+        assertEquals(2.0, limiter.availableTokens(), 0.0001);
+    }
+
+    @Test
+    void pauseFor_shouldBlockTokens_untilPauseIsOver() {
+        // ARRANGE
+        TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(60, 5, 10, now::get);
+
+        // ACT
+        limiter.pauseFor(Duration.ofSeconds(30));
+
+        // ASSERT: Nothing for 30 seconds, then the bucket refills gradually
+        assertEquals(TimeUnit.SECONDS.toNanos(30), limiter.tryConsume());
+        now.addAndGet(TimeUnit.SECONDS.toNanos(30));
+        assertEquals(TimeUnit.SECONDS.toNanos(1), limiter.tryConsume());
+        now.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        assertEquals(0, limiter.tryConsume());
+    }
+
+    @Test
+    void tryAcquire_shouldThrottle_whenNoTokenWithinMaxWait() throws Exception {
+        // ARRANGE: A real clock, one token, and a refill far slower than the allowed wait
+        TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(1, 1, 10);
+
+        // ACT & ASSERT
+        assertTrue(limiter.tryAcquire(Duration.ZERO));
+        assertFalse(limiter.tryAcquire(Duration.ofMillis(10)));
+        assertEquals(1, limiter.throttledCount());
+        assertEquals(0, limiter.queueDepth());
+    }
+
+    @Test
+    void tryAcquire_shouldWaitForToken_withinMaxWait() throws Exception {
+        // ARRANGE: 6000 per minute = one token every 10ms
+        TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(6000, 1, 10);
+
+        // ACT & ASSERT
+        assertTrue(limiter.tryAcquire(Duration.ZERO));
+        assertTrue(limiter.tryAcquire(Duration.ofSeconds(1)));
+        assertEquals(0, limiter.throttledCount());
+    }
+}
@@ -0,0 +1,212 @@
+package com.ludogoriesoft.job;
+
+import com.ludogoriesoft.DatabaseTestBase;
+import com.ludogoriesoft.dto.CompanyStockDto;
+import com.ludogoriesoft.dto.StockHistoryPointDto;
+import com.ludogoriesoft.dto.StockHistoryQuery;
+import com.ludogoriesoft.entity.Company;
+import com.ludogoriesoft.repository.CompanyRepository;
+import com.ludogoriesoft.repository.StockDataPartitionRepository;
+import com.ludogoriesoft.repository.StockDataRepository;
+import com.ludogoriesoft.repository.StockRollupRepository;
+import com.ludogoriesoft.service.StockHistoryService;
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import io.quarkus.test.junit.QuarkusTest;
+import jakarta.inject.Inject;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Runs against the real PostgreSQL Testcontainer. The job is created by hand with a fixed clock,
+// so the snapshots can be placed relative to "today".
+@QuarkusTest
+class StockCompactionJobTest extends DatabaseTestBase {
+
+    private static final Instant NOW = Instant.parse("2024-03-05T12:00:00Z");
+
+    @Inject
+    CompanyRepository companyRepository;
+
+    @Inject
+    StockDataRepository stockDataRepository;
+
+    @Inject
+    StockDataPartitionRepository partitionRepository;
+
+    @Inject
+    StockRollupRepository rollupRepository;
+
+    @Inject
+    StockHistoryService stockHistoryService;
+
+    @Inject
+    EntityManager entityManager;
+
+    private StockCompactionJob compactionJob;
+    private Long testCompanyId;
+
+    @BeforeEach
+    void setUp() {
+        compactionJob = new StockCompactionJob(rollupRepository, Duration.ofDays(2), 31, Clock.fixed(NOW, ZoneOffset.UTC));
+
+        QuarkusTransaction.requiringNew().run(() -> {
+            stockDataRepository.deleteAll();
+            companyRepository.deleteAll();
+            entityManager.createNativeQuery("DELETE FROM stock_compaction_state").executeUpdate();
+
+            Company company = new Company();
+            company.setName("Compaction Corp");
+            company.setCountry("US");
+            company.setSymbol("COMP");
+            company.persist();
+            testCompanyId = company.id;
+
+            // No snapshots on 03-03, and 03-05 is today, so it must not be rolled up yet.
+            partitionRepository.createPartition(YearMonth.of(2024, 3));
+            insertSnapshot("2024-03-01T10:00:00Z", 100.0);
+            insertSnapshot("2024-03-01T15:00:00Z", 200.0);
+            insertSnapshot("2024-03-02T09:00:00Z", 300.0);
+            insertSnapshot("2024-03-04T09:00:00Z", 400.0);
+            insertSnapshot("2024-03-05T09:00:00Z", 500.0);
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        QuarkusTransaction.requiringNew().run(() ->
+                entityManager.createNativeQuery("DELETE FROM stock_compaction_state").executeUpdate());
+    }
+
+    @Test
+    void compact_shouldRollUpFinishedDays_andDeleteOnlyExpiredRawSnapshots() {
+        // ACT
+        compactionJob.compact();
+
+        // ASSERT
+        assertEquals(Optional.of(LocalDate.parse("2024-03-04")), rollupRepository.findRolledUpThrough());
+        assertEquals(List.of("2024-03-01", "2024-03-02", "2024-03-04"), rollupDays());
+        // The retention cutoff is 03-03 12:00, so the snapshots of the first two days are gone.
+        assertEquals(2, QuarkusTransaction.requiringNew().call(() -> stockDataRepository.count()));
+    }
+
+    @Test
+    void compact_shouldDropPartitionsBeforeTheCutoffMonth_andDeleteRowsOnlyInTheBoundaryPartition() {
+        // ARRANGE: An older month with its own partition, all of it before the cutoff
+        QuarkusTransaction.requiringNew().run(() -> {
+            partitionRepository.createPartition(YearMonth.of(2024, 2));
+            insertSnapshot("2024-02-20T10:00:00Z", 50.0);
+        });
+
+        // ACT
+        compactionJob.compact();
+
+        // ASSERT: The February partition is gone as a whole, after its day was rolled up,
+        // and only the rows of 03-01 and 03-02 were deleted from the March partition.
+        List<YearMonth> months = QuarkusTransaction.requiringNew().call(partitionRepository::findPartitionMonths);
+        assertFalse(months.contains(YearMonth.of(2024, 2)));
+        assertTrue(months.contains(YearMonth.of(2024, 3)));
+        assertEquals(List.of("2024-02-20", "2024-03-01", "2024-03-02", "2024-03-04"), rollupDays());
+        assertEquals(2, QuarkusTransaction.requiringNew().call(() -> stockDataRepository.count()));
+    }
+
+    @Test
+    void compact_shouldBeRepeatable() {
+        // ACT
+        compactionJob.compact();
+        List<StockHistoryPointDto> before = history(StockHistoryQuery.Resolution.DAY, StockHistoryQuery.Aggregation.LAST);
+        compactionJob.compact();
+
+        // ASSERT
+        assertEquals(Optional.of(LocalDate.parse("2024-03-04")), rollupRepository.findRolledUpThrough());
+        assertEquals(before, history(StockHistoryQuery.Resolution.DAY, StockHistoryQuery.Aggregation.LAST));
+    }
+
+    @Test
+    void history_shouldCombineRollupsWithRawSnapshots_afterCompaction() {
+        // ACT
+        compactionJob.compact();
+        List<StockHistoryPointDto> days = history(StockHistoryQuery.Resolution.DAY, StockHistoryQuery.Aggregation.LAST);
+        List<StockHistoryPointDto> month = history(StockHistoryQuery.Resolution.MONTH, StockHistoryQuery.Aggregation.AVG);
+
+        // ASSERT: 03-01 to 03-04 come from the rollups, today from the raw snapshots.
+        assertEquals(List.of(200.0, 300.0, 400.0, 500.0),
+                days.stream().map(StockHistoryPointDto::marketCapitalization).toList());
+        assertEquals(Instant.parse("2024-03-01T00:00:00Z"), days.get(0).bucket());
+        assertEquals(Instant.parse("2024-03-01T15:00:00Z"), days.get(0).fetchedAt());
+        assertEquals(2, days.get(0).samples());
+
+        // The average is weighted by the samples of each day, not by the days.
+        assertEquals(1, month.size());
+        assertEquals(Double.valueOf(300.0), month.get(0).marketCapitalization());
+        assertEquals(5, month.get(0).samples());
+    }
+
+    @Test
+    void latestPage_shouldFallBackToRollups_forCompanyWhoseSnapshotsWereCompacted() {
+        // ARRANGE: A second company, last fetched on 03-01, so all of its raw snapshots expire
+        Long compactedId = QuarkusTransaction.requiringNew().call(() -> {
+            Company company = new Company();
+            company.setName("Compacted Corp");
+            company.setCountry("US");
+            company.setSymbol("CPTD");
+            company.persist();
+            entityManager.createNativeQuery("INSERT INTO stock_data (id, fetchedAt, marketCapitalization, shareOutstanding, company_id) "
+                            + "VALUES (nextval('stock_data_SEQ'), ?1, 700.0, 70.0, ?2)")
+                    .setParameter(1, Instant.parse("2024-03-01T12:00:00Z"))
+                    .setParameter(2, company.id)
+                    .executeUpdate();
+            return company.id;
+        });
+
+        // ACT
+        compactionJob.compact();
+        List<CompanyStockDto> page = QuarkusTransaction.requiringNew().call(() -> stockDataRepository.findLatestPage(null, 10));
+
+        // ASSERT: Its last values come from the rollup, while the other company still has raw snapshots
+        CompanyStockDto compacted = page.stream().filter(company -> company.id().equals(compactedId)).findFirst().orElseThrow();
+        assertEquals(Double.valueOf(700.0), compacted.marketCapitalization());
+        assertEquals(Double.valueOf(70.0), compacted.shareOutstanding());
+        assertEquals(Instant.parse("2024-03-01T12:00:00Z"), compacted.fetchedAt());
+        assertTrue(compacted.stale());
+        CompanyStockDto raw = page.stream().filter(company -> company.id().equals(testCompanyId)).findFirst().orElseThrow();
+        assertEquals(Double.valueOf(500.0), raw.marketCapitalization());
+    }
+
+    private List<StockHistoryPointDto> history(StockHistoryQuery.Resolution resolution, StockHistoryQuery.Aggregation aggregation) {
+        StockHistoryQuery query = new StockHistoryQuery(Instant.parse("2024-03-01T00:00:00Z"),
+                Instant.parse("2024-04-01T00:00:00Z"), resolution, aggregation);
+        List<StockHistoryPointDto> points = new ArrayList<>();
+        stockHistoryService.streamHistory(testCompanyId, query, points::add);
+        return points;
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<String> rollupDays() {
+        return QuarkusTransaction.requiringNew().call(() -> ((List<Object>) entityManager
+                .createNativeQuery("SELECT day::text FROM stock_data_daily WHERE company_id = ?1 ORDER BY day")
+                .setParameter(1, testCompanyId)
+                .getResultList()).stream().map(String::valueOf).toList());
+    }
+
+    private void insertSnapshot(String fetchedAt, double marketCapitalization) {
+        entityManager.createNativeQuery("INSERT INTO stock_data (id, fetchedAt, marketCapitalization, shareOutstanding, company_id) "
+                        + "VALUES (nextval('stock_data_SEQ'), ?1, ?2, 10.0, ?3)")
+                .setParameter(1, Instant.parse(fetchedAt))
+                .setParameter(2, marketCapitalization)
+                .setParameter(3, testCompanyId)
+                .executeUpdate();
+    }
+}
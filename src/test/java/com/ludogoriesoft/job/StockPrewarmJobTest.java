@@ -0,0 +1,158 @@
+package com.ludogoriesoft.job;
+
+import com.ludogoriesoft.DatabaseTestBase;
+import com.ludogoriesoft.cache.CompanyStockCache;
+import com.ludogoriesoft.client.FinnhubClient;
+import com.ludogoriesoft.dto.FinnhubProfileDto;
+import com.ludogoriesoft.dto.StockPrewarmStatusDto;
+import com.ludogoriesoft.entity.Company;
+import com.ludogoriesoft.entity.StockData;
+import com.ludogoriesoft.repository.CompanyRepository;
+import com.ludogoriesoft.repository.StockDataRepository;
+import com.ludogoriesoft.service.CompanyService;
+import io.quarkus.test.InjectMock;
+import io.quarkus.test.junit.QuarkusTest;
+import jakarta.inject.Inject;
+import jakarta.transaction.Transactional;
+import org.eclipse.microprofile.rest.client.inject.RestClient;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+
+import static io.restassured.RestAssured.given;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@QuarkusTest
+class StockPrewarmJobTest extends DatabaseTestBase {
+
+    @InjectMock
+    @RestClient
+    FinnhubClient finnhubClient;
+
+    @Inject
+    StockPrewarmJob stockPrewarmJob;
+
+    @Inject
+    CompanyRepository companyRepository;
+
+    @Inject
+    StockDataRepository stockDataRepository;
+
+    @Inject
+    CompanyStockCache companyStockCache;
+
+    @BeforeEach
+    @Transactional
+    void setUp() {
+        stockDataRepository.deleteAll();
+        companyRepository.deleteAll();
+        companyStockCache.invalidateAll();
+
+        // Two companies without data for today, and one that is already fresh.
+        persistCompany("Alpha", "ALP");
+        persistCompany("Beta", "BET");
+        Company fresh = persistCompany("Fresh", "FRS");
+        StockData stockData = new StockData();
+        stockData.company = fresh;
+        stockData.setMarketCapitalization(1.0);
+        stockData.setShareOutstanding(1.0);
+        stockDataRepository.persist(stockData);
+    }
+
+    @Test
+    void prewarm_shouldRefreshOnlyCompaniesWithoutDataForToday() {
+        // ARRANGE
+        when(finnhubClient.getCompanyProfile(anyString(), anyString()))
+                .thenReturn(new FinnhubProfileDto(100.0, 10.0, null, null, null));
+
+        // ACT
+        stockPrewarmJob.prewarm();
+
+        // ASSERT
+        verify(finnhubClient).getCompanyProfile(eq("ALP"), anyString());
+        verify(finnhubClient).getCompanyProfile(eq("BET"), anyString());
+        verify(finnhubClient, never()).getCompanyProfile(eq("FRS"), anyString());
+        assertEquals(3L, stockDataRepository.count());
+
+        StockPrewarmStatusDto status = stockPrewarmJob.getStatus();
+        assertFalse(status.running());
+        assertEquals(2, status.total());
+        assertEquals(2, status.refreshed());
+        assertEquals(0, status.failed());
+        assertNotNull(status.finishedAt());
+    }
+
+    @Test
+    void prewarm_shouldResumeWithRemainingCompanies_afterFailure() {
+        // ARRANGE: The first run fails for "BET"
+        when(finnhubClient.getCompanyProfile(eq("ALP"), anyString()))
+                .thenReturn(new FinnhubProfileDto(100.0, 10.0, null, null, null));
+        when(finnhubClient.getCompanyProfile(eq("BET"), anyString()))
+                .thenThrow(new IllegalStateException("Finnhub is down"))
+                .thenReturn(new FinnhubProfileDto(200.0, 20.0, null, null, null));
+
+        // ACT
+        stockPrewarmJob.prewarm();
+        StockPrewarmStatusDto firstRun = stockPrewarmJob.getStatus();
+        stockPrewarmJob.prewarm();
+
+        // ASSERT: The second run only had "BET" left to do
+        assertEquals(1, firstRun.failed());
+        assertEquals(1, stockPrewarmJob.getStatus().total());
+        assertEquals(1, stockPrewarmJob.getStatus().refreshed());
+        verify(finnhubClient, times(1)).getCompanyProfile(eq("ALP"), anyString());
+        verify(finnhubClient, times(2)).getCompanyProfile(eq("BET"), anyString());
+
+        given()
+                .when().get("/admin/stock-prewarm")
+                .then()
+                .statusCode(200)
+                .body("running", is(false))
+                .body("refreshed", equalTo(1));
+    }
+
+    @Test
+    void prewarm_shouldFinishTheRun_whenInterrupted() {
+        // ARRANGE: Two companies to do, and a thread that is interrupted during the first pause.
+        CompanyRepository repository = mock(CompanyRepository.class);
+        CompanyService companyService = mock(CompanyService.class);
+        when(repository.countWithoutStockDataSince(any())).thenReturn(2L);
+        when(repository.findIdsWithoutStockDataSince(any(), eq(0L), anyInt())).thenReturn(List.of(1L, 2L));
+        StockPrewarmJob job = new StockPrewarmJob(repository, companyService, Duration.ofSeconds(1));
+        Thread.currentThread().interrupt();
+
+        // ACT
+        try {
+            job.prewarm();
+        } finally {
+            Thread.interrupted();
+        }
+
+        // ASSERT: The run stopped after the first company, and is no longer reported as running.
+        verify(companyService).getFreshCompanyStockData(1L);
+        verify(companyService, never()).getFreshCompanyStockData(2L);
+        StockPrewarmStatusDto status = job.getStatus();
+        assertFalse(status.running());
+        assertEquals(1, status.refreshed());
+        assertEquals(1L, status.lastCompanyId());
+        assertNotNull(status.finishedAt());
+    }
+
+    private Company persistCompany(String name, String symbol) {
+        Company company = new Company();
+        company.setName(name);
+        company.setCountry("US");
+        company.setSymbol(symbol);
+        companyRepository.persist(company);
+        return company;
+    }
+}
@@ -123,4 +123,23 @@ class CompanyMapperTest {
         assertEquals(5000.0, result.marketCapitalization());
         assertEquals(1234.0, result.shareOutstanding());
     }
-}
\ No newline at end of file
+
+    @Test
+    void withStockData_shouldReplaceStockFields() {
+        // ARRANGE: A company as read without stock data from today
+        CompanyStockDto company = new CompanyStockDto(1L, "Stock Corp", "UK", "STCK", null, null, null, 3L, null, null, null, false);
+        StockData stockData = new StockData();
+        stockData.setMarketCapitalization(5000.0);
+        stockData.setShareOutstanding(1234.0);
+
+        // ACT
+        CompanyStockDto result = companyMapper.withStockData(company, stockData);
+
+        // ASSERT: The company fields are kept and the stock fields come from the snapshot
+        assertEquals(1L, result.id());
+        assertEquals("STCK", result.symbol());
+        assertEquals(3L, result.version());
+        assertEquals(5000.0, result.marketCapitalization());
+        assertEquals(1234.0, result.shareOutstanding());
+    }
+}
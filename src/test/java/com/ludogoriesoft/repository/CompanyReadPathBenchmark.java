@@ -0,0 +1,129 @@
+package com.ludogoriesoft.repository;
+
+import com.ludogoriesoft.DatabaseTestBase;
+import com.ludogoriesoft.dto.CompanyDto;
+import com.ludogoriesoft.dto.CompanyStockDto;
+import com.ludogoriesoft.entity.Company;
+import com.ludogoriesoft.entity.StockData;
+import com.ludogoriesoft.mapper.CompanyMapper;
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import io.quarkus.test.junit.QuarkusTest;
+import jakarta.inject.Inject;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Compares the read paths of GET /companies and the database hit of GET /companies/{id}/stocks against a real
+ * PostgreSQL: loading managed entities and mapping them (as these paths used to), versus the DTO projections
+ * the repositories use now. Prints the time and the bytes allocated per row and per lookup.
+ * It only runs with -DRUN_BENCHMARKS=true.
+ */
+@QuarkusTest
+@EnabledIfSystemProperty(named = "RUN_BENCHMARKS", matches = "true")
+class CompanyReadPathBenchmark extends DatabaseTestBase {
+
+    private static final int COMPANIES = 1000;
+    private static final int PAGE_SIZE = 1000;
+    private static final int WARMUP_ROUNDS = 50;
+    private static final int ROUNDS = 200;
+
+    @Inject
+    CompanyRepository companyRepository;
+
+    @Inject
+    StockDataRepository stockDataRepository;
+
+    @Inject
+    CompanyMapper companyMapper;
+
+    private final List<Long> companyIds = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        companyIds.clear();
+        QuarkusTransaction.requiringNew().run(() -> {
+            stockDataRepository.deleteAll();
+            companyRepository.deleteAll();
+            for (int i = 0; i < COMPANIES; i++) {
+                Company company = new Company();
+                company.setName("Read Corp " + i);
+                company.setCountry("US");
+                company.setSymbol("READ" + i);
+                company.setWebsite("https://read" + i + ".example.com");
+                companyRepository.persist(company);
+                companyIds.add(company.id);
+
+                StockData stockData = new StockData();
+                stockData.company = company;
+                stockData.setMarketCapitalization(1000.0 + i);
+                stockData.setShareOutstanding(10.0 + i);
+                stockDataRepository.persist(stockData);
+            }
+        });
+    }
+
+    @Test
+    void companyPage_entitiesVersusProjection() {
+        Result entities = measure(() -> {
+            List<Company> page = companyRepository.find("id > ?1 order by id", 0L).range(0, PAGE_SIZE - 1).list();
+            return page.stream().map(companyMapper::toDto).toList();
+        });
+        Result projection = measure(() -> companyRepository.findPage(null, PAGE_SIZE));
+
+        print("page", "row", PAGE_SIZE, entities, projection);
+        assertTrue(projection.bytes() < entities.bytes(), "The projection should allocate less than the entities");
+    }
+
+    @Test
+    void stockLookup_entitiesVersusProjection() {
+        int[] next = {0};
+        Result entities = measure(() -> {
+            Long companyId = companyIds.get(next[0]++ % COMPANIES);
+            Company company = companyRepository.findById(companyId);
+            StockData stockData = stockDataRepository.findLatestByCompanyIdForToday(companyId).orElseThrow();
+            return companyMapper.toCompanyStockDto(company, stockData);
+        });
+        Result projection = measure(() -> {
+            Long companyId = companyIds.get(next[0]++ % COMPANIES);
+            CompanyStockDto stored = stockDataRepository.findCompanyStockForToday(companyId).orElseThrow();
+            assertEquals(companyId, stored.id());
+            return stored;
+        });
+
+        print("stock lookup", "lookup", 1, entities, projection);
+        assertTrue(projection.bytes() < entities.bytes(), "The projection should allocate less than the entities");
+    }
+
+    // Every round runs in its own transaction, like a request does, and is measured on the current thread only.
+    private static Result measure(Supplier<Object> round) {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            QuarkusTransaction.requiringNew().call(round::get);
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long bytesBefore = threads.getCurrentThreadAllocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) {
+            QuarkusTransaction.requiringNew().call(round::get);
+        }
+        long nanos = System.nanoTime() - start;
+        return new Result(nanos / ROUNDS, (threads.getCurrentThreadAllocatedBytes() - bytesBefore) / ROUNDS);
+    }
+
+    private static void print(String path, String unit, int perRound, Result entities, Result projection) {
+        System.out.printf("[benchmark] %s entities=%.2f us/%s %d B/%s projection=%.2f us/%s %d B/%s%n",
+                path,
+                entities.nanos() / 1e3 / perRound, unit, entities.bytes() / perRound, unit,
+                projection.nanos() / 1e3 / perRound, unit, projection.bytes() / perRound, unit);
+    }
+
+    private record Result(long nanos, long bytes) {}
+}
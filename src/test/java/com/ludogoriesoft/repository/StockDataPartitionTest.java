@@ -0,0 +1,88 @@
+package com.ludogoriesoft.repository;
+
+import com.ludogoriesoft.DatabaseTestBase;
+import com.ludogoriesoft.cache.StockFreshness;
+import com.ludogoriesoft.entity.Company;
+import com.ludogoriesoft.job.StockDataPartitionJob;
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import io.quarkus.test.junit.QuarkusTest;
+import jakarta.inject.Inject;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Runs against the real PostgreSQL Testcontainer, with the schema built by the Flyway migrations.
+@QuarkusTest
+class StockDataPartitionTest extends DatabaseTestBase {
+
+    private static final Pattern PARTITION_NAME = Pattern.compile("stock_data_\\d{4}_\\d{2}");
+
+    @Inject
+    StockDataPartitionRepository partitionRepository;
+
+    @Inject
+    StockDataPartitionJob partitionJob;
+
+    @Inject
+    EntityManager entityManager;
+
+    @Test
+    void todaysLookup_shouldScanOnlyTheCurrentMonthsPartition() {
+        // ARRANGE: The same predicate findLatestByCompanyIdForToday uses.
+        Instant startOfDay = StockFreshness.startOfToday(Clock.systemUTC());
+        Instant endOfDay = StockFreshness.nextBoundary(Clock.systemUTC());
+
+        // ACT
+        @SuppressWarnings("unchecked")
+        List<String> plan = QuarkusTransaction.requiringNew().call(() -> entityManager.createNativeQuery(
+                        "EXPLAIN SELECT * FROM stock_data WHERE company_id = 1 "
+                                + "AND fetchedAt >= '" + startOfDay + "' AND fetchedAt < '" + endOfDay + "' "
+                                + "ORDER BY fetchedAt DESC LIMIT 1")
+                .getResultList());
+
+        // ASSERT
+        Matcher matcher = PARTITION_NAME.matcher(String.join("\n", plan));
+        Set<String> scannedPartitions = matcher.results().map(m -> m.group()).collect(Collectors.toSet());
+        assertEquals(Set.of(StockDataPartitionRepository.partitionName(YearMonth.now(ZoneOffset.UTC))), scannedPartitions);
+    }
+
+    @Test
+    void maintainPartitions_shouldCreateUpcomingMonths_andDropExpiredOnes() {
+        // ARRANGE: An old partition with data in it, far outside the retention window.
+        YearMonth currentMonth = YearMonth.now(ZoneOffset.UTC);
+        YearMonth expiredMonth = currentMonth.minusYears(3);
+        QuarkusTransaction.requiringNew().run(() -> {
+            Company company = new Company();
+            company.setName("Old Corp");
+            company.setCountry("US");
+            company.setSymbol("OLD" + System.nanoTime());
+            company.persist();
+
+            partitionRepository.createPartition(expiredMonth);
+            entityManager.createNativeQuery("INSERT INTO stock_data (id, fetchedAt, marketCapitalization, shareOutstanding, company_id) "
+                            + "VALUES (nextval('stock_data_SEQ'), ?1, 1.0, 1.0, ?2)")
+                    .setParameter(1, expiredMonth.atDay(15).atStartOfDay().toInstant(ZoneOffset.UTC))
+                    .setParameter(2, company.id)
+                    .executeUpdate();
+        });
+
+        // ACT
+        partitionJob.maintainPartitions();
+
+        // ASSERT
+        List<YearMonth> months = QuarkusTransaction.requiringNew().call(partitionRepository::findPartitionMonths);
+        assertFalse(months.contains(expiredMonth));
+        assertTrue(months.containsAll(List.of(currentMonth, currentMonth.plusMonths(1), currentMonth.plusMonths(2))));
+    }
+}
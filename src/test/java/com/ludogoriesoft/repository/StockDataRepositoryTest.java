@@ -0,0 +1,160 @@
+package com.ludogoriesoft.repository;
+
+import com.ludogoriesoft.DatabaseTestBase;
+import com.ludogoriesoft.cache.CompanyStockCache;
+import com.ludogoriesoft.client.FinnhubClient;
+import com.ludogoriesoft.dto.CompanyStockDto;
+import com.ludogoriesoft.entity.Company;
+import com.ludogoriesoft.entity.StockData;
+import com.ludogoriesoft.entity.StockRefreshLease;
+import com.ludogoriesoft.service.CompanyService;
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import io.quarkus.test.InjectMock;
+import io.quarkus.test.junit.QuarkusTest;
+import jakarta.inject.Inject;
+import jakarta.transaction.Transactional;
+import org.eclipse.microprofile.rest.client.inject.RestClient;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+// These tests run against the real PostgreSQL Testcontainer, because the refresh claims
+// rely on INSERT ... ON CONFLICT and the database clock, which can't be meaningfully mocked.
+@QuarkusTest
+class StockDataRepositoryTest extends DatabaseTestBase {
+
+    @InjectMock
+    @RestClient
+    FinnhubClient finnhubClient;
+
+    @Inject
+    StockDataRepository stockDataRepository;
+
+    @Inject
+    CompanyRepository companyRepository;
+
+    @Inject
+    CompanyService companyService;
+
+    @Inject
+    CompanyStockCache companyStockCache;
+
+    private Long testCompanyId;
+
+    @BeforeEach
+    @Transactional
+    void setUp() {
+        stockDataRepository.deleteAll();
+        StockRefreshLease.deleteAll();
+        companyRepository.deleteAll();
+        companyStockCache.invalidateAll();
+
+        Company company = new Company();
+        company.setName("Lock Corp");
+        company.setCountry("US");
+        company.setSymbol("LOCK");
+        company.persist();
+        testCompanyId = company.id;
+    }
+
+    @Test
+    void tryClaimRefresh_shouldBeExclusiveUntilReleased() {
+        // ARRANGE: Another "node" claims the refresh. The claim is committed right away.
+        UUID owner = claim(Duration.ofSeconds(30)).orElseThrow();
+
+        // ACT & ASSERT: While it's held, nobody else gets it...
+        assertTrue(claim(Duration.ofSeconds(30)).isEmpty());
+
+        // ...and once the holder releases it, the next claim succeeds.
+        release(owner);
+        assertTrue(claim(Duration.ofSeconds(30)).isPresent());
+    }
+
+    @Test
+    void releaseRefreshClaim_shouldLeaveClaimTakenOverByAnotherNode() {
+        // ARRANGE: A node's claim expires, and another node takes it over.
+        UUID expiredOwner = claim(Duration.ofMillis(100)).orElseThrow();
+        sleep(300);
+        assertTrue(claim(Duration.ofSeconds(30)).isPresent());
+
+        // ACT: The first node finishes late and releases what it thinks is its claim.
+        release(expiredOwner);
+
+        // ASSERT: The current holder still has it.
+        assertTrue(claim(Duration.ofSeconds(30)).isEmpty());
+    }
+
+    @Test
+    void tryClaimRefresh_shouldSucceed_whenPreviousClaimExpired() {
+        // ARRANGE: A node claimed the refresh and died without releasing it.
+        assertTrue(claim(Duration.ofMillis(100)).isPresent());
+
+        // ACT
+        sleep(300);
+
+        // ASSERT
+        assertTrue(claim(Duration.ofSeconds(30)).isPresent());
+    }
+
+    @Test
+    void getCompanyStockData_shouldReuseRowInsertedByClaimHolder_insteadOfCallingFinnhub() throws Exception {
+        // ARRANGE: Another "node" holds the refresh claim while it fetches, then inserts today's snapshot.
+        UUID otherNodeOwner = claim(Duration.ofSeconds(30)).orElseThrow();
+        ExecutorService otherNode = Executors.newSingleThreadExecutor();
+
+        try {
+            Future<?> holder = otherNode.submit(() -> {
+                sleep(300); // Simulates the other node's slow Finnhub call
+                QuarkusTransaction.requiringNew().run(() -> {
+                    StockData stockData = new StockData();
+                    stockData.company = companyRepository.findById(testCompanyId);
+                    stockData.setMarketCapitalization(1234.0);
+                    stockData.setShareOutstanding(56.0);
+                    stockDataRepository.persist(stockData);
+                    stockDataRepository.releaseRefreshClaim(testCompanyId, otherNodeOwner);
+                });
+            });
+
+            // ACT
+            CompanyStockDto result = companyService.getCompanyStockData(testCompanyId);
+
+            // ASSERT
+            holder.get(5, TimeUnit.SECONDS);
+            assertEquals(1234.0, result.marketCapitalization());
+            assertEquals(56.0, result.shareOutstanding());
+            verify(finnhubClient, never()).getCompanyProfile(anyString(), anyString());
+            assertEquals(1L, (long) QuarkusTransaction.requiringNew().call(() -> stockDataRepository.count()));
+        } finally {
+            otherNode.shutdownNow();
+        }
+    }
+
+    private Optional<UUID> claim(Duration lease) {
+        return QuarkusTransaction.requiringNew().call(() -> stockDataRepository.tryClaimRefresh(testCompanyId, lease));
+    }
+
+    private void release(UUID owner) {
+        QuarkusTransaction.requiringNew().run(() -> stockDataRepository.releaseRefreshClaim(testCompanyId, owner));
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.ludogoriesoft.resource;
+
+import com.ludogoriesoft.DatabaseTestBase;
+import com.ludogoriesoft.repository.CompanyRepository;
+import com.ludogoriesoft.repository.StockDataRepository;
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import io.quarkus.test.common.http.TestHTTPResource;
+import io.quarkus.test.junit.QuarkusTest;
+import jakarta.inject.Inject;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.RepeatedTest;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// Fires many creates of the same symbol at once: exactly one may win, and all the others must get a clean 409.
+@QuarkusTest
+class CompanyCreateConcurrencyTest extends DatabaseTestBase {
+
+    private static final int CONCURRENT_CREATES = 32;
+
+    @TestHTTPResource("/companies")
+    URI companiesUri;
+
+    @Inject
+    CompanyRepository companyRepository;
+
+    @Inject
+    StockDataRepository stockDataRepository;
+
+    @BeforeEach
+    void setUp() {
+        QuarkusTransaction.requiringNew().run(() -> {
+            stockDataRepository.deleteAll();
+            companyRepository.deleteAll();
+        });
+    }
+
+    @RepeatedTest(5)
+    void createCompany_shouldCreateExactlyOnce_whenTheSameSymbolIsCreatedConcurrently() throws Exception {
+        HttpClient client = HttpClient.newHttpClient();
+        HttpRequest request = HttpRequest.newBuilder(companiesUri)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString("{\"name\":\"Race Corp\",\"country\":\"US\",\"symbol\":\"RACE\"}"))
+                .build();
+        CountDownLatch start = new CountDownLatch(1);
+
+        List<Future<Integer>> responses = new ArrayList<>();
+        try (ExecutorService executor = Executors.newFixedThreadPool(CONCURRENT_CREATES)) {
+            for (int i = 0; i < CONCURRENT_CREATES; i++) {
+                responses.add(executor.submit(() -> {
+                    start.await();
+                    return client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+                }));
+            }
+            // Release all requests at once, so they really overlap.
+            start.countDown();
+        }
+
+        List<Integer> statuses = new ArrayList<>();
+        for (Future<Integer> response : responses) {
+            statuses.add(response.get());
+        }
+        Map<Integer, Long> countsByStatus = statuses.stream()
+                .collect(Collectors.groupingBy(Function.identity(), Collectors.counting()));
+        assertEquals(Map.of(201, 1L, 409, (long) CONCURRENT_CREATES - 1), countsByStatus);
+        assertEquals(1, QuarkusTransaction.requiringNew().call(() -> companyRepository.count("symbol", "RACE")));
+    }
+}
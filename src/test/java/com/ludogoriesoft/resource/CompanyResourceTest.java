@@ -1,24 +1,47 @@
 package com.ludogoriesoft.resource;
 
 import com.ludogoriesoft.DatabaseTestBase;
+import com.ludogoriesoft.cache.CompanyStockCache;
+import com.ludogoriesoft.cache.StockFreshness;
 import com.ludogoriesoft.client.FinnhubClient;
 import com.ludogoriesoft.dto.FinnhubProfileDto;
 import com.ludogoriesoft.entity.Company;
+import com.ludogoriesoft.entity.StockRefreshLease;
 import com.ludogoriesoft.repository.CompanyRepository;
+import com.ludogoriesoft.repository.StockDataPartitionRepository;
 import com.ludogoriesoft.repository.StockDataRepository;
+import io.quarkus.narayana.jta.QuarkusTransaction;
 import io.quarkus.test.InjectMock;
 import io.quarkus.test.junit.QuarkusTest;
+import io.restassured.common.mapper.TypeRef;
 import io.restassured.http.ContentType;
 import jakarta.inject.Inject;
+import jakarta.persistence.EntityManager;
 import jakarta.transaction.Transactional;
 import org.eclipse.microprofile.rest.client.inject.RestClient;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.Map;
+
 import static io.restassured.RestAssured.given;
 import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @QuarkusTest
@@ -36,6 +59,18 @@ class CompanyResourceTest extends DatabaseTestBase {
     @Inject
     StockDataRepository stockDataRepository;
 
+    @Inject
+    CompanyStockCache companyStockCache;
+
+    @Inject
+    StockDataPartitionRepository partitionRepository;
+
+    @Inject
+    SessionFactory sessionFactory;
+
+    @Inject
+    EntityManager entityManager;
+
     private Long testCompanyId;
 
     @BeforeEach
@@ -44,6 +79,8 @@ class CompanyResourceTest extends DatabaseTestBase {
         // To respect foreign key constraints, we must delete the "child" records (StockData) before deleting the "parent" records (Company).
         stockDataRepository.deleteAll();
         companyRepository.deleteAll();
+        // The in-memory cache outlives a single test, so start every test from a cold cache.
+        companyStockCache.invalidateAll();
 
         // Create a predictable company for our tests to use
         Company company = new Company();
@@ -68,6 +105,124 @@ class CompanyResourceTest extends DatabaseTestBase {
                 .body("[0].name", equalTo("Test Corp"));
     }
 
+    @Test
+    void testGetAllCompaniesEndpoint_Pagination() {
+        // ARRANGE: Two more companies, so that there are three in total
+        Long secondId = persistCompany("Second Corp", "DE", "SC");
+        persistCompany("Third Corp", "FR", "THC");
+
+        // ACT & ASSERT: The first page is full, so it links to the next one
+        given()
+                .queryParam("limit", 2)
+                .when().get("/companies")
+                .then()
+                .statusCode(200)
+                .body("size()", is(2))
+                .body("[0].name", equalTo("Test Corp"))
+                .body("[1].name", equalTo("Second Corp"))
+                .header("Link", containsString("after=" + secondId));
+
+        // The last page holds the remaining company and has no next link
+        given()
+                .queryParam("limit", 2)
+                .queryParam("after", secondId)
+                .when().get("/companies")
+                .then()
+                .statusCode(200)
+                .body("size()", is(1))
+                .body("[0].name", equalTo("Third Corp"))
+                .header("Link", nullValue());
+    }
+
+    @Test
+    void testGetAllCompaniesEndpoint_InvalidLimit() {
+        given()
+                .queryParam("limit", 0)
+                .when().get("/companies")
+                .then()
+                .statusCode(400);
+    }
+
+    @Test
+    void testSearchCompaniesEndpoint_Filters() {
+        persistCompany("Tesla Inc", "US", "TSLA");
+        persistCompany("Telekom AG", "DE", "DTE");
+        persistCompany("Test_Corp Ltd", "US", "TCL");
+
+        // The name prefix is case-insensitive and combined with the country
+        given()
+                .queryParam("country", "US")
+                .queryParam("namePrefix", "te")
+                .when().get("/companies/search")
+                .then()
+                .statusCode(200)
+                .body("size()", is(3))
+                .body("name", contains("Test Corp", "Tesla Inc", "Test_Corp Ltd"));
+
+        // Wildcards in the prefix match literally
+        given()
+                .queryParam("namePrefix", "Test_")
+                .when().get("/companies/search")
+                .then()
+                .statusCode(200)
+                .body("size()", is(1))
+                .body("[0].name", equalTo("Test_Corp Ltd"));
+
+        given()
+                .queryParam("symbolPrefix", "ts")
+                .when().get("/companies/search")
+                .then()
+                .statusCode(200)
+                .body("size()", is(1))
+                .body("[0].symbol", equalTo("TSLA"));
+    }
+
+    @Test
+    void testSearchCompaniesEndpoint_Pagination() {
+        Long secondId = persistCompany("Test Two", "US", "TT");
+        persistCompany("Test Three", "US", "TTH");
+
+        given()
+                .queryParam("namePrefix", "test")
+                .queryParam("limit", 2)
+                .when().get("/companies/search")
+                .then()
+                .statusCode(200)
+                .body("size()", is(2))
+                .header("Link", containsString("after=" + secondId));
+
+        given()
+                .queryParam("namePrefix", "test")
+                .queryParam("limit", 2)
+                .queryParam("after", secondId)
+                .when().get("/companies/search")
+                .then()
+                .statusCode(200)
+                .body("size()", is(1))
+                .body("[0].name", equalTo("Test Three"))
+                .header("Link", nullValue());
+    }
+
+    @Test
+    void testSearchCompaniesEndpoint_InvalidCountry() {
+        given()
+                .queryParam("country", "usa")
+                .when().get("/companies/search")
+                .then()
+                .statusCode(400);
+    }
+
+    @Test
+    void testStreamAllCompaniesEndpoint() {
+        given()
+                .when().get("/companies/stream")
+                .then()
+                .statusCode(200)
+                .contentType(ContentType.JSON)
+                .body("size()", is(1))
+                .body("[0].symbol", equalTo("TC"));
+    }
+
     @Test
     void testCreateCompanyEndpoint_Success() {
         String newCompanyJson = "{\"name\":\"NewCo\",\"country\":\"DE\",\"symbol\":\"NCO\"}";
@@ -89,6 +244,56 @@ class CompanyResourceTest extends DatabaseTestBase {
                 .statusCode(409);
     }
 
+    @Test
+    void testImportCompaniesEndpoint_Ndjson() {
+        // One new company, one duplicate of the existing "TC", one with an invalid country and one malformed line
+        String ndjson = """
+                {"name":"Bulk One","country":"DE","symbol":"BLK"}
+                {"name":"Duplicate","country":"FR","symbol":"TC"}
+                {"name":"Bad Country","country":"germany","symbol":"BAD"}
+                {"name":
+                """;
+        given()
+                .contentType("application/x-ndjson").body(ndjson)
+                .when().post("/companies/bulk")
+                .then()
+                .statusCode(200)
+                .body("created", is(1))
+                .body("conflicts", is(1))
+                .body("invalid", is(2))
+                .body("rows.status", contains("CREATED", "CONFLICT", "INVALID", "INVALID"))
+                .body("rows[0].id", notNullValue());
+
+        given()
+                .when().get("/companies")
+                .then()
+                .statusCode(200)
+                .body("size()", is(2));
+    }
+
+    @Test
+    void testImportCompaniesEndpoint_JsonArray() {
+        String jsonArray = "[{\"name\":\"Array One\",\"country\":\"US\",\"symbol\":\"ARR\"},"
+                + "{\"name\":\"Array Two\",\"country\":\"US\",\"symbol\":\"ARR\"}]";
+        given()
+                .contentType(ContentType.JSON).body(jsonArray)
+                .when().post("/companies/bulk")
+                .then()
+                .statusCode(200)
+                .body("created", is(1))
+                .body("conflicts", is(1))
+                .body("invalid", is(0));
+    }
+
+    @Test
+    void testImportCompaniesEndpoint_NotAnArray() {
+        given()
+                .contentType(ContentType.JSON).body("{\"name\":\"Single\"}")
+                .when().post("/companies/bulk")
+                .then()
+                .statusCode(400);
+    }
+
     @Test
     void testUpdateCompanyEndpoint_Success() {
         String updatedCompanyJson = "{\"name\":\"Updated Corp\",\"country\":\"UK\",\"symbol\":\"TCU\"}";
@@ -126,4 +331,259 @@ class CompanyResourceTest extends DatabaseTestBase {
                 .body("marketCapitalization", equalTo(2500.0f))
                 .body("shareOutstanding", equalTo(100.0f));
     }
-}
\ No newline at end of file
+
+    @Test
+    void testGetCompanyWithStocksEndpoint_ServesStaleData_WhileRefreshing() throws InterruptedException {
+        // ARRANGE: Only yesterday's snapshot, and Finnhub has newer data
+        Instant yesterday = StockFreshness.startOfToday(Clock.systemUTC()).minus(Duration.ofHours(12));
+        QuarkusTransaction.requiringNew().run(() -> {
+            partitionRepository.createPartition(YearMonth.from(yesterday.atOffset(ZoneOffset.UTC)));
+            insertSnapshot(testCompanyId, yesterday, 1000.0);
+        });
+        when(finnhubClient.getCompanyProfile(eq("TC"), anyString()))
+                .thenReturn(new FinnhubProfileDto(2500.0, 100.0, "Test Corp", "US", "TC"));
+
+        // ACT & ASSERT: Yesterday's data comes back right away, marked as stale
+        given()
+                .when().get("/companies/" + testCompanyId + "/stocks")
+                .then()
+                .statusCode(200)
+                .header("Cache-Control", containsString("no-cache"))
+                .body("stale", is(true))
+                .body("marketCapitalization", equalTo(1000.0f));
+
+        // The background refresh stores today's snapshot, which the following requests get
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (QuarkusTransaction.requiringNew().call(() -> stockDataRepository.count()) < 2) {
+            assertTrue(System.nanoTime() < deadline, "Not refreshed within 5 seconds");
+            Thread.sleep(10);
+        }
+        given()
+                .when().get("/companies/" + testCompanyId + "/stocks")
+                .then()
+                .statusCode(200)
+                .header("Cache-Control", containsString("no-cache"))
+                .body("stale", is(false))
+                .body("marketCapitalization", equalTo(2500.0f));
+        verify(finnhubClient, times(1)).getCompanyProfile(eq("TC"), anyString());
+    }
+
+    @Test
+    void testMetricsEndpoint_ExposesStockLookupMetrics() {
+        // ARRANGE: A miss that calls Finnhub, then an L1 hit
+        when(finnhubClient.getCompanyProfile(eq("TC"), anyString()))
+                .thenReturn(new FinnhubProfileDto(2500.0, 100.0, "Test Corp", "US", "TC"));
+        given().when().get("/companies/" + testCompanyId + "/stocks").then().statusCode(200);
+        given().when().get("/companies/" + testCompanyId + "/stocks").then().statusCode(200);
+
+        // ACT & ASSERT
+        given()
+                .when().get("/q/metrics")
+                .then()
+                .statusCode(200)
+                .body(containsString("stock_cache_lookups_total{result=\"l1_hit\"}"))
+                .body(containsString("stock_cache_lookups_total{result=\"miss\"}"))
+                .body(containsString("finnhub_requests_seconds_bucket"))
+                .body(containsString("repository_queries_seconds_count{"))
+                .body(containsString("http_server_requests_seconds_bucket"));
+    }
+
+    @Test
+    void testGetCompanyWithStocksEndpoint_ConditionalGet() {
+        // ARRANGE
+        when(finnhubClient.getCompanyProfile(eq("TC"), anyString()))
+                .thenReturn(new FinnhubProfileDto(2500.0, 100.0, "Test Corp", "US", "TC"));
+        String etag = given()
+                .when().get("/companies/" + testCompanyId + "/stocks")
+                .then()
+                .statusCode(200)
+                .header("Cache-Control", containsString("no-cache"))
+                .body("fetchedAt", notNullValue())
+                .extract().header("ETag");
+        assertNotNull(etag);
+
+        // ACT & ASSERT: Same version, so no body
+        given().header("If-None-Match", etag)
+                .when().get("/companies/" + testCompanyId + "/stocks")
+                .then()
+                .statusCode(304)
+                .header("ETag", equalTo(etag))
+                .body(emptyString());
+
+        // ACT & ASSERT: Updating the company changes the ETag
+        given()
+                .contentType(ContentType.JSON).body("{\"name\":\"Renamed Corp\",\"country\":\"US\",\"symbol\":\"TC\"}")
+                .when().put("/companies/" + testCompanyId)
+                .then()
+                .statusCode(200);
+        given().header("If-None-Match", etag)
+                .when().get("/companies/" + testCompanyId + "/stocks")
+                .then()
+                .statusCode(200)
+                .header("ETag", not(equalTo(etag)))
+                .body("name", equalTo("Renamed Corp"));
+    }
+
+    @Test
+    void testReadEndpoints_DoNotLoadEntities() {
+        // ARRANGE: The first lookup stores today's stock data, so the next one is a database hit
+        when(finnhubClient.getCompanyProfile(eq("TC"), anyString()))
+                .thenReturn(new FinnhubProfileDto(2500.0, 100.0, "Test Corp", "US", "TC"));
+        given().when().get("/companies/" + testCompanyId + "/stocks").then().statusCode(200);
+        companyStockCache.invalidateAll();
+        Statistics statistics = sessionFactory.getStatistics();
+        statistics.clear();
+
+        // ACT
+        given().when().get("/companies").then().statusCode(200).body("[0].name", equalTo("Test Corp"));
+        given().queryParam("namePrefix", "test").when().get("/companies/search").then().statusCode(200).body("size()", is(1));
+        given().when().get("/companies/" + testCompanyId + "/stocks")
+                .then()
+                .statusCode(200)
+                .body("marketCapitalization", equalTo(2500.0f));
+
+        // ASSERT: Everything was read straight into DTOs
+        assertEquals(0, statistics.getEntityLoadCount());
+    }
+
+    @Test
+    void testGetAllCompaniesEndpoint_ConditionalGet() {
+        // ARRANGE
+        String etag = given()
+                .when().get("/companies")
+                .then()
+                .statusCode(200)
+                .header("Cache-Control", containsString("no-cache"))
+                .extract().header("ETag");
+        assertNotNull(etag);
+
+        // ACT & ASSERT: Nothing changed
+        given().header("If-None-Match", etag)
+                .when().get("/companies")
+                .then()
+                .statusCode(304)
+                .body(emptyString());
+
+        // ACT & ASSERT: A new company lands on the same page
+        given()
+                .contentType(ContentType.JSON).body("{\"name\":\"Another Corp\",\"country\":\"US\",\"symbol\":\"ANO\"}")
+                .when().post("/companies")
+                .then()
+                .statusCode(201);
+        given().header("If-None-Match", etag)
+                .when().get("/companies")
+                .then()
+                .statusCode(200)
+                .body("size()", equalTo(2));
+    }
+
+    @Test
+    void testGetCompaniesWithStocksEndpoint_ReportsPerEntryResults() {
+        // ARRANGE: One known company (cache miss, served by Finnhub) and one unknown ID
+        FinnhubProfileDto mockFinnhubResponse = new FinnhubProfileDto(2500.0, 100.0, "Test Corp", "US", "TC");
+        when(finnhubClient.getCompanyProfile(eq("TC"), anyString())).thenReturn(mockFinnhubResponse);
+
+        // ACT
+        Map<String, Map<String, Object>> result = given()
+                .queryParam("ids", testCompanyId + ",9999")
+                .when().get("/companies/stocks")
+                .then()
+                .statusCode(200)
+                .extract().as(new TypeRef<>() {});
+
+        // ASSERT
+        Map<String, Object> known = result.get(String.valueOf(testCompanyId));
+        assertNull(known.get("error"));
+        assertEquals(2500.0, ((Map<?, ?>) known.get("data")).get("marketCapitalization"));
+        assertNotNull(result.get("9999").get("error"));
+        assertEquals(1L, stockDataRepository.count()); // The new snapshot was persisted
+        assertNull(StockRefreshLease.findById(testCompanyId)); // ... and the refresh claim released with it
+    }
+
+    @Test
+    void testGetCompaniesWithStocksEndpoint_HidesUpstreamErrorDetails() {
+        // ARRANGE
+        when(finnhubClient.getCompanyProfile(eq("TC"), anyString()))
+                .thenThrow(new RuntimeException("upstream detail that must not reach the client"));
+
+        // ACT
+        Map<String, Map<String, Object>> result = given()
+                .queryParam("ids", String.valueOf(testCompanyId))
+                .when().get("/companies/stocks")
+                .then()
+                .statusCode(200)
+                .extract().as(new TypeRef<>() {});
+
+        // ASSERT
+        assertEquals("Could not fetch stock data from Finnhub", result.get(String.valueOf(testCompanyId)).get("error"));
+        assertEquals(0L, stockDataRepository.count());
+        assertNull(StockRefreshLease.findById(testCompanyId));
+    }
+
+    @Test
+    void testGetCompaniesWithLatestStocksEndpoint() {
+        // ARRANGE: Two snapshots for Test Corp, and a second company that was never looked up
+        Instant now = Instant.now();
+        QuarkusTransaction.requiringNew().run(() -> {
+            insertSnapshot(testCompanyId, now, 1000.0);
+            insertSnapshot(testCompanyId, now.plusSeconds(60), 2000.0);
+        });
+        Long secondId = persistCompany("Second Corp", "DE", "SC");
+
+        // ACT & ASSERT: The first page holds Test Corp with its newest snapshot
+        given()
+                .queryParam("limit", 1)
+                .when().get("/companies/stocks/latest")
+                .then()
+                .statusCode(200)
+                .body("size()", is(1))
+                .body("[0].symbol", equalTo("TC"))
+                .body("[0].marketCapitalization", equalTo(2000.0f))
+                .header("Link", containsString("after=" + testCompanyId));
+
+        // The next page holds the company without stock data
+        given()
+                .queryParam("limit", 1)
+                .queryParam("after", testCompanyId)
+                .when().get("/companies/stocks/latest")
+                .then()
+                .statusCode(200)
+                .body("size()", is(1))
+                .body("[0].id", equalTo(secondId.intValue()))
+                .body("[0].marketCapitalization", nullValue())
+                .body("[0].fetchedAt", nullValue());
+
+        // Finnhub is never asked, even for the company without stock data
+        verify(finnhubClient, never()).getCompanyProfile(anyString(), anyString());
+    }
+
+    @Test
+    void testGetCompaniesWithStocksEndpoint_InvalidIds() {
+        given()
+                .queryParam("ids", "1,abc")
+                .when().get("/companies/stocks")
+                .then()
+                .statusCode(400);
+    }
+
+    private void insertSnapshot(Long companyId, Instant fetchedAt, double marketCapitalization) {
+        entityManager.createNativeQuery("INSERT INTO stock_data (id, fetchedAt, marketCapitalization, shareOutstanding, company_id) "
+                        + "VALUES (nextval('stock_data_SEQ'), ?1, ?2, 10.0, ?3)")
+                .setParameter(1, fetchedAt)
+                .setParameter(2, marketCapitalization)
+                .setParameter(3, companyId)
+                .executeUpdate();
+    }
+
+    // Commits the company in its own transaction, so it is visible to the HTTP requests of the test.
+    private Long persistCompany(String name, String country, String symbol) {
+        return QuarkusTransaction.requiringNew().call(() -> {
+            Company company = new Company();
+            company.setName(name);
+            company.setCountry(country);
+            company.setSymbol(symbol);
+            company.persist();
+            return company.id;
+        });
+    }
+}
@@ -0,0 +1,112 @@
+package com.ludogoriesoft.resource;
+
+import com.ludogoriesoft.DatabaseTestBase;
+import com.ludogoriesoft.cache.CompanyStockCache;
+import com.ludogoriesoft.client.FinnhubClient;
+import com.ludogoriesoft.dto.FinnhubProfileDto;
+import com.ludogoriesoft.entity.Company;
+import com.ludogoriesoft.repository.CompanyRepository;
+import com.ludogoriesoft.repository.StockDataRepository;
+import io.agroal.api.AgroalDataSource;
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import io.quarkus.test.InjectMock;
+import io.quarkus.test.junit.QuarkusTest;
+import jakarta.inject.Inject;
+import jakarta.transaction.Transactional;
+import org.eclipse.microprofile.rest.client.inject.RestClient;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static io.restassured.RestAssured.given;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+
+// Proves that a slow Finnhub doesn't tie up the connection pool: while many stock lookups
+// are stuck in the upstream call, none of them may hold a database connection.
+@QuarkusTest
+class CompanyStockConnectionPoolTest extends DatabaseTestBase {
+
+    private static final int CONCURRENT_LOOKUPS = 10;
+
+    @InjectMock
+    @RestClient
+    FinnhubClient finnhubClient;
+
+    @Inject
+    AgroalDataSource dataSource;
+
+    @Inject
+    CompanyRepository companyRepository;
+
+    @Inject
+    StockDataRepository stockDataRepository;
+
+    @Inject
+    CompanyStockCache companyStockCache;
+
+    private final List<Long> companyIds = new ArrayList<>();
+
+    @BeforeEach
+    @Transactional
+    void setUp() {
+        stockDataRepository.deleteAll();
+        companyRepository.deleteAll();
+        companyStockCache.invalidateAll();
+
+        companyIds.clear();
+        for (int i = 0; i < CONCURRENT_LOOKUPS; i++) {
+            Company company = new Company();
+            company.setName("Slow Corp " + i);
+            company.setCountry("US");
+            company.setSymbol("SLOW" + i);
+            company.persist();
+            companyIds.add(company.id);
+        }
+    }
+
+    @Test
+    void getCompanyStockData_shouldNotHoldConnections_whileFinnhubIsSlow() throws Exception {
+        // ARRANGE: Finnhub hangs until we let it answer.
+        CountDownLatch inFinnhub = new CountDownLatch(CONCURRENT_LOOKUPS);
+        CountDownLatch finnhubAnswers = new CountDownLatch(1);
+        when(finnhubClient.getCompanyProfile(anyString(), anyString())).thenAnswer(invocation -> {
+            inFinnhub.countDown();
+            assertTrue(finnhubAnswers.await(10, TimeUnit.SECONDS));
+            return new FinnhubProfileDto(100.0, 10.0, null, null, null);
+        });
+
+        ExecutorService clients = Executors.newFixedThreadPool(CONCURRENT_LOOKUPS);
+        try {
+            List<Future<Integer>> lookups = new ArrayList<>();
+            for (Long companyId : companyIds) {
+                lookups.add(clients.submit(() -> given().when().get("/companies/" + companyId + "/stocks").statusCode()));
+            }
+
+            // ACT: Wait until every lookup is stuck in the Finnhub call.
+            assertTrue(inFinnhub.await(10, TimeUnit.SECONDS));
+
+            // ASSERT: No connection is checked out, and other endpoints are still served.
+            assertEquals(0L, dataSource.getMetrics().activeCount());
+            given().when().get("/companies").then().statusCode(200);
+
+            finnhubAnswers.countDown();
+            for (Future<Integer> lookup : lookups) {
+                assertEquals(200, lookup.get(10, TimeUnit.SECONDS));
+            }
+            assertEquals((long) CONCURRENT_LOOKUPS,
+                    (long) QuarkusTransaction.requiringNew().call(() -> stockDataRepository.count()));
+        } finally {
+            finnhubAnswers.countDown();
+            clients.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,281 @@
+package com.ludogoriesoft.resource;
+
+import com.ludogoriesoft.DatabaseTestBase;
+import com.ludogoriesoft.FinnhubStubResource;
+import com.ludogoriesoft.cache.CompanyStockCache;
+import com.ludogoriesoft.entity.Company;
+import com.ludogoriesoft.repository.CompanyRepository;
+import com.ludogoriesoft.repository.StockDataRepository;
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import io.quarkus.test.common.QuarkusTestResource;
+import io.quarkus.test.common.ResourceArg;
+import io.quarkus.test.common.http.TestHTTPResource;
+import io.quarkus.test.junit.QuarkusTest;
+import jakarta.inject.Inject;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * End-to-end load test: drives a mix of list, create, update and stock requests at a fixed rate against the
+ * application, with PostgreSQL in a Testcontainer and Finnhub replaced by {@link FinnhubStubResource},
+ * so it runs entirely offline. It reports throughput, p50/p99/p999 latency per request type
+ * and the number of Finnhub calls made per request, prints them and writes them to build/reports/load-test.json.
+ * <p>
+ * It only runs with -DRUN_LOAD_TESTS=true. The workload is tuned with system properties:
+ * loadtest.rps (default 200), loadtest.duration and loadtest.warmup (ISO-8601 durations, default PT30S and PT5S),
+ * loadtest.mix (default list:40,stocks:40,create:10,update:10), and the stub with finnhub.stub.delay (ms)
+ * and finnhub.stub.error-rate (0 to 1). The run fails if more than loadtest.max-error-rate (default 0.01)
+ * of the requests fail, or if loadtest.max-p99-ms is set and the overall p99 is above it, so it can gate a release.
+ * <p>
+ * Requests are sent on a fixed schedule, whether or not earlier ones have completed, and latency is measured
+ * from the time a request was due. A slow server therefore shows up as latency rather than as a lower send rate.
+ */
+@QuarkusTest
+@QuarkusTestResource(value = FinnhubStubResource.class, restrictToAnnotatedClass = true,
+        initArgs = @ResourceArg(name = "delay", value = "100"))
+@EnabledIfSystemProperty(named = "RUN_LOAD_TESTS", matches = "true")
+class MixedTrafficLoadTest extends DatabaseTestBase {
+
+    // Enough companies that stock lookups are a mix of Finnhub calls and cache hits for the whole run.
+    private static final int SEEDED_COMPANIES = 2000;
+    private static final Path REPORT = Path.of("build", "reports", "load-test.json");
+
+    private enum Operation { LIST, STOCKS, CREATE, UPDATE }
+
+    @TestHTTPResource("/companies")
+    URI companiesUri;
+
+    @Inject
+    CompanyRepository companyRepository;
+
+    @Inject
+    StockDataRepository stockDataRepository;
+
+    @Inject
+    CompanyStockCache companyStockCache;
+
+    private final List<Long> companyIds = new ArrayList<>();
+    private final AtomicLong createdCompanies = new AtomicLong();
+    private HttpClient client;
+
+    @BeforeEach
+    void setUp() {
+        companyIds.clear();
+        QuarkusTransaction.requiringNew().run(() -> {
+            stockDataRepository.deleteAll();
+            companyRepository.deleteAll();
+            for (int i = 0; i < SEEDED_COMPANIES; i++) {
+                Company company = new Company();
+                company.setName("Load Corp " + i);
+                company.setCountry("US");
+                company.setSymbol(symbol("L", i));
+                companyRepository.persist(company);
+                companyIds.add(company.id);
+            }
+        });
+        companyStockCache.invalidateAll();
+        client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .build();
+    }
+
+    @Test
+    void mixedTraffic_atTargetRate() throws IOException {
+        int rps = Integer.getInteger("loadtest.rps", 200);
+        Duration duration = Duration.parse(System.getProperty("loadtest.duration", "PT30S"));
+        Duration warmup = Duration.parse(System.getProperty("loadtest.warmup", "PT5S"));
+        Map<Operation, Integer> mix = parseMix(System.getProperty("loadtest.mix", "list:40,stocks:40,create:10,update:10"));
+        double maxErrorRate = Double.parseDouble(System.getProperty("loadtest.max-error-rate", "0.01"));
+
+        run(rps, warmup, mix);
+        long finnhubCallsBefore = FinnhubStubResource.requestCount();
+        Results results = run(rps, duration, mix);
+        long finnhubCalls = FinnhubStubResource.requestCount() - finnhubCallsBefore;
+
+        String report = results.toJson(rps, finnhubCalls);
+        System.out.println("[load-test] " + report);
+        Files.createDirectories(REPORT.getParent());
+        Files.writeString(REPORT, report);
+
+        double errorRate = (double) results.failures() / results.total();
+        assertTrue(errorRate <= maxErrorRate, "Error rate " + errorRate + " is above " + maxErrorRate);
+        String maxP99 = System.getProperty("loadtest.max-p99-ms");
+        if (maxP99 != null) {
+            double p99 = results.percentileMillis(null, 0.99);
+            assertTrue(p99 <= Double.parseDouble(maxP99), "p99 of " + p99 + " ms is above " + maxP99 + " ms");
+        }
+    }
+
+    private Results run(int rps, Duration duration, Map<Operation, Integer> mix) {
+        int total = (int) (rps * duration.toMillis() / 1000);
+        long intervalNanos = 1_000_000_000L / rps;
+        Operation[] operations = new Operation[total];
+        long[] latencies = new long[total];
+        boolean[] failed = new boolean[total];
+        int weightSum = mix.values().stream().mapToInt(Integer::intValue).sum();
+
+        long start = System.nanoTime();
+        try (ExecutorService requests = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < total; i++) {
+                long due = start + i * intervalNanos;
+                long wait = due - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+                Operation operation = pick(mix, weightSum);
+                operations[i] = operation;
+                int index = i;
+                requests.submit(() -> {
+                    try {
+                        failed[index] = client.send(request(operation), HttpResponse.BodyHandlers.discarding()).statusCode() >= 400;
+                    } catch (Exception e) {
+                        failed[index] = true;
+                    }
+                    latencies[index] = System.nanoTime() - due;
+                });
+            }
+        }
+        return new Results(operations, latencies, failed, (System.nanoTime() - start) / 1e9);
+    }
+
+    private HttpRequest request(Operation operation) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return switch (operation) {
+            case LIST -> HttpRequest.newBuilder(companiesUri.resolve("/companies?limit=50")).build();
+            case STOCKS -> HttpRequest.newBuilder(
+                    companiesUri.resolve("/companies/" + companyIds.get(random.nextInt(companyIds.size())) + "/stocks")).build();
+            case CREATE -> json(HttpRequest.newBuilder(companiesUri),
+                    "POST", companyJson("New Corp", symbol("N", createdCompanies.getAndIncrement())));
+            case UPDATE -> {
+                int i = random.nextInt(companyIds.size());
+                yield json(HttpRequest.newBuilder(companiesUri.resolve("/companies/" + companyIds.get(i))),
+                        "PUT", companyJson("Load Corp " + i + " v" + random.nextInt(1000), symbol("L", i)));
+            }
+        };
+    }
+
+    private static HttpRequest json(HttpRequest.Builder builder, String method, String body) {
+        return builder.header("Content-Type", "application/json")
+                .method(method, HttpRequest.BodyPublishers.ofString(body))
+                .build();
+    }
+
+    private static String companyJson(String name, String symbol) {
+        return "{\"name\":\"" + name + "\",\"country\":\"US\",\"symbol\":\"" + symbol + "\"}";
+    }
+
+    // Symbols may only contain letters, so the number is written in base 26.
+    private static String symbol(String prefix, long number) {
+        StringBuilder symbol = new StringBuilder();
+        do {
+            symbol.append((char) ('A' + number % 26));
+            number /= 26;
+        } while (number > 0);
+        return prefix + symbol.reverse();
+    }
+
+    private static Operation pick(Map<Operation, Integer> mix, int weightSum) {
+        int roll = ThreadLocalRandom.current().nextInt(weightSum);
+        for (Map.Entry<Operation, Integer> entry : mix.entrySet()) {
+            roll -= entry.getValue();
+            if (roll < 0) {
+                return entry.getKey();
+            }
+        }
+        throw new IllegalStateException("Unreachable");
+    }
+
+    private static Map<Operation, Integer> parseMix(String mix) {
+        Map<Operation, Integer> weights = new EnumMap<>(Operation.class);
+        for (String part : mix.split(",")) {
+            String[] nameAndWeight = part.trim().split(":");
+            weights.put(Operation.valueOf(nameAndWeight[0].toUpperCase(Locale.ROOT)), Integer.parseInt(nameAndWeight[1]));
+        }
+        return weights;
+    }
+
+    private record Results(Operation[] operations, long[] latencies, boolean[] failed, double elapsedSeconds) {
+
+        int total() {
+            return operations.length;
+        }
+
+        long failures() {
+            int failures = 0;
+            for (boolean f : failed) {
+                failures += f ? 1 : 0;
+            }
+            return failures;
+        }
+
+        long count(Operation operation) {
+            return Arrays.stream(operations).filter(operation::equals).count();
+        }
+
+        /**
+         * @param operation The request type, or null for all requests.
+         */
+        double percentileMillis(Operation operation, double percentile) {
+            long[] sorted = new long[total()];
+            int n = 0;
+            for (int i = 0; i < total(); i++) {
+                if (operation == null || operations[i] == operation) {
+                    sorted[n++] = latencies[i];
+                }
+            }
+            if (n == 0) {
+                return 0;
+            }
+            Arrays.sort(sorted, 0, n);
+            int index = (int) Math.ceil(percentile * n) - 1;
+            return sorted[Math.max(index, 0)] / 1e6;
+        }
+
+        String toJson(int targetRps, long finnhubCalls) {
+            long stockRequests = count(Operation.STOCKS);
+            String perOperation = Arrays.stream(Operation.values())
+                    .filter(operation -> count(operation) > 0)
+                    .map(operation -> String.format(Locale.ROOT, "\"%s\":%s",
+                            operation.name().toLowerCase(Locale.ROOT), latencyJson(operation)))
+                    .collect(Collectors.joining(","));
+            return String.format(Locale.ROOT,
+                    "{\"targetRps\":%d,\"requests\":%d,\"failures\":%d,\"throughput\":%.1f,\"latencyMs\":%s,"
+                            + "\"finnhubCalls\":%d,\"finnhubCallsPerRequest\":%.4f,\"finnhubCallsPerStockRequest\":%.4f,"
+                            + "\"operations\":{%s}}",
+                    targetRps, total(), failures(), total() / elapsedSeconds, latencyJson(null),
+                    finnhubCalls, (double) finnhubCalls / total(),
+                    stockRequests == 0 ? 0.0 : (double) finnhubCalls / stockRequests, perOperation);
+        }
+
+        private String latencyJson(Operation operation) {
+            return String.format(Locale.ROOT, "{\"count\":%d,\"p50\":%.2f,\"p99\":%.2f,\"p999\":%.2f}",
+                    operation == null ? total() : count(operation),
+                    percentileMillis(operation, 0.50), percentileMillis(operation, 0.99), percentileMillis(operation, 0.999));
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.ludogoriesoft.resource;
+
+import com.ludogoriesoft.DatabaseTestBase;
+import com.ludogoriesoft.cache.CompanyStockCache;
+import com.ludogoriesoft.client.FinnhubClient;
+import com.ludogoriesoft.client.ReactiveFinnhubClient;
+import com.ludogoriesoft.dto.FinnhubProfileDto;
+import com.ludogoriesoft.entity.Company;
+import com.ludogoriesoft.entity.StockData;
+import com.ludogoriesoft.entity.StockRefreshLease;
+import com.ludogoriesoft.repository.CompanyRepository;
+import com.ludogoriesoft.repository.StockDataRepository;
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import io.quarkus.test.InjectMock;
+import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.test.junit.TestProfile;
+import io.smallrye.mutiny.Uni;
+import jakarta.inject.Inject;
+import jakarta.transaction.Transactional;
+import jakarta.ws.rs.WebApplicationException;
+import org.eclipse.microprofile.rest.client.inject.RestClient;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static io.restassured.RestAssured.given;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@QuarkusTest
+@TestProfile(ReactiveStocksTestProfile.class)
+class ReactiveCompanyStockResourceTest extends DatabaseTestBase {
+
+    @InjectMock
+    @RestClient
+    ReactiveFinnhubClient reactiveFinnhubClient;
+
+    @InjectMock
+    @RestClient
+    FinnhubClient finnhubClient;
+
+    @Inject
+    CompanyRepository companyRepository;
+
+    @Inject
+    StockDataRepository stockDataRepository;
+
+    @Inject
+    CompanyStockCache companyStockCache;
+
+    private Long testCompanyId;
+
+    @BeforeEach
+    @Transactional
+    void setUp() {
+        stockDataRepository.deleteAll();
+        companyRepository.deleteAll();
+        StockRefreshLease.deleteAll();
+        companyStockCache.invalidateAll();
+
+        Company company = new Company();
+        company.setName("Reactive Corp");
+        company.setCountry("US");
+        company.setSymbol("RCT");
+        company.persist();
+        testCompanyId = company.id;
+    }
+
+    @Test
+    void getCompanyWithStocks_shouldFetchWithReactiveClient_andStoreSnapshot_whenCacheIsMissing() {
+        // ARRANGE
+        when(reactiveFinnhubClient.getCompanyProfile(eq("RCT"), anyString()))
+                .thenReturn(Uni.createFrom().item(new FinnhubProfileDto(750.0, 30.0, null, null, null)));
+
+        // ACT & ASSERT
+        given().when().get("/companies/" + testCompanyId + "/stocks")
+                .then()
+                .statusCode(200)
+                .body("name", equalTo("Reactive Corp"))
+                .body("marketCapitalization", equalTo(750.0f))
+                .body("shareOutstanding", equalTo(30.0f));
+
+        // The blocking path wasn't used, and the snapshot is visible to it.
+        verifyNoInteractions(finnhubClient);
+        assertEquals(1L, (long) QuarkusTransaction.requiringNew().call(() -> stockDataRepository.count()));
+        assertEquals(0L, (long) QuarkusTransaction.requiringNew().call(StockRefreshLease::count));
+    }
+
+    @Test
+    void getCompanyWithStocks_shouldUseTodaysSnapshot_withoutCallingFinnhub() {
+        // ARRANGE: A snapshot written by the blocking path.
+        QuarkusTransaction.requiringNew().run(() -> {
+            StockData stockData = new StockData();
+            stockData.company = companyRepository.findById(testCompanyId);
+            stockData.setMarketCapitalization(2500.0);
+            stockData.setShareOutstanding(150.0);
+            stockDataRepository.persist(stockData);
+        });
+
+        // ACT & ASSERT
+        given().when().get("/companies/" + testCompanyId + "/stocks")
+                .then()
+                .statusCode(200)
+                .body("marketCapitalization", equalTo(2500.0f));
+        verifyNoInteractions(reactiveFinnhubClient, finnhubClient);
+    }
+
+    @Test
+    void getCompanyWithStocks_shouldReturn404_whenCompanyDoesNotExist() {
+        given().when().get("/companies/999999/stocks")
+                .then()
+                .statusCode(404);
+    }
+
+    @Test
+    void getCompanyWithStocks_shouldReleaseRefreshClaim_whenFinnhubFails() {
+        // ARRANGE
+        when(reactiveFinnhubClient.getCompanyProfile(anyString(), anyString()))
+                .thenReturn(Uni.createFrom().failure(new WebApplicationException(502)));
+
+        // ACT & ASSERT
+        given().when().get("/companies/" + testCompanyId + "/stocks")
+                .then()
+                .statusCode(502);
+        assertEquals(0L, (long) QuarkusTransaction.requiringNew().call(StockRefreshLease::count));
+        assertEquals(0L, (long) QuarkusTransaction.requiringNew().call(() -> stockDataRepository.count()));
+    }
+}
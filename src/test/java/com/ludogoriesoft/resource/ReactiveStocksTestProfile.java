@@ -0,0 +1,16 @@
+package com.ludogoriesoft.resource;
+
+import io.quarkus.test.junit.QuarkusTestProfile;
+
+import java.util.Map;
+
+/**
+ * Builds the application with GET /companies/{id}/stocks served by the non-blocking pipeline.
+ */
+public class ReactiveStocksTestProfile implements QuarkusTestProfile {
+
+    @Override
+    public Map<String, String> getConfigOverrides() {
+        return Map.of("companies.reactive-stocks.enabled", "true");
+    }
+}
@@ -0,0 +1,135 @@
+package com.ludogoriesoft.resource;
+
+import com.ludogoriesoft.DatabaseTestBase;
+import com.ludogoriesoft.entity.Company;
+import com.ludogoriesoft.repository.CompanyRepository;
+import com.ludogoriesoft.repository.StockDataPartitionRepository;
+import com.ludogoriesoft.repository.StockDataRepository;
+import io.quarkus.test.junit.QuarkusTest;
+import jakarta.inject.Inject;
+import jakarta.persistence.EntityManager;
+import jakarta.transaction.Transactional;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.time.YearMonth;
+
+import static io.restassured.RestAssured.given;
+import static org.hamcrest.Matchers.equalTo;
+
+@QuarkusTest
+class StockHistoryResourceTest extends DatabaseTestBase {
+
+    private static final YearMonth HISTORY_MONTH = YearMonth.of(2024, 3);
+
+    @Inject
+    CompanyRepository companyRepository;
+
+    @Inject
+    StockDataRepository stockDataRepository;
+
+    @Inject
+    StockDataPartitionRepository partitionRepository;
+
+    @Inject
+    EntityManager entityManager;
+
+    private Long testCompanyId;
+
+    @BeforeEach
+    @Transactional
+    void setUp() {
+        stockDataRepository.deleteAll();
+        companyRepository.deleteAll();
+        // Without a compaction watermark, day buckets are computed from the raw snapshots only.
+        entityManager.createNativeQuery("DELETE FROM stock_compaction_state").executeUpdate();
+
+        Company company = new Company();
+        company.setName("History Corp");
+        company.setCountry("US");
+        company.setSymbol("HIST");
+        company.persist();
+        testCompanyId = company.id;
+
+        // Two snapshots on the first day, one on the second. fetchedAt is set by Hibernate on persist,
+        // so past snapshots are inserted directly.
+        partitionRepository.createPartition(HISTORY_MONTH);
+        insertSnapshot("2024-03-01T10:00:00Z", 100.0);
+        insertSnapshot("2024-03-01T15:00:00Z", 200.0);
+        insertSnapshot("2024-03-02T09:00:00Z", 300.0);
+    }
+
+    @Test
+    void getStockHistory_shouldReturnLastValuePerDay() {
+        given().queryParam("from", "2024-03-01T00:00:00Z").queryParam("to", "2024-04-01T00:00:00Z")
+                .when().get("/companies/" + testCompanyId + "/stocks/history")
+                .then()
+                .statusCode(200)
+                .body("size()", equalTo(2))
+                .body("[0].bucket", equalTo("2024-03-01T00:00:00Z"))
+                .body("[0].marketCapitalization", equalTo(200.0f))
+                .body("[0].fetchedAt", equalTo("2024-03-01T15:00:00Z"))
+                .body("[0].samples", equalTo(2))
+                .body("[1].bucket", equalTo("2024-03-02T00:00:00Z"))
+                .body("[1].marketCapitalization", equalTo(300.0f));
+    }
+
+    @Test
+    void getStockHistory_shouldAveragePerDay_whenAggregationIsAvg() {
+        given().queryParam("from", "2024-03-01T00:00:00Z").queryParam("to", "2024-04-01T00:00:00Z")
+                .queryParam("aggregation", "avg")
+                .when().get("/companies/" + testCompanyId + "/stocks/history")
+                .then()
+                .statusCode(200)
+                .body("size()", equalTo(2))
+                .body("[0].marketCapitalization", equalTo(150.0f))
+                .body("[0].samples", equalTo(2));
+    }
+
+    @Test
+    void getStockHistory_shouldReturnEverySnapshot_whenResolutionIsRaw() {
+        given().queryParam("from", "2024-03-01T12:00:00Z").queryParam("to", "2024-04-01T00:00:00Z")
+                .queryParam("resolution", "raw")
+                .when().get("/companies/" + testCompanyId + "/stocks/history")
+                .then()
+                .statusCode(200)
+                .body("size()", equalTo(2)) // The 10:00 snapshot is before the range
+                .body("[0].marketCapitalization", equalTo(200.0f))
+                .body("[1].marketCapitalization", equalTo(300.0f));
+    }
+
+    @Test
+    void getStockHistory_shouldReturn404_whenCompanyDoesNotExist() {
+        given().when().get("/companies/999999/stocks/history")
+                .then()
+                .statusCode(404);
+    }
+
+    @Test
+    void getStockHistory_shouldReturn400_whenParametersAreInvalid() {
+        given().queryParam("resolution", "fortnight")
+                .when().get("/companies/" + testCompanyId + "/stocks/history")
+                .then()
+                .statusCode(400);
+
+        given().queryParam("from", "2024-03-02T00:00:00Z").queryParam("to", "2024-03-01T00:00:00Z")
+                .when().get("/companies/" + testCompanyId + "/stocks/history")
+                .then()
+                .statusCode(400);
+
+        given().queryParam("from", "yesterday")
+                .when().get("/companies/" + testCompanyId + "/stocks/history")
+                .then()
+                .statusCode(400);
+    }
+
+    private void insertSnapshot(String fetchedAt, double marketCapitalization) {
+        entityManager.createNativeQuery("INSERT INTO stock_data (id, fetchedAt, marketCapitalization, shareOutstanding, company_id) "
+                        + "VALUES (nextval('stock_data_SEQ'), ?1, ?2, 10.0, ?3)")
+                .setParameter(1, Instant.parse(fetchedAt))
+                .setParameter(2, marketCapitalization)
+                .setParameter(3, testCompanyId)
+                .executeUpdate();
+    }
+}
@@ -0,0 +1,122 @@
+package com.ludogoriesoft.resource;
+
+import com.ludogoriesoft.DatabaseTestBase;
+import com.ludogoriesoft.cache.CompanyStockCache;
+import com.ludogoriesoft.entity.Company;
+import com.ludogoriesoft.repository.CompanyRepository;
+import com.ludogoriesoft.repository.StockDataRepository;
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import io.quarkus.test.common.http.TestHTTPResource;
+import jakarta.inject.Inject;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Measures throughput and latency of GET /companies/{id}/stocks while every lookup is a cache miss
+ * that waits on a slow Finnhub (see {@link com.ludogoriesoft.FinnhubStubResource}).
+ * The subclasses run the same workload in worker-pool and virtual-thread mode, so their printed results
+ * can be compared directly. They only run with -DRUN_BENCHMARKS=true.
+ */
+@EnabledIfSystemProperty(named = "RUN_BENCHMARKS", matches = "true")
+abstract class StockLookupBenchmark extends DatabaseTestBase {
+
+    // More concurrent clients than the default worker pool has threads, so a capped pool shows up as queueing.
+    private static final int CONCURRENT_CLIENTS = 400;
+    private static final int REQUESTS = 4000;
+
+    @TestHTTPResource("/companies")
+    URI companiesUri;
+
+    @Inject
+    CompanyRepository companyRepository;
+
+    @Inject
+    StockDataRepository stockDataRepository;
+
+    @Inject
+    CompanyStockCache companyStockCache;
+
+    private final List<Long> companyIds = new ArrayList<>();
+
+    /**
+     * @return The name of the execution mode, used in the printed results.
+     */
+    abstract String mode();
+
+    @BeforeEach
+    void setUp() {
+        companyIds.clear();
+        QuarkusTransaction.requiringNew().run(() -> {
+            stockDataRepository.deleteAll();
+            companyRepository.deleteAll();
+            for (int i = 0; i < REQUESTS; i++) {
+                Company company = new Company();
+                company.setName("Bench Corp " + i);
+                company.setCountry("US");
+                company.setSymbol("BENCH" + i);
+                companyRepository.persist(company);
+                companyIds.add(company.id);
+            }
+        });
+        companyStockCache.invalidateAll();
+    }
+
+    @Test
+    void stockLookups_underSlowFinnhub() throws Exception {
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .build();
+        long[] latencies = new long[REQUESTS];
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger failures = new AtomicInteger();
+
+        long start = System.nanoTime();
+        try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int c = 0; c < CONCURRENT_CLIENTS; c++) {
+                clients.submit(() -> {
+                    // Every request asks for a different company, so each one is a miss that calls Finnhub.
+                    for (int i = next.getAndIncrement(); i < REQUESTS; i = next.getAndIncrement()) {
+                        HttpRequest request = HttpRequest.newBuilder(companiesUri.resolve("/companies/" + companyIds.get(i) + "/stocks")).build();
+                        long sent = System.nanoTime();
+                        try {
+                            if (client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() != 200) {
+                                failures.incrementAndGet();
+                            }
+                        } catch (Exception e) {
+                            failures.incrementAndGet();
+                        }
+                        latencies[i] = System.nanoTime() - sent;
+                    }
+                    return null;
+                });
+            }
+        }
+        double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+
+        Arrays.sort(latencies);
+        System.out.printf("[benchmark] mode=%s clients=%d requests=%d throughput=%.1f req/s p50=%.1f ms p99=%.1f ms failures=%d%n",
+                mode(), CONCURRENT_CLIENTS, REQUESTS, REQUESTS / elapsedSeconds,
+                percentile(latencies, 0.50), percentile(latencies, 0.99), failures.get());
+        assertEquals(0, failures.get());
+    }
+
+    private static double percentile(long[] sortedNanos, double percentile) {
+        int index = (int) Math.ceil(percentile * sortedNanos.length) - 1;
+        return sortedNanos[Math.max(index, 0)] / 1e6;
+    }
+}
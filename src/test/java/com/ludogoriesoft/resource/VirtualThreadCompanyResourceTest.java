@@ -0,0 +1,112 @@
+package com.ludogoriesoft.resource;
+
+import com.ludogoriesoft.DatabaseTestBase;
+import com.ludogoriesoft.cache.CompanyStockCache;
+import com.ludogoriesoft.client.FinnhubClient;
+import com.ludogoriesoft.dto.FinnhubProfileDto;
+import com.ludogoriesoft.entity.Company;
+import com.ludogoriesoft.repository.CompanyRepository;
+import com.ludogoriesoft.repository.StockDataRepository;
+import io.quarkus.test.InjectMock;
+import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.test.junit.TestProfile;
+import io.quarkus.test.junit5.virtual.ShouldNotPin;
+import io.quarkus.test.junit5.virtual.VirtualThreadUnit;
+import jakarta.inject.Inject;
+import jakarta.transaction.Transactional;
+import org.eclipse.microprofile.rest.client.inject.RestClient;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static io.restassured.RestAssured.given;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+
+// Runs the endpoints in virtual-thread mode. @ShouldNotPin fails the test if a virtual thread
+// blocks while pinned to its carrier, e.g. in a synchronized block around JDBC or HTTP I/O.
+@QuarkusTest
+@TestProfile(VirtualThreadsTestProfile.class)
+@VirtualThreadUnit
+@ShouldNotPin
+class VirtualThreadCompanyResourceTest extends DatabaseTestBase {
+
+    @InjectMock
+    @RestClient
+    FinnhubClient finnhubClient;
+
+    @Inject
+    CompanyRepository companyRepository;
+
+    @Inject
+    StockDataRepository stockDataRepository;
+
+    @Inject
+    CompanyStockCache companyStockCache;
+
+    private Long testCompanyId;
+
+    @BeforeEach
+    @Transactional
+    void setUp() {
+        stockDataRepository.deleteAll();
+        companyRepository.deleteAll();
+        companyStockCache.invalidateAll();
+
+        Company company = new Company();
+        company.setName("Virtual Corp");
+        company.setCountry("US");
+        company.setSymbol("VIRT");
+        company.persist();
+        testCompanyId = company.id;
+    }
+
+    @Test
+    void getCompanyWithStocks_shouldRunOnVirtualThread_andStoreTheSnapshot() {
+        // ARRANGE: Record which kind of thread makes the blocking Finnhub call.
+        AtomicBoolean calledOnVirtualThread = new AtomicBoolean();
+        when(finnhubClient.getCompanyProfile(anyString(), anyString())).thenAnswer(invocation -> {
+            calledOnVirtualThread.set(Thread.currentThread().isVirtual());
+            return new FinnhubProfileDto(500.0, 20.0, null, null, null);
+        });
+
+        // ACT & ASSERT: The miss goes through all three phases (read, fetch, write) on the virtual thread...
+        given().when().get("/companies/" + testCompanyId + "/stocks")
+                .then()
+                .statusCode(200)
+                .body("marketCapitalization", equalTo(500.0f));
+        assertTrue(calledOnVirtualThread.get());
+
+        // ...and the second request is served from the snapshot that was committed.
+        companyStockCache.invalidateAll();
+        given().when().get("/companies/" + testCompanyId + "/stocks")
+                .then()
+                .statusCode(200)
+                .body("marketCapitalization", equalTo(500.0f));
+    }
+
+    @Test
+    void createAndListCompanies_shouldWorkOnVirtualThreads() {
+        String newCompanyJson = """
+                {
+                    "name": "Loom Inc",
+                    "country": "US",
+                    "symbol": "LOOM",
+                    "website": "https://loom.example",
+                    "email": "info@loom.example"
+                }
+                """;
+
+        given().contentType("application/json").body(newCompanyJson)
+                .when().post("/companies")
+                .then().statusCode(201);
+
+        given().when().get("/companies")
+                .then()
+                .statusCode(200)
+                .body("size()", equalTo(2));
+    }
+}
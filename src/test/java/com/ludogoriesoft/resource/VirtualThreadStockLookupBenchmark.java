@@ -0,0 +1,20 @@
+package com.ludogoriesoft.resource;
+
+import com.ludogoriesoft.FinnhubStubResource;
+import io.quarkus.test.common.QuarkusTestResource;
+import io.quarkus.test.common.ResourceArg;
+import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.test.junit.TestProfile;
+
+// The same workload with companies.virtual-threads.enabled=true.
+@QuarkusTest
+@TestProfile(VirtualThreadsTestProfile.class)
+@QuarkusTestResource(value = FinnhubStubResource.class, restrictToAnnotatedClass = true,
+        initArgs = @ResourceArg(name = "delay", value = "250"))
+class VirtualThreadStockLookupBenchmark extends StockLookupBenchmark {
+
+    @Override
+    String mode() {
+        return "virtual-threads";
+    }
+}
@@ -0,0 +1,16 @@
+package com.ludogoriesoft.resource;
+
+import io.quarkus.test.junit.QuarkusTestProfile;
+
+import java.util.Map;
+
+/**
+ * Builds the application with the /companies endpoints running on virtual threads.
+ */
+public class VirtualThreadsTestProfile implements QuarkusTestProfile {
+
+    @Override
+    public Map<String, String> getConfigOverrides() {
+        return Map.of("companies.virtual-threads.enabled", "true");
+    }
+}
@@ -0,0 +1,18 @@
+package com.ludogoriesoft.resource;
+
+import com.ludogoriesoft.FinnhubStubResource;
+import io.quarkus.test.common.QuarkusTestResource;
+import io.quarkus.test.common.ResourceArg;
+import io.quarkus.test.junit.QuarkusTest;
+
+// The default build: endpoints run on the worker thread pool.
+@QuarkusTest
+@QuarkusTestResource(value = FinnhubStubResource.class, restrictToAnnotatedClass = true,
+        initArgs = @ResourceArg(name = "delay", value = "250"))
+class WorkerPoolStockLookupBenchmark extends StockLookupBenchmark {
+
+    @Override
+    String mode() {
+        return "worker-pool";
+    }
+}
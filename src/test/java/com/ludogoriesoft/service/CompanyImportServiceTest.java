@@ -0,0 +1,182 @@
+package com.ludogoriesoft.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ludogoriesoft.dto.CompanyImportResultDto;
+import com.ludogoriesoft.dto.CompanyImportRowDto;
+import com.ludogoriesoft.entity.Company;
+import com.ludogoriesoft.mapper.CompanyMapper;
+import com.ludogoriesoft.repository.CompanyRepository;
+import jakarta.validation.Validation;
+import jakarta.validation.Validator;
+import jakarta.ws.rs.BadRequestException;
+import org.hibernate.validator.messageinterpolation.ParameterMessageInterpolator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class CompanyImportServiceTest {
+
+    @Mock
+    CompanyRepository companyRepository;
+
+    CompanyImportService companyImportService;
+
+    // A real mapper and validator, so that we test the actual validation rules of CompanyDto.
+    @BeforeEach
+    void setUp() {
+        Validator validator = Validation.byDefaultProvider()
+                .configure()
+                .messageInterpolator(new ParameterMessageInterpolator())
+                .buildValidatorFactory()
+                .getValidator();
+        companyImportService = new CompanyImportService(companyRepository, new CompanyMapper(), validator, new ObjectMapper().findAndRegisterModules(), 2);
+    }
+
+    @Test
+    void importNdjson_shouldInsertInBatches_andReportEveryRow() throws Exception {
+        // ARRANGE: Every company in a batch is inserted, except the one with symbol "DUP".
+        List<List<String>> batches = new ArrayList<>();
+        when(companyRepository.insertIgnoringConflicts(anyList())).thenAnswer(invocation -> {
+            List<Company> companies = invocation.getArgument(0);
+            batches.add(companies.stream().map(Company::getSymbol).toList());
+            List<Long> ids = new ArrayList<>();
+            for (Company company : companies) {
+                ids.add(company.getSymbol().equals("DUP") ? null : (long) company.getSymbol().length());
+            }
+            return ids;
+        });
+        String ndjson = """
+                {"name":"One","country":"US","symbol":"A"}
+                {"name":"","country":"US","symbol":"INV"}
+                {"name":"Two","country":"US","symbol":"BB"}
+
+                {"name":"Three","country":"US","symbol":"DUP"}
+                """;
+
+        // ACT
+        CompanyImportResultDto result = companyImportService.importNdjson(stream(ndjson));
+
+        // ASSERT: Batches of two valid rows at most, blank lines skipped, rows reported in order.
+        assertEquals(List.of(List.of("A", "BB"), List.of("DUP")), batches);
+        assertEquals(2, result.created());
+        assertEquals(1, result.conflicts());
+        assertEquals(1, result.invalid());
+        assertEquals(List.of(1, 2, 3, 4), result.rows().stream().map(CompanyImportRowDto::row).toList());
+        assertEquals(CompanyImportRowDto.Status.INVALID, result.rows().get(1).status());
+        assertEquals(List.of("name: Company name cannot be blank"), result.rows().get(1).errors());
+        assertEquals(2L, result.rows().get(2).id());
+        assertEquals(CompanyImportRowDto.Status.CONFLICT, result.rows().get(3).status());
+    }
+
+    @Test
+    void importNdjson_shouldRejectMalformedLine_andContinue() throws Exception {
+        // ARRANGE
+        when(companyRepository.insertIgnoringConflicts(anyList())).thenReturn(List.of(7L));
+
+        // ACT
+        CompanyImportResultDto result = companyImportService.importNdjson(stream("not json\n{\"name\":\"One\",\"country\":\"US\",\"symbol\":\"ONE\"}\n"));
+
+        // ASSERT
+        assertEquals(1, result.invalid());
+        assertEquals(1, result.created());
+        assertEquals(7L, result.rows().get(1).id());
+    }
+
+    @Test
+    void importNdjson_shouldRejectNullLine_andContinue() throws Exception {
+        // ARRANGE
+        when(companyRepository.insertIgnoringConflicts(anyList())).thenReturn(List.of(7L));
+
+        // ACT
+        CompanyImportResultDto result = companyImportService.importNdjson(stream("null\n{\"name\":\"One\",\"country\":\"US\",\"symbol\":\"ONE\"}\n"));
+
+        // ASSERT
+        assertEquals(1, result.invalid());
+        assertEquals(CompanyImportRowDto.Status.INVALID, result.rows().get(0).status());
+        assertEquals(List.of("Expected a company object, got null"), result.rows().get(0).errors());
+        assertEquals(1, result.created());
+    }
+
+    @Test
+    void importJsonArray_shouldThrowBadRequest_whenBodyIsNotAnArray() {
+        // ACT & ASSERT
+        assertThrows(BadRequestException.class, () -> companyImportService.importJsonArray(stream("{\"name\":\"One\"}")));
+        verifyNoInteractions(companyRepository);
+    }
+
+    @Test
+    void importJsonArray_shouldRejectInvalidElements_afterFirstBatch_andContinue() throws Exception {
+        // ARRANGE: The first batch (two rows) is written before the bad elements are read
+        List<List<String>> batches = new ArrayList<>();
+        when(companyRepository.insertIgnoringConflicts(anyList())).thenAnswer(invocation -> {
+            List<Company> companies = invocation.getArgument(0);
+            batches.add(companies.stream().map(Company::getSymbol).toList());
+            return companies.stream().map(company -> (long) company.getSymbol().length()).toList();
+        });
+        String json = """
+                [{"name":"One","country":"US","symbol":"A"},
+                 {"name":"Two","country":"US","symbol":"BB"},
+                 {"name":{"nested":true},"country":"US","symbol":"BAD"},
+                 42,
+                 {"name":"Three","country":"US","symbol":"CCC"}]
+                """;
+
+        // ACT
+        CompanyImportResultDto result = companyImportService.importJsonArray(stream(json));
+
+        // ASSERT
+        assertEquals(List.of(List.of("A", "BB"), List.of("CCC")), batches);
+        assertEquals(3, result.created());
+        assertEquals(2, result.invalid());
+        assertEquals(List.of(1, 2, 3, 4, 5), result.rows().stream().map(CompanyImportRowDto::row).toList());
+        assertEquals(CompanyImportRowDto.Status.INVALID, result.rows().get(2).status());
+        assertEquals("BAD", result.rows().get(2).symbol());
+        assertEquals(List.of("Expected a company object"), result.rows().get(3).errors());
+        assertEquals(CompanyImportRowDto.Status.CREATED, result.rows().get(4).status());
+    }
+
+    @Test
+    void importJsonArray_shouldReportRowsSoFar_whenSyntaxErrorFollowsFirstBatch() throws Exception {
+        // ARRANGE
+        List<List<String>> batches = new ArrayList<>();
+        when(companyRepository.insertIgnoringConflicts(anyList())).thenAnswer(invocation -> {
+            List<Company> companies = invocation.getArgument(0);
+            batches.add(companies.stream().map(Company::getSymbol).toList());
+            return companies.stream().map(company -> (long) company.getSymbol().length()).toList();
+        });
+        String json = """
+                [{"name":"One","country":"US","symbol":"A"},
+                 {"name":"Two","country":"US","symbol":"BB"},
+                 {"name":"Three","country":"US","symbol":"CCC"},
+                 {"name": oops}]
+                """;
+
+        // ACT
+        CompanyImportResultDto result = companyImportService.importJsonArray(stream(json));
+
+        // ASSERT: The committed batch and the rows before the error are reported, and the import stops at row 4
+        assertEquals(List.of(List.of("A", "BB"), List.of("CCC")), batches);
+        assertEquals(3, result.created());
+        assertEquals(1, result.invalid());
+        assertEquals(List.of(1, 2, 3, 4), result.rows().stream().map(CompanyImportRowDto::row).toList());
+        assertEquals(CompanyImportRowDto.Status.INVALID, result.rows().get(3).status());
+        assertTrue(result.rows().get(3).errors().get(0).startsWith("Malformed JSON, import stopped"));
+    }
+
+    private static InputStream stream(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -1,13 +1,19 @@
 package com.ludogoriesoft.service;
 
-import com.ludogoriesoft.client.FinnhubClient;
+import com.ludogoriesoft.cache.CompanyStockCache;
+import com.ludogoriesoft.cache.StockCacheMetrics;
+import com.ludogoriesoft.client.FinnhubGateway;
 import com.ludogoriesoft.dto.CompanyDto;
+import com.ludogoriesoft.dto.CompanySearchQuery;
+import com.ludogoriesoft.dto.CompanyStockDto;
 import com.ludogoriesoft.dto.FinnhubProfileDto;
 import com.ludogoriesoft.entity.Company;
 import com.ludogoriesoft.entity.StockData;
 import com.ludogoriesoft.mapper.CompanyMapper;
 import com.ludogoriesoft.repository.CompanyRepository;
-import com.ludogoriesoft.repository.StockDataRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.enterprise.event.Event;
+import jakarta.persistence.OptimisticLockException;
 import jakarta.ws.rs.NotFoundException;
 import jakarta.ws.rs.WebApplicationException;
 import org.junit.jupiter.api.BeforeEach;
@@ -17,38 +23,61 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Consumer;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 // Using Mockito runner for pure unit tests
 @ExtendWith(MockitoExtension.class)
 class CompanyServiceTest {
 
+    // What the read-only stock lookup returns for a company with and without stock data from today.
+    private static final CompanyStockDto FRESH_TODAY =
+            new CompanyStockDto(1L, "Cached", "US", "CCH", null, null, null, 0L, 1.0, 2.0, Instant.now(), false);
+    private static final CompanyStockDto NOTHING_TODAY =
+            new CompanyStockDto(1L, "API Corp", "US", "API", null, null, null, 0L, null, null, null, false);
+    private static final UUID CLAIM_OWNER = UUID.randomUUID();
+
     // Create mock instances of all dependencies
     @Mock
     CompanyRepository companyRepository;
     @Mock
     CompanyMapper companyMapper;
     @Mock
-    StockDataRepository stockDataRepository;
+    StockDataStore stockDataStore;
+    @Mock
+    FinnhubGateway finnhubGateway;
     @Mock
-    FinnhubClient finnhubClient;
+    Event<CompanyUpdatedEvent> companyUpdatedEvent;
+
+    // A real (small) cache instance, so we can verify L1 behaviour end-to-end.
+    CompanyStockCache companyStockCache;
+    SimpleMeterRegistry meterRegistry;
 
     // Inject the mocks into a real CompanyService instance
     @InjectMocks
     CompanyService companyService;
 
-    // Re-initializing the service before each test to inject a value for the API key,
-    // since @ConfigProperty doesn't work in a plain unit test.
+    // Re-initializing the service before each test to inject the real cache and the config values,
+    // since @ConfigProperty doesn't work in a plain unit test. Background refreshes run on the calling thread.
     @BeforeEach
     void setUp() {
-        companyService = new CompanyService(companyRepository, companyMapper, stockDataRepository, finnhubClient, "DUMMY_API_KEY");
+        companyStockCache = new CompanyStockCache(100);
+        meterRegistry = new SimpleMeterRegistry();
+        companyService = new CompanyService(companyRepository, companyMapper, stockDataStore, finnhubGateway,
+                companyStockCache, new StockCacheMetrics(meterRegistry), companyUpdatedEvent, meterRegistry, Duration.ofMillis(100),
+                Duration.ofDays(7), Runnable::run);
     }
 
     @Test
@@ -56,14 +85,14 @@ class CompanyServiceTest {
         // ARRANGE
         CompanyDto dto = new CompanyDto(null, "NewCo", "DE", "NCO", null, null, null);
         Company companyEntity = new Company();
-        when(companyRepository.findBySymbol("NCO")).thenReturn(Optional.empty());
         when(companyMapper.toEntity(dto)).thenReturn(companyEntity);
+        when(companyRepository.insertIfAbsent(companyEntity)).thenReturn(true);
 
         // ACT
         companyService.createCompany(dto);
 
         // ASSERT
-        verify(companyRepository).persist(companyEntity); // Verify that the company was saved
+        verify(companyRepository).insertIfAbsent(companyEntity); // Verify that the company was saved
         verify(companyMapper).toDto(companyEntity); // Verify the result was mapped back
     }
 
@@ -71,23 +100,68 @@ class CompanyServiceTest {
     void createCompany_shouldThrowConflict_whenSymbolExists() {
         // ARRANGE
         CompanyDto dto = new CompanyDto(null, "ExistingCo", "UK", "ECO", null, null, null);
-        when(companyRepository.findBySymbol("ECO")).thenReturn(Optional.of(new Company()));
+        Company companyEntity = new Company();
+        when(companyMapper.toEntity(dto)).thenReturn(companyEntity);
+        when(companyRepository.insertIfAbsent(companyEntity)).thenReturn(false);
 
         // ACT & ASSERT
-        assertThrows(WebApplicationException.class, () -> companyService.createCompany(dto));
+        WebApplicationException thrown = assertThrows(WebApplicationException.class, () -> companyService.createCompany(dto));
+        assertEquals(409, thrown.getResponse().getStatus());
+        verify(companyMapper, never()).toDto(any());
+    }
+
+    @Test
+    void getAllCompanies_shouldReturnProjectedPage() {
+        // ARRANGE
+        List<CompanyDto> page = List.of(new CompanyDto(11L, "Page Corp", "US", "PGC", null, null, null));
+        when(companyRepository.findPage(10L, 50)).thenReturn(page);
+
+        // ACT
+        List<CompanyDto> result = companyService.getAllCompanies(10L, 50);
+
+        // ASSERT
+        assertSame(page, result); // The repository already returns DTOs
+        verify(companyRepository).findPage(10L, 50); // Verify only the requested page was read
+        verifyNoInteractions(companyMapper); // Verify no entities were mapped
     }
 
     @Test
-    void getAllCompanies_shouldReturnMappedList() {
+    void searchCompanies_shouldReturnProjectedPage() {
         // ARRANGE
-        when(companyRepository.listAll()).thenReturn(List.of(new Company()));
+        CompanySearchQuery query = new CompanySearchQuery("US", "tes", null);
+        List<CompanyDto> page = List.of(new CompanyDto(11L, "Test Corp", "US", "TC", null, null, null));
+        when(companyRepository.search(query, 10L, 50)).thenReturn(page);
 
         // ACT
-        companyService.getAllCompanies();
+        List<CompanyDto> result = companyService.searchCompanies(query, 10L, 50);
 
         // ASSERT
-        verify(companyRepository).listAll(); // Verify the repository was called
-        verify(companyMapper, times(1)).toDto(any(Company.class)); // Verify the mapper was called for each item
+        assertSame(page, result);
+        verify(companyRepository).search(query, 10L, 50);
+    }
+
+    @Test
+    void streamAllCompanies_shouldMapEveryCompany() {
+        // ARRANGE: The repository hands out two companies through its callback.
+        Company first = new Company();
+        Company second = new Company();
+        CompanyDto firstDto = new CompanyDto(1L, "First", "US", "FST", null, null, null);
+        CompanyDto secondDto = new CompanyDto(2L, "Second", "US", "SND", null, null, null);
+        doAnswer(invocation -> {
+            Consumer<Company> action = invocation.getArgument(0);
+            action.accept(first);
+            action.accept(second);
+            return null;
+        }).when(companyRepository).forEachCompany(any());
+        when(companyMapper.toDto(first)).thenReturn(firstDto);
+        when(companyMapper.toDto(second)).thenReturn(secondDto);
+
+        // ACT
+        List<CompanyDto> streamed = new ArrayList<>();
+        companyService.streamAllCompanies(streamed::add);
+
+        // ASSERT
+        assertEquals(List.of(firstDto, secondDto), streamed);
     }
 
     @Test
@@ -103,8 +177,23 @@ class CompanyServiceTest {
         // ASSERT
         verify(companyRepository).findByIdOptional(1L);
         verify(companyMapper).updateEntityFromDto(dto, existingCompany);
-        verify(companyRepository).persist(existingCompany);
+        verify(companyRepository).persistAndFlush(existingCompany);
         verify(companyMapper).toDto(existingCompany);
+        verify(companyUpdatedEvent).fire(new CompanyUpdatedEvent(1L)); // Verify the caches are told to evict it
+    }
+
+    @Test
+    void updateCompany_shouldThrowConflict_whenUpdatedConcurrently() {
+        // ARRANGE: The version changed between our read and our write
+        CompanyDto dto = new CompanyDto(1L, "Updated", "US", "UPD", null, null, null);
+        Company existingCompany = new Company();
+        when(companyRepository.findByIdOptional(1L)).thenReturn(Optional.of(existingCompany));
+        doThrow(new OptimisticLockException()).when(companyRepository).persistAndFlush(existingCompany);
+
+        // ACT & ASSERT
+        WebApplicationException thrown = assertThrows(WebApplicationException.class, () -> companyService.updateCompany(1L, dto));
+        assertEquals(409, thrown.getResponse().getStatus());
+        verify(companyUpdatedEvent, never()).fire(any());
     }
 
     @Test
@@ -121,7 +210,7 @@ class CompanyServiceTest {
     @Test
     void getCompanyStockData_shouldThrowNotFound_whenCompanyIdDoesNotExist() {
         // ARRANGE
-        when(companyRepository.findByIdOptional(anyLong())).thenReturn(Optional.empty());
+        when(stockDataStore.findCompanyWithTodaysStockData(anyLong())).thenReturn(Optional.empty());
 
         // ACT & ASSERT
         assertThrows(NotFoundException.class, () -> companyService.getCompanyStockData(99L));
@@ -130,35 +219,211 @@ class CompanyServiceTest {
     @Test
     void getCompanyStockData_shouldReturnFromCache_whenCacheIsPresent() {
         // ARRANGE (Cache Hit)
-        Company company = new Company();
-        StockData cachedData = new StockData();
-        when(companyRepository.findByIdOptional(1L)).thenReturn(Optional.of(company));
-        when(stockDataRepository.findLatestByCompanyIdForToday(1L)).thenReturn(Optional.of(cachedData));
+        when(stockDataStore.findCompanyWithTodaysStockData(1L)).thenReturn(Optional.of(FRESH_TODAY));
 
         // ACT
-        companyService.getCompanyStockData(1L);
+        CompanyStockDto result = companyService.getCompanyStockData(1L);
 
         // ASSERT
-        verify(finnhubClient, never()).getCompanyProfile(anyString(), anyString()); // Verify the external API was NOT called
-        verify(companyMapper).toCompanyStockDto(company, cachedData); // Verify we mapped the cached data
+        verify(finnhubGateway, never()).getCompanyProfile(anyString()); // Verify the external API was NOT called
+        assertSame(FRESH_TODAY, result); // Verify the projection is returned as it is
+        verifyNoInteractions(companyMapper);
     }
 
     @Test
     void getCompanyStockData_shouldFetchFromApi_whenCacheIsMissing() {
         // ARRANGE (Cache Miss)
-        Company company = new Company();
-        company.setSymbol("API");
         FinnhubProfileDto apiResponse = new FinnhubProfileDto(500.0, 200.0, "Some Name", "Some Country", "Some Symbol");
-        when(companyRepository.findByIdOptional(1L)).thenReturn(Optional.of(company));
-        when(stockDataRepository.findLatestByCompanyIdForToday(1L)).thenReturn(Optional.empty());
-        when(finnhubClient.getCompanyProfile(eq("API"), anyString())).thenReturn(apiResponse);
+        StockData saved = new StockData();
+        when(stockDataStore.findCompanyWithTodaysStockData(1L)).thenReturn(Optional.of(NOTHING_TODAY));
+        when(stockDataStore.tryClaimRefresh(1L)).thenReturn(Optional.of(CLAIM_OWNER));
+        when(finnhubGateway.getCompanyProfile("API")).thenReturn(apiResponse);
+        when(stockDataStore.saveStockData(1L, apiResponse, CLAIM_OWNER)).thenReturn(saved);
+
+        // ACT
+        companyService.getCompanyStockData(1L);
+
+        // ASSERT
+        verify(finnhubGateway).getCompanyProfile("API"); // Verify the external API WAS called
+        verify(stockDataStore).saveStockData(1L, apiResponse, CLAIM_OWNER); // Verify that new stock data was saved
+        verify(companyMapper).withStockData(NOTHING_TODAY, saved);
+        assertEquals(1.0, lookups("miss"));
+    }
+
+    @Test
+    void getCompanyStockData_shouldReleaseRefreshClaim_whenFinnhubFails() {
+        // ARRANGE
+        when(stockDataStore.findCompanyWithTodaysStockData(1L)).thenReturn(Optional.of(NOTHING_TODAY));
+        when(stockDataStore.tryClaimRefresh(1L)).thenReturn(Optional.of(CLAIM_OWNER));
+        when(finnhubGateway.getCompanyProfile("API")).thenThrow(new WebApplicationException(503));
+
+        // ACT & ASSERT
+        assertThrows(WebApplicationException.class, () -> companyService.getCompanyStockData(1L));
+        verify(stockDataStore).releaseRefreshClaim(1L, CLAIM_OWNER); // Other nodes must not wait for a lease nobody will fill
+        verify(stockDataStore, never()).saveStockData(any(), any(), any());
+    }
+
+    @Test
+    void getCompanyStockData_shouldNotTouchDatabase_whenL1CacheIsPresent() {
+        // ARRANGE (L1 Hit)
+        CompanyStockDto cachedDto = new CompanyStockDto(1L, "Cached", "US", "CCH", null, null, null, 0L, 1.0, 2.0, null, false);
+        companyStockCache.put(1L, cachedDto);
+
+        // ACT
+        CompanyStockDto result = companyService.getCompanyStockData(1L);
+
+        // ASSERT
+        assertSame(cachedDto, result);
+        verifyNoInteractions(companyRepository, stockDataStore, finnhubGateway);
+    }
+
+    @Test
+    void getCompanyStockData_shouldPopulateL1Cache_afterDatabaseLookup() {
+        // ARRANGE (L1 Miss, DB Hit)
+        when(stockDataStore.findCompanyWithTodaysStockData(1L)).thenReturn(Optional.of(FRESH_TODAY));
+
+        // ACT: The second call must be answered from memory.
+        companyService.getCompanyStockData(1L);
+        CompanyStockDto second = companyService.getCompanyStockData(1L);
+
+        // ASSERT
+        assertSame(FRESH_TODAY, second);
+        verify(stockDataStore, times(1)).findCompanyWithTodaysStockData(1L);
+        assertEquals(1.0, lookups("db_hit"));
+        assertEquals(1.0, lookups("l1_hit"));
+    }
+
+    @Test
+    void getCompanyStockData_shouldReuseSnapshot_whenAnotherNodeHoldsTheRefreshClaim() {
+        // ARRANGE: Nothing for today on the first look, and another node is already refreshing it.
+        StockData refreshedElsewhere = new StockData();
+        when(stockDataStore.findCompanyWithTodaysStockData(1L)).thenReturn(Optional.of(NOTHING_TODAY));
+        when(stockDataStore.tryClaimRefresh(1L)).thenReturn(Optional.empty());
+        when(stockDataStore.findTodaysStockData(1L)).thenReturn(Optional.of(refreshedElsewhere));
 
         // ACT
         companyService.getCompanyStockData(1L);
 
         // ASSERT
-        verify(finnhubClient).getCompanyProfile("API", "DUMMY_API_KEY"); // Verify the external API WAS called
-        verify(stockDataRepository).persist(any(StockData.class)); // Verify that new stock data was saved
-        verify(companyMapper).toCompanyStockDto(any(Company.class), any(StockData.class));
+        verify(finnhubGateway, never()).getCompanyProfile(anyString());
+        verify(stockDataStore, never()).saveStockData(any(), any(), any());
+        verify(companyMapper).withStockData(NOTHING_TODAY, refreshedElsewhere);
+    }
+
+    @Test
+    void getCompanyStockData_shouldNotReleaseForeignClaim_whenWaitingTimesOut() {
+        // ARRANGE: Another node holds the claim and never delivers, so we refresh ourselves, and Finnhub fails.
+        when(stockDataStore.findCompanyWithTodaysStockData(1L)).thenReturn(Optional.of(NOTHING_TODAY));
+        when(stockDataStore.tryClaimRefresh(1L)).thenReturn(Optional.empty());
+        when(stockDataStore.findTodaysStockData(1L)).thenReturn(Optional.empty());
+        when(finnhubGateway.getCompanyProfile("API")).thenThrow(new WebApplicationException(503));
+
+        // ACT & ASSERT: The claim still belongs to the other node, so it is left alone
+        assertThrows(WebApplicationException.class, () -> companyService.getCompanyStockData(1L));
+        verify(stockDataStore, never()).releaseRefreshClaim(anyLong(), any());
+    }
+
+    @Test
+    void getCompanyStockData_shouldStoreWithoutReleasing_whenRefreshingWithoutTheClaim() {
+        // ARRANGE
+        FinnhubProfileDto apiResponse = new FinnhubProfileDto(500.0, 200.0, "API Corp", "US", "API");
+        when(stockDataStore.findCompanyWithTodaysStockData(1L)).thenReturn(Optional.of(NOTHING_TODAY));
+        when(stockDataStore.tryClaimRefresh(1L)).thenReturn(Optional.empty());
+        when(stockDataStore.findTodaysStockData(1L)).thenReturn(Optional.empty());
+        when(finnhubGateway.getCompanyProfile("API")).thenReturn(apiResponse);
+
+        // ACT
+        companyService.getCompanyStockData(1L);
+
+        // ASSERT: A null owner tells the store that there is no claim of ours to release
+        verify(stockDataStore).saveStockData(1L, apiResponse, null);
+    }
+
+    @Test
+    void getCompanyStockData_shouldServeStaleSnapshot_andRefreshItInBackground() {
+        // ARRANGE: Nothing for today, but yesterday's snapshot
+        StockData yesterday = new StockData();
+        StockData saved = new StockData();
+        CompanyStockDto staleData = new CompanyStockDto(1L, "API Corp", "US", "API", null, null, null, 0L, 1.0, 2.0,
+                Instant.now().minus(Duration.ofDays(1)), false);
+        CompanyStockDto freshData = new CompanyStockDto(1L, "API Corp", "US", "API", null, null, null, 0L, 3.0, 4.0,
+                Instant.now(), false);
+        FinnhubProfileDto apiResponse = new FinnhubProfileDto(3.0, 4.0, "API Corp", "US", "API");
+        when(stockDataStore.findCompanyWithTodaysStockData(1L)).thenReturn(Optional.of(NOTHING_TODAY));
+        when(stockDataStore.findLatestStockDataSince(eq(1L), any())).thenReturn(Optional.of(yesterday));
+        when(companyMapper.withStockData(NOTHING_TODAY, yesterday)).thenReturn(staleData);
+        when(finnhubGateway.isAvailable()).thenReturn(true);
+        when(stockDataStore.tryClaimRefresh(1L)).thenReturn(Optional.of(CLAIM_OWNER));
+        when(finnhubGateway.getCompanyProfile("API")).thenReturn(apiResponse);
+        when(stockDataStore.saveStockData(1L, apiResponse, CLAIM_OWNER)).thenReturn(saved);
+        when(companyMapper.withStockData(NOTHING_TODAY, saved)).thenReturn(freshData);
+
+        // ACT
+        CompanyStockDto result = companyService.getCompanyStockData(1L);
+
+        // ASSERT: The caller gets yesterday's data, marked as stale, and the refreshed data lands in the L1 cache
+        assertTrue(result.stale());
+        assertEquals(1.0, result.marketCapitalization());
+        assertEquals(Optional.of(freshData), companyStockCache.get(1L));
+        assertEquals(1.0, lookups("stale"));
+        assertEquals(0.0, lookups("miss"));
+    }
+
+    @Test
+    void getCompanyStockData_shouldServeStaleSnapshot_withoutCallingFinnhub_whenCircuitIsOpen() {
+        // ARRANGE
+        StockData yesterday = new StockData();
+        CompanyStockDto staleData = new CompanyStockDto(1L, "API Corp", "US", "API", null, null, null, 0L, 1.0, 2.0,
+                Instant.now().minus(Duration.ofDays(1)), false);
+        when(stockDataStore.findCompanyWithTodaysStockData(1L)).thenReturn(Optional.of(NOTHING_TODAY));
+        when(stockDataStore.findLatestStockDataSince(eq(1L), any())).thenReturn(Optional.of(yesterday));
+        when(companyMapper.withStockData(NOTHING_TODAY, yesterday)).thenReturn(staleData);
+        when(finnhubGateway.isAvailable()).thenReturn(false);
+
+        // ACT
+        CompanyStockDto result = companyService.getCompanyStockData(1L);
+
+        // ASSERT: No refresh is attempted, and nothing is cached, so the next request looks again
+        assertTrue(result.stale());
+        verify(finnhubGateway, never()).getCompanyProfile(anyString());
+        verify(stockDataStore, never()).tryClaimRefresh(anyLong());
+        assertTrue(companyStockCache.get(1L).isEmpty());
+    }
+
+    @Test
+    void getFreshCompanyStockData_shouldWaitForFinnhub_evenWithStaleSnapshot() {
+        // ARRANGE
+        FinnhubProfileDto apiResponse = new FinnhubProfileDto(3.0, 4.0, "API Corp", "US", "API");
+        StockData saved = new StockData();
+        when(stockDataStore.findCompanyWithTodaysStockData(1L)).thenReturn(Optional.of(NOTHING_TODAY));
+        when(stockDataStore.tryClaimRefresh(1L)).thenReturn(Optional.of(CLAIM_OWNER));
+        when(finnhubGateway.getCompanyProfile("API")).thenReturn(apiResponse);
+        when(stockDataStore.saveStockData(1L, apiResponse, CLAIM_OWNER)).thenReturn(saved);
+
+        // ACT
+        companyService.getFreshCompanyStockData(1L);
+
+        // ASSERT
+        verify(stockDataStore, never()).findLatestStockDataSince(anyLong(), any());
+        verify(companyMapper).withStockData(NOTHING_TODAY, saved);
+        assertEquals(1.0, lookups("miss"));
+    }
+
+    @Test
+    void getLatestStockData_shouldOnlyReadStoredData() {
+        // ARRANGE
+        List<CompanyStockDto> page = List.of(FRESH_TODAY, NOTHING_TODAY);
+        when(stockDataStore.findLatestStockDataPage(null, 2)).thenReturn(page);
+
+        // ACT
+        List<CompanyStockDto> result = companyService.getLatestStockData(null, 2);
+
+        // ASSERT: Companies without stock data are returned as they are, Finnhub is never asked
+        assertSame(page, result);
+        verifyNoInteractions(finnhubGateway);
+    }
+
+    private double lookups(String result) {
+        return meterRegistry.get("stock.cache.lookups").tag("result", result).counter().count();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,74 @@
+package com.ludogoriesoft.service;
+
+import com.ludogoriesoft.cache.CompanyStockCache;
+import com.ludogoriesoft.cache.StockCacheMetrics;
+import com.ludogoriesoft.client.ReactiveFinnhubGateway;
+import com.ludogoriesoft.dto.CompanyStockDto;
+import com.ludogoriesoft.dto.FinnhubProfileDto;
+import com.ludogoriesoft.repository.ReactiveStockDataRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.smallrye.mutiny.Uni;
+import io.smallrye.mutiny.subscription.Cancellable;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ReactiveCompanyStockServiceTest {
+
+    private static final CompanyStockDto NOTHING_TODAY =
+            new CompanyStockDto(1L, "API Corp", "US", "API", null, null, null, 0L, null, null, null, false);
+
+    @Mock
+    ReactiveStockDataRepository stockDataRepository;
+    @Mock
+    ReactiveFinnhubGateway finnhubGateway;
+
+    ReactiveCompanyStockService reactiveCompanyStockService;
+
+    @BeforeEach
+    void setUp() {
+        reactiveCompanyStockService = new ReactiveCompanyStockService(stockDataRepository, finnhubGateway,
+                new CompanyStockCache(100), new StockCacheMetrics(new SimpleMeterRegistry()),
+                Duration.ofMillis(100), Duration.ofSeconds(30), Duration.ofDays(7));
+    }
+
+    @Test
+    void getCompanyStockData_shouldStillComplete_afterTheFirstCallerCancels() throws Exception {
+        // ARRANGE: No stock data at all, and a Finnhub call that only answers when the test says so.
+        ReactiveStockDataRepository.StoredCompanyStock nothingStored =
+                new ReactiveStockDataRepository.StoredCompanyStock(NOTHING_TODAY, null);
+        when(stockDataRepository.findCompanyWithTodaysStockData(1L)).thenReturn(Uni.createFrom().item(nothingStored));
+        when(stockDataRepository.findCompanyWithStockDataSince(eq(1L), any())).thenReturn(Uni.createFrom().item(nothingStored));
+        when(finnhubGateway.checkCircuit()).thenReturn(Uni.createFrom().voidItem());
+        when(stockDataRepository.tryClaimRefresh(eq(1L), any())).thenReturn(Uni.createFrom().item(UUID.randomUUID()));
+        CompletableFuture<FinnhubProfileDto> finnhubResponse = new CompletableFuture<>();
+        when(finnhubGateway.getCompanyProfile("API")).thenReturn(Uni.createFrom().completionStage(finnhubResponse));
+        when(stockDataRepository.insertStockData(eq(1L), any(), any())).thenReturn(Uni.createFrom().item(Instant.now()));
+
+        // ACT: The first caller goes away while Finnhub is still busy, then a second caller asks for the same company.
+        Cancellable firstCaller = reactiveCompanyStockService.getCompanyStockData(1L).subscribe().with(result -> {});
+        firstCaller.cancel();
+        CompletableFuture<CompanyStockDto> secondCaller =
+                reactiveCompanyStockService.getCompanyStockData(1L).subscribe().asCompletionStage();
+        finnhubResponse.complete(new FinnhubProfileDto(2500.0, 100.0, "API Corp", "US", "API"));
+
+        // ASSERT: The second caller joined the flight the first one started, and got its result.
+        CompanyStockDto result = secondCaller.get(5, TimeUnit.SECONDS);
+        assertEquals(2500.0, result.marketCapitalization());
+        verify(finnhubGateway, times(1)).getCompanyProfile("API");
+    }
+}